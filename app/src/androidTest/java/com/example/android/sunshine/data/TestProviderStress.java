@@ -0,0 +1,62 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.data;
+
+import android.content.Context;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static com.example.android.sunshine.data.ProviderStressHarness.CYCLES;
+import static com.example.android.sunshine.data.ProviderStressHarness.DEFAULT_ROWS;
+import static com.example.android.sunshine.data.ProviderStressHarness.READERS;
+
+/**
+ * Runs the ProviderStressHarness on a device or emulator and logs its report under this class's
+ * tag. The table holds 10,000 rows by default, the stressRows instrumentation argument scales
+ * that up to a million:
+ * <pre>
+ * ./gradlew connectedAndroidTest \
+ *         -Pandroid.testInstrumentationRunnerArguments.stressRows=1000000
+ * </pre>
+ * The same harness runs on the JVM under Robolectric, see TestProviderStressOnJvm.
+ */
+@RunWith(AndroidJUnit4.class)
+public class TestProviderStress {
+
+    private static final String TAG = TestProviderStress.class.getSimpleName();
+
+    private final Context mContext = InstrumentationRegistry.getTargetContext();
+
+    /**
+     * Every row the writer inserts must be stored and deleted again, and no query may fail
+     * however long the writer holds the database.
+     */
+    @Test
+    public void testProviderUnderLoad() throws Exception {
+        int rows = Integer.parseInt(InstrumentationRegistry.getArguments()
+                .getString("stressRows", Integer.toString(DEFAULT_ROWS)));
+
+        ProviderStressHarness.Report report =
+                ProviderStressHarness.run(mContext, rows, READERS, CYCLES);
+        Log.i(TAG, rows + " rows, " + READERS + " readers, " + CYCLES + " cycles: " + report);
+
+        ProviderStressHarness.check(report, rows, CYCLES);
+    }
+}
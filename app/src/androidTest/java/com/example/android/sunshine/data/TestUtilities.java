@@ -172,6 +172,60 @@ class TestUtilities {
         return bulkTestWeatherValues;
     }
 
+    /**
+     * The ForecastBatch counterpart of {@link #createBulkInsertTestWeatherValues()}. Row i of the
+     * batch is derived from i, so it can be verified with {@link #validateBatchRecord}.
+     *
+     * @param rowCount Number of rows to put in the batch
+     * @return ForecastBatch that can be inserted into our ContentProvider
+     */
+    static ForecastBatch createTestForecastBatch(int rowCount) {
+        ForecastBatch batch = new ForecastBatch(rowCount);
+
+        long normalizedTestDate = SunshineDateUtils.normalizeDate(TestUtilities.DATE_NORMALIZED);
+
+        for (int i = 0; i < rowCount; i++) {
+            normalizedTestDate += SunshineDateUtils.DAY_IN_MILLIS;
+            batch.add(normalizedTestDate,
+                    800 + i % 5,
+                    65 - i % 30,
+                    75 + i % 30,
+                    i % 100,
+                    1000 + 0.5 * (i % 40),
+                    5.5 + 0.2 * (i % 20),
+                    i % 360);
+        }
+
+        return batch;
+    }
+
+    /**
+     * Makes sure the record the cursor is positioned at holds row i of a ForecastBatch.
+     *
+     * @param error       Message when an error occurs
+     * @param valueCursor Cursor positioned at the record to check, with every weather column
+     * @param batch       The batch the record was inserted from
+     * @param i           The row of the batch the record should match
+     */
+    static void validateBatchRecord(String error, Cursor valueCursor, ForecastBatch batch, int i) {
+        assertEquals(error, batch.dates[i],
+                valueCursor.getLong(valueCursor.getColumnIndex(COLUMN_DATE)));
+        assertEquals(error, batch.weatherIds[i],
+                valueCursor.getInt(valueCursor.getColumnIndex(COLUMN_WEATHER_ID)));
+        assertEquals(error, batch.minTemps[i],
+                valueCursor.getDouble(valueCursor.getColumnIndex(COLUMN_MIN_TEMP)), 0.0);
+        assertEquals(error, batch.maxTemps[i],
+                valueCursor.getDouble(valueCursor.getColumnIndex(COLUMN_MAX_TEMP)), 0.0);
+        assertEquals(error, batch.humidities[i],
+                valueCursor.getInt(valueCursor.getColumnIndex(COLUMN_HUMIDITY)));
+        assertEquals(error, batch.pressures[i],
+                valueCursor.getDouble(valueCursor.getColumnIndex(COLUMN_PRESSURE)), 0.0);
+        assertEquals(error, batch.windSpeeds[i],
+                valueCursor.getDouble(valueCursor.getColumnIndex(COLUMN_WIND_SPEED)), 0.0);
+        assertEquals(error, batch.degrees[i],
+                valueCursor.getDouble(valueCursor.getColumnIndex(COLUMN_DEGREES)), 0.0);
+    }
+
 
     static TestContentObserver getTestContentObserver() {
         return TestContentObserver.getTestContentObserver();
@@ -0,0 +1,277 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.data;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.os.SystemClock;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import com.example.android.sunshine.utilities.SunshineDateUtils;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static com.example.android.sunshine.data.TestUtilities.getStaticIntegerField;
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+import static junit.framework.Assert.fail;
+
+/**
+ * Upgrades seeded databases from every previous schema version to the current one, the same way
+ * an app update would, and verifies that:
+ * <p>
+ * 1) No weather rows are lost and their values are unchanged
+ * 2) The upgraded schema matches the schema of a freshly created database
+ * 3) The upgrade of a large table completes within {@link #MAX_MIGRATION_MILLIS}
+ * 4) Databases too old to migrate are recreated rather than left broken
+ * <p>
+ * Each historical schema is frozen in {@link #createFrozenSchema(SQLiteDatabase, int)}. When you
+ * bump DATABASE_VERSION, add the schema you are leaving behind there so it keeps being tested.
+ */
+@RunWith(AndroidJUnit4.class)
+public class TestWeatherDbMigrations {
+
+    private static final String TAG = TestWeatherDbMigrations.class.getSimpleName();
+
+    /* Enough rows that a migration which rewrites the table shows up in the timings */
+    private static final int LARGE_TABLE_ROW_COUNT = 50000;
+
+    /* Upper bound for upgrading LARGE_TABLE_ROW_COUNT rows on an emulator */
+    private static final long MAX_MIGRATION_MILLIS = 5000;
+
+    private final Context context = InstrumentationRegistry.getTargetContext();
+
+    private int currentVersion;
+
+    @Before
+    public void before() throws Exception {
+        currentVersion = getStaticIntegerField(WeatherDbHelper.class, "DATABASE_VERSION");
+        context.deleteDatabase(WeatherDbHelper.DATABASE_NAME);
+    }
+
+    @After
+    public void after() {
+        context.deleteDatabase(WeatherDbHelper.DATABASE_NAME);
+    }
+
+    /**
+     * Seeds a large database at every version we can migrate from and upgrades it through
+     * WeatherDbHelper. Upgrading must keep every row and must produce the current schema.
+     */
+    @Test
+    public void testUpgradeFromEveryPreviousVersionKeepsData() {
+        Set<String> expectedColumns = getColumnsOfFreshDatabase();
+
+        for (int version = WeatherDbMigrations.FIRST_MIGRATABLE_VERSION;
+             version < currentVersion;
+             version++) {
+
+            context.deleteDatabase(WeatherDbHelper.DATABASE_NAME);
+            createSeededDatabase(version, LARGE_TABLE_ROW_COUNT);
+
+            long upgradeStart = SystemClock.elapsedRealtime();
+            WeatherDbHelper dbHelper = new WeatherDbHelper(context);
+            SQLiteDatabase database = dbHelper.getWritableDatabase();
+            long upgradeMillis = SystemClock.elapsedRealtime() - upgradeStart;
+
+            Log.i(TAG, "Upgraded " + LARGE_TABLE_ROW_COUNT + " rows from version " + version
+                    + " in " + upgradeMillis + " ms");
+
+            assertEquals("Database was not upgraded from version " + version,
+                    currentVersion,
+                    database.getVersion());
+
+            assertEquals("Upgraded schema from version " + version + " doesn't match a fresh one",
+                    expectedColumns,
+                    getColumns(database));
+
+            assertSeededRowsIntact("After upgrading from version " + version,
+                    database,
+                    LARGE_TABLE_ROW_COUNT);
+
+            assertTrue("Upgrading from version " + version + " took " + upgradeMillis
+                            + " ms, which is longer than " + MAX_MIGRATION_MILLIS + " ms",
+                    upgradeMillis <= MAX_MIGRATION_MILLIS);
+
+            dbHelper.close();
+        }
+    }
+
+    /**
+     * Versions older than FIRST_MIGRATABLE_VERSION can't be migrated. They have to end up with
+     * a usable, empty weather table instead of failing to open.
+     */
+    @Test
+    public void testUpgradeFromUnsupportedVersionRecreatesTable() {
+        Set<String> expectedColumns = getColumnsOfFreshDatabase();
+
+        SQLiteDatabase legacy = context.openOrCreateDatabase(
+                WeatherDbHelper.DATABASE_NAME, Context.MODE_PRIVATE, null);
+        legacy.execSQL("CREATE TABLE " + WeatherContract.WeatherEntry.TABLE_NAME
+                + " (_id INTEGER PRIMARY KEY, location_id INTEGER NOT NULL)");
+        legacy.setVersion(WeatherDbMigrations.FIRST_MIGRATABLE_VERSION - 1);
+        legacy.close();
+
+        WeatherDbHelper dbHelper = new WeatherDbHelper(context);
+        SQLiteDatabase database = dbHelper.getWritableDatabase();
+
+        assertEquals("Legacy weather table wasn't replaced by the current schema",
+                expectedColumns,
+                getColumns(database));
+
+        dbHelper.close();
+    }
+
+    /**
+     * Creates weather.db with the schema exactly as it was shipped at the given version and
+     * fills it with rowCount rows of weather data.
+     */
+    private void createSeededDatabase(int version, int rowCount) {
+        SQLiteDatabase database = context.openOrCreateDatabase(
+                WeatherDbHelper.DATABASE_NAME, Context.MODE_PRIVATE, null);
+
+        database.beginTransaction();
+        try {
+            createFrozenSchema(database, version);
+            seedWeatherRows(database, rowCount);
+            database.setVersion(version);
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
+        }
+
+        database.close();
+    }
+
+    /**
+     * The schemas of every released database version. These must never change once a version
+     * has shipped, as they represent databases that exist on users' devices.
+     */
+    private static void createFrozenSchema(SQLiteDatabase database, int version) {
+        switch (version) {
+
+            case 3:
+                database.execSQL("CREATE TABLE weather ("
+                        + "_id INTEGER PRIMARY KEY AUTOINCREMENT, "
+                        + "date INTEGER NOT NULL, "
+                        + "weather_id INTEGER NOT NULL,"
+                        + "min REAL NOT NULL, "
+                        + "max REAL NOT NULL, "
+                        + "humidity REAL NOT NULL, "
+                        + "pressure REAL NOT NULL, "
+                        + "wind REAL NOT NULL, "
+                        + "degrees REAL NOT NULL, "
+                        + " UNIQUE (date) ON CONFLICT REPLACE);");
+                break;
+
+            default:
+                fail("No frozen schema for database version " + version
+                        + ". Add it to createFrozenSchema.");
+        }
+    }
+
+    /*
+     * The weather columns have been stable since version 3, so one seeding statement works for
+     * every frozen schema. Values are derived from the row index so they can be verified later.
+     */
+    private static void seedWeatherRows(SQLiteDatabase database, int rowCount) {
+        SQLiteStatement insert = database.compileStatement("INSERT INTO weather "
+                + "(date, weather_id, min, max, humidity, pressure, wind, degrees) "
+                + "VALUES (?, ?, ?, ?, ?, ?, ?, ?)");
+
+        for (int i = 0; i < rowCount; i++) {
+            insert.bindLong(1, TestUtilities.DATE_NORMALIZED + i * SunshineDateUtils.DAY_IN_MILLIS);
+            insert.bindLong(2, 800 + i % 5);
+            insert.bindDouble(3, i % 40 - 10);
+            insert.bindDouble(4, i % 40);
+            insert.bindDouble(5, i % 100);
+            insert.bindDouble(6, 1000 + i % 30);
+            insert.bindDouble(7, i % 20);
+            insert.bindDouble(8, i % 360);
+            insert.executeInsert();
+        }
+
+        insert.close();
+    }
+
+    private static void assertSeededRowsIntact(String error, SQLiteDatabase database, int rowCount) {
+        Cursor cursor = database.query(WeatherContract.WeatherEntry.TABLE_NAME,
+                new String[]{
+                        WeatherContract.WeatherEntry.COLUMN_DATE,
+                        WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
+                        WeatherContract.WeatherEntry.COLUMN_MAX_TEMP,
+                        WeatherContract.WeatherEntry.COLUMN_DEGREES},
+                null, null, null, null,
+                WeatherContract.WeatherEntry.COLUMN_DATE + " ASC");
+
+        assertEquals(error + ": row count changed", rowCount, cursor.getCount());
+
+        int i = 0;
+        while (cursor.moveToNext()) {
+            assertEquals(error + ": date of row " + i,
+                    TestUtilities.DATE_NORMALIZED + i * SunshineDateUtils.DAY_IN_MILLIS,
+                    cursor.getLong(0));
+            assertEquals(error + ": weather id of row " + i, 800 + i % 5, cursor.getInt(1));
+            assertEquals(error + ": max temperature of row " + i, i % 40, cursor.getDouble(2), 0.0);
+            assertEquals(error + ": degrees of row " + i, i % 360, cursor.getDouble(3), 0.0);
+            i++;
+        }
+
+        cursor.close();
+    }
+
+    private Set<String> getColumnsOfFreshDatabase() {
+        context.deleteDatabase(WeatherDbHelper.DATABASE_NAME);
+        WeatherDbHelper dbHelper = new WeatherDbHelper(context);
+        Set<String> columns = getColumns(dbHelper.getReadableDatabase());
+        dbHelper.close();
+        context.deleteDatabase(WeatherDbHelper.DATABASE_NAME);
+        return columns;
+    }
+
+    /* Describes every table of the database as "table.column type notnull" entries */
+    private static Set<String> getColumns(SQLiteDatabase database) {
+        Set<String> columns = new HashSet<>();
+
+        Cursor tables = database.rawQuery("SELECT name FROM sqlite_master WHERE type='table'"
+                + " AND name NOT LIKE 'sqlite_%' AND name != 'android_metadata'", null);
+
+        while (tables.moveToNext()) {
+            String table = tables.getString(0);
+            Cursor tableInfo = database.rawQuery("PRAGMA table_info(" + table + ")", null);
+            while (tableInfo.moveToNext()) {
+                columns.add(table + "."
+                        + tableInfo.getString(tableInfo.getColumnIndex("name")) + " "
+                        + tableInfo.getString(tableInfo.getColumnIndex("type")) + " "
+                        + tableInfo.getInt(tableInfo.getColumnIndex("notnull")));
+            }
+            tableInfo.close();
+        }
+
+        tables.close();
+        return columns;
+    }
+}
@@ -34,7 +34,9 @@ import org.junit.runner.RunWith;
 import static com.example.android.sunshine.data.TestUtilities.BULK_INSERT_RECORDS_TO_INSERT;
 import static com.example.android.sunshine.data.TestUtilities.createBulkInsertTestWeatherValues;
 import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
 import static junit.framework.Assert.assertNotNull;
+import static junit.framework.Assert.assertNull;
 import static junit.framework.Assert.assertTrue;
 import static junit.framework.Assert.fail;
 
@@ -74,7 +76,7 @@ public class TestWeatherProvider {
     /**
      * Because we annotate this method with the @Before annotation, this method will be called
      * before every single method with an @Test annotation. We want to start each test clean, so we
-     * delete all entries in the weather table to do so.
+     * delete all entries in the weather and geocode tables to do so.
      */
     @Before
     public void setUp() {
@@ -326,6 +328,148 @@ public class TestWeatherProvider {
         cursor.close();
     }
 
+    /**
+     * This test inserts a ForecastBatch through the ContentProvider's call method. Like
+     * {@link #testBulkInsert()}, it verifies that observers are notified, that the reported row
+     * count is right and that every value can be read back unchanged.
+     */
+    @Test
+    public void testBatchInsert() {
+
+        ForecastBatch batch = TestUtilities.createTestForecastBatch(BULK_INSERT_RECORDS_TO_INSERT);
+
+        TestUtilities.TestContentObserver weatherObserver = TestUtilities.getTestContentObserver();
+
+        ContentResolver contentResolver = mContext.getContentResolver();
+
+        contentResolver.registerContentObserver(
+                WeatherContract.WeatherEntry.CONTENT_URI,
+                true,
+                weatherObserver);
+
+        int insertCount = batch.insert(contentResolver);
+
+        weatherObserver.waitForNotificationOrFail();
+        contentResolver.unregisterContentObserver(weatherObserver);
+
+        assertEquals("Number of expected records inserted does not match actual inserted record count",
+                BULK_INSERT_RECORDS_TO_INSERT,
+                insertCount);
+
+        Cursor cursor = contentResolver.query(
+                WeatherContract.WeatherEntry.CONTENT_URI,
+                null,
+                null,
+                null,
+                WeatherContract.WeatherEntry.COLUMN_DATE + " ASC");
+
+        assertEquals(BULK_INSERT_RECORDS_TO_INSERT, cursor.getCount());
+
+        cursor.moveToFirst();
+        for (int i = 0; i < BULK_INSERT_RECORDS_TO_INSERT; i++, cursor.moveToNext()) {
+            TestUtilities.validateBatchRecord(
+                    "testBatchInsert. Error validating WeatherEntry " + i,
+                    cursor,
+                    batch,
+                    i);
+        }
+
+        cursor.close();
+    }
+
+    /**
+     * This test reads rows back through the ContentProvider's call method. It verifies that only
+     * the rows within the requested date range are returned, in date order, and that columns
+     * left out of the projection are not returned at all.
+     */
+    @Test
+    public void testBatchQuery() {
+
+        ForecastBatch inserted = TestUtilities.createTestForecastBatch(BULK_INSERT_RECORDS_TO_INSERT);
+
+        ContentResolver contentResolver = mContext.getContentResolver();
+        inserted.insert(contentResolver);
+
+        /* Ask for the middle of the inserted range, with both bounds inclusive */
+        int firstRow = 2;
+        int lastRow = BULK_INSERT_RECORDS_TO_INSERT - 3;
+
+        ForecastBatch queried = ForecastBatch.query(
+                contentResolver,
+                inserted.dates[firstRow],
+                inserted.dates[lastRow],
+                WeatherContract.WeatherEntry.COLUMN_DATE,
+                WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
+                WeatherContract.WeatherEntry.COLUMN_MAX_TEMP);
+
+        assertNotNull("ForecastBatch.query returned null", queried);
+
+        assertEquals("Number of rows in the queried range is wrong",
+                lastRow - firstRow + 1,
+                queried.size());
+
+        for (int i = 0; i < queried.size(); i++) {
+            String error = "testBatchQuery. Error validating row " + i;
+            assertEquals(error, inserted.dates[firstRow + i], queried.dates[i]);
+            assertEquals(error, inserted.weatherIds[firstRow + i], queried.weatherIds[i]);
+            assertEquals(error, inserted.maxTemps[firstRow + i], queried.maxTemps[i], 0.0);
+        }
+
+        assertNull("Columns outside of the projection should not be returned",
+                queried.minTemps);
+        assertNull("Columns outside of the projection should not be returned",
+                queried.humidities);
+        assertFalse("A projected batch should not report every column",
+                queried.hasAllColumns());
+
+        /* Without a projection, every column of every row is returned */
+        ForecastBatch everything = ForecastBatch.query(contentResolver, Long.MIN_VALUE, Long.MAX_VALUE);
+
+        assertNotNull("ForecastBatch.query returned null", everything);
+        assertEquals(BULK_INSERT_RECORDS_TO_INSERT, everything.size());
+        assertTrue("A batch read without a projection should hold every column",
+                everything.hasAllColumns());
+    }
+
+    /**
+     * This test stores location queries through GeocodeCache. It verifies that queries are
+     * matched regardless of case and spacing, that unknown queries aren't found, and that the
+     * least recently used queries are evicted once the table is full.
+     */
+    @Test
+    public void testGeocodeCache() throws Exception {
+
+        ContentResolver contentResolver = mContext.getContentResolver();
+
+        assertNull("An unknown query should not have coordinates",
+                GeocodeCache.get(contentResolver, "Mountain View, CA"));
+
+        GeocodeCache.put(contentResolver, "Mountain View, CA", 37.3861, -122.0839);
+
+        double[] coordinates = GeocodeCache.get(contentResolver, "  mountain   VIEW, ca ");
+        assertNotNull("A stored query should be found whatever its case and spacing",
+                coordinates);
+        assertEquals(37.3861, coordinates[0], 0.0);
+        assertEquals(-122.0839, coordinates[1], 0.0);
+
+        /* Storing a query again replaces its coordinates */
+        GeocodeCache.put(contentResolver, "Mountain View, CA", 37.0, -122.0);
+        assertEquals(37.0, GeocodeCache.get(contentResolver, "Mountain View, CA")[0], 0.0);
+
+        int maxEntries = TestUtilities.getStaticIntegerField(
+                WeatherProvider.class, "MAX_GEOCODE_ENTRIES");
+
+        /* Mountain View is now the least recently used query, one more than fits evicts it */
+        for (int i = 0; i < maxEntries; i++) {
+            GeocodeCache.put(contentResolver, "City " + i, i, -i);
+        }
+
+        assertNull("The least recently used query should have been evicted",
+                GeocodeCache.get(contentResolver, "Mountain View, CA"));
+        assertNotNull("The most recently used query should have been kept",
+                GeocodeCache.get(contentResolver, "City " + (maxEntries - 1)));
+    }
+
     /**
      * This test deletes all records from the weather table using the ContentProvider. It also
      * verifies that registered ContentObservers receive onChange callbacks when data is deleted.
@@ -424,7 +568,7 @@ public class TestWeatherProvider {
     }
 
     /**
-     * This method will clear all rows from the weather table in our database.
+     * This method will clear all rows from the weather and geocode tables in our database.
      * <p>
      * Please note:
      * <p>
@@ -442,6 +586,7 @@ public class TestWeatherProvider {
 
         /* The delete method deletes all of the desired rows from the table, not the table itself */
         database.delete(WeatherContract.WeatherEntry.TABLE_NAME, null, null);
+        database.delete(WeatherContract.GeocodeEntry.TABLE_NAME, null, null);
 
         /* Always close the database when you're through with it */
         database.close();
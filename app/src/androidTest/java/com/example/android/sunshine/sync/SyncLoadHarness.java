@@ -0,0 +1,140 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.sync;
+
+import android.content.Context;
+import android.os.SystemClock;
+import android.preference.PreferenceManager;
+import android.support.v4.os.CancellationSignal;
+
+import com.example.android.sunshine.R;
+import com.example.android.sunshine.data.SunshinePreferences;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Drives the whole sync pipeline (fetch, parse, store in the ContentProvider, notify) through
+ * {@link SunshineSyncTask#syncWeather(Context, CancellationSignal)}, one sync after the other,
+ * and reports how long the syncs took and how they ended.
+ * <p>
+ * Each sync is for the next location of a list, set as the user's preferred location the way
+ * the settings screen does it. Run it against a StandInWeatherServer to measure the pipeline
+ * without the internet. It changes the preferred location, so callers should restore it.
+ */
+public class SyncLoadHarness {
+
+    /**
+     * What a run of syncs did.
+     */
+    public static final class Report {
+
+        /** How many syncs ended with each of SunshineSyncTask's RESULT_ constants */
+        public final int[] resultCounts;
+
+        /** Duration of each sync, sorted */
+        public final long[] latenciesMillis;
+
+        /** Duration of the whole run */
+        public final long totalMillis;
+
+        Report(int[] resultCounts, long[] latenciesMillis, long totalMillis) {
+            this.resultCounts = resultCounts;
+            this.latenciesMillis = latenciesMillis;
+            this.totalMillis = totalMillis;
+            Arrays.sort(latenciesMillis);
+        }
+
+        /**
+         * @param result One of SunshineSyncTask's RESULT_ constants
+         * @return How many syncs ended with that result
+         */
+        public int count(int result) {
+            return resultCounts[result];
+        }
+
+        /**
+         * @param percentile From 0 to 100
+         * @return The sync duration below which that share of the syncs finished
+         */
+        public long latencyPercentile(double percentile) {
+            if (latenciesMillis.length == 0) return 0;
+            int index = (int) Math.ceil(latenciesMillis.length * percentile / 100) - 1;
+            return latenciesMillis[Math.max(0, Math.min(index, latenciesMillis.length - 1))];
+        }
+
+        /**
+         * @return Syncs completed per second over the whole run
+         */
+        public double throughput() {
+            return totalMillis == 0 ? 0 : latenciesMillis.length * 1000.0 / totalMillis;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US,
+                    "%d syncs in %d ms (%.1f/s), p50 %d ms, p95 %d ms, max %d ms, results %s",
+                    latenciesMillis.length, totalMillis, throughput(),
+                    latencyPercentile(50), latencyPercentile(95), latencyPercentile(100),
+                    Arrays.toString(resultCounts));
+        }
+    }
+
+    private SyncLoadHarness() {
+    }
+
+    /**
+     * Runs syncs one after the other, cycling through the locations.
+     *
+     * @param context   Used to set the preferred location and to run the syncs
+     * @param locations The location queries to sync, in order
+     * @param syncs     How many syncs to run
+     * @return How the syncs went
+     */
+    public static Report run(Context context, List<String> locations, int syncs) {
+        /* Indexed by RESULT_ constant, up to RESULT_SKIPPED */
+        int[] resultCounts = new int[SunshineSyncTask.RESULT_SKIPPED + 1];
+        long[] latenciesMillis = new long[syncs];
+        long start = SystemClock.elapsedRealtime();
+
+        for (int i = 0; i < syncs; i++) {
+            setPreferredLocation(context, locations.get(i % locations.size()));
+
+            long syncStart = SystemClock.elapsedRealtime();
+            int result = SunshineSyncTask.syncWeather(context, new CancellationSignal());
+            latenciesMillis[i] = SystemClock.elapsedRealtime() - syncStart;
+            resultCounts[result]++;
+        }
+
+        return new Report(resultCounts, latenciesMillis, SystemClock.elapsedRealtime() - start);
+    }
+
+    /**
+     * Sets the user's preferred location and forgets the coordinates of the previous one, as
+     * the settings screen does when the user types a new location.
+     *
+     * @param context  Used to access SharedPreferences
+     * @param location The location query
+     */
+    public static void setPreferredLocation(Context context, String location) {
+        PreferenceManager.getDefaultSharedPreferences(context).edit()
+                .putString(context.getString(R.string.pref_location_key), location)
+                .commit();
+        SunshinePreferences.resetLocationCoordinates(context);
+        SunshinePreferences.reload(context);
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.sync;
+
+import android.content.Context;
+import android.os.SystemClock;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.support.v4.os.CancellationSignal;
+
+import com.example.android.sunshine.data.SunshinePreferences;
+import com.example.android.sunshine.utilities.NetworkUtils;
+import com.example.android.sunshine.utils.StandInWeatherServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.IOException;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+
+/**
+ * Checks that the per-sync deadline bounds how long a sync takes, however slow the weather
+ * servers are, and whichever of them the sync fails over to.
+ */
+@RunWith(AndroidJUnit4.class)
+public class TestSyncDeadline {
+
+    /* Shorter than the hedge delay, so that only failover can reach the second server */
+    private static final long DEADLINE_MILLIS = 2000;
+
+    /* Far longer than the deadline */
+    private static final long SERVER_LATENCY_MILLIS = 10000;
+
+    /* How far from the deadline a sync that ran out of time may end */
+    private static final long TOLERANCE_MILLIS = 1000;
+
+    private final Context mContext = InstrumentationRegistry.getTargetContext();
+
+    private StandInWeatherServer mPrimary;
+    private StandInWeatherServer mSecondary;
+    private String mPreviousLocation;
+
+    @Before
+    public void before() throws IOException {
+        mPreviousLocation = SunshinePreferences.getPreferredWeatherLocation(mContext);
+        mPrimary = new StandInWeatherServer().setLatencyMillis(SERVER_LATENCY_MILLIS).start();
+        mSecondary = new StandInWeatherServer().setLatencyMillis(SERVER_LATENCY_MILLIS).start();
+        NetworkUtils.setEndpoints(mPrimary.getBaseUrl(), mSecondary.getBaseUrl());
+        SunshineSyncTask.setDeadlineMillis(DEADLINE_MILLIS);
+    }
+
+    @After
+    public void after() throws IOException {
+        SunshineSyncTask.resetDeadline();
+        NetworkUtils.resetEndpoints();
+        SyncLoadHarness.setPreferredLocation(mContext, mPreviousLocation);
+        mPrimary.stop();
+        mSecondary.stop();
+    }
+
+    /**
+     * A sync against servers slower than its deadline times out at the deadline. It doesn't go
+     * on to wait for the second server once the first one ran out of time.
+     */
+    @Test
+    public void testDeadlineBoundsSlowSync() {
+        SyncLoadHarness.setPreferredLocation(mContext, StandInWeatherServer.getCityName(0));
+
+        long start = SystemClock.elapsedRealtime();
+        int result = SunshineSyncTask.syncWeather(mContext, new CancellationSignal());
+        long elapsed = SystemClock.elapsedRealtime() - start;
+
+        assertEquals(SunshineSyncTask.RESULT_TIMED_OUT, result);
+        assertTrue("The sync ended " + elapsed + " ms after it started, before its deadline",
+                elapsed >= DEADLINE_MILLIS - TOLERANCE_MILLIS);
+        assertTrue("The sync took " + elapsed + " ms, past its deadline",
+                elapsed <= DEADLINE_MILLIS + TOLERANCE_MILLIS);
+    }
+}
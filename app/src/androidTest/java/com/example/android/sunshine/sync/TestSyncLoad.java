@@ -0,0 +1,152 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.sync;
+
+import android.content.Context;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import com.example.android.sunshine.data.ForecastBatch;
+import com.example.android.sunshine.data.SunshinePreferences;
+import com.example.android.sunshine.data.WeatherContract;
+import com.example.android.sunshine.utilities.NetworkUtils;
+import com.example.android.sunshine.utilities.SunshineDateUtils;
+import com.example.android.sunshine.utils.StandInWeatherServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertNotNull;
+import static junit.framework.Assert.assertTrue;
+
+/**
+ * Runs the sync pipeline end to end against a StandInWeatherServer, so that it can be measured
+ * without the internet, and logs the throughput and latency of each run under this class's tag.
+ * Compare those numbers before and after a change to the network or storage code.
+ */
+@RunWith(AndroidJUnit4.class)
+public class TestSyncLoad {
+
+    private static final String TAG = TestSyncLoad.class.getSimpleName();
+
+    private static final int CITY_COUNT = 20;
+
+    /* Every city is synced more than once, so the later syncs go by coordinates */
+    private static final int SYNC_COUNT = 60;
+
+    private final Context mContext = InstrumentationRegistry.getTargetContext();
+
+    private StandInWeatherServer mServer;
+    private String mPreviousLocation;
+
+    @Before
+    public void before() {
+        mPreviousLocation = SunshinePreferences.getPreferredWeatherLocation(mContext);
+    }
+
+    @After
+    public void after() throws Exception {
+        if (mServer != null) {
+            mServer.stop();
+        }
+        NetworkUtils.resetEndpoints();
+        SyncLoadHarness.setPreferredLocation(mContext, mPreviousLocation);
+    }
+
+    /**
+     * Syncs many cities from a healthy server with a realistic latency. Every sync must store
+     * the forecast, and the weather of the last city must be in the ContentProvider.
+     */
+    @Test
+    public void testSyncThroughput() throws Exception {
+        startServer(new StandInWeatherServer()
+                .setCityCount(CITY_COUNT)
+                .setLatencyMillis(50));
+
+        SyncLoadHarness.Report report = SyncLoadHarness.run(mContext, cities(), SYNC_COUNT);
+        log("Healthy server", report);
+
+        assertEquals("Every sync against a healthy server should succeed",
+                SYNC_COUNT,
+                report.count(SunshineSyncTask.RESULT_SUCCESS));
+
+        ForecastBatch stored = ForecastBatch.query(mContext.getContentResolver(),
+                SunshineDateUtils.getNormalizedUtcDateForToday(), Long.MAX_VALUE,
+                WeatherContract.WeatherEntry.COLUMN_DATE);
+        assertNotNull(stored);
+        assertTrue("The last sync didn't store its forecast", stored.size() > 0);
+    }
+
+    /**
+     * Syncs from a slow server that fails or cuts off some of its responses. Syncs may fail,
+     * but each one must end cleanly, and syncs must succeed again once the server recovers.
+     */
+    @Test
+    public void testSyncFromUnreliableServer() throws Exception {
+        startServer(new StandInWeatherServer()
+                .setCityCount(CITY_COUNT)
+                .setLatencyMillis(100)
+                .setBytesPerSecond(64 * 1024)
+                .setErrorRate(0.2)
+                .setTruncationRate(0.1)
+                .setSeed(7));
+
+        SyncLoadHarness.Report report = SyncLoadHarness.run(mContext, cities(), SYNC_COUNT);
+        log("Unreliable server", report);
+
+        assertEquals("Syncs should only succeed or fail against an unreliable server",
+                SYNC_COUNT,
+                report.count(SunshineSyncTask.RESULT_SUCCESS)
+                        + report.count(SunshineSyncTask.RESULT_FAILED)
+                        + report.count(SunshineSyncTask.RESULT_TIMED_OUT));
+
+        mServer.stop();
+        startServer(new StandInWeatherServer().setCityCount(CITY_COUNT));
+
+        SyncLoadHarness.Report recovered = SyncLoadHarness.run(mContext, cities(), CITY_COUNT);
+        log("Recovered server", recovered);
+
+        assertEquals("Syncs should succeed again once the server is healthy",
+                CITY_COUNT,
+                recovered.count(SunshineSyncTask.RESULT_SUCCESS));
+    }
+
+    private void startServer(StandInWeatherServer server) throws Exception {
+        mServer = server.start();
+        NetworkUtils.setEndpoints(mServer.getBaseUrl());
+    }
+
+    private static List<String> cities() {
+        List<String> cities = new ArrayList<>();
+        for (int city = 0; city < CITY_COUNT; city++) {
+            cities.add(StandInWeatherServer.getCityName(city));
+        }
+        return cities;
+    }
+
+    private void log(String run, SyncLoadHarness.Report report) {
+        Log.i(TAG, run + ": " + report + ", server saw " + mServer.getRequestCount()
+                + " requests on " + mServer.getConnectionCount() + " connections and sent "
+                + mServer.getBytesSent() + " bytes");
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.sync;
+
+import android.content.Context;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import com.example.android.sunshine.data.SunshinePreferences;
+import com.example.android.sunshine.utilities.NetworkUtils;
+import com.example.android.sunshine.utils.StandInWeatherServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+
+/**
+ * Records the traffic of a run of syncs, then replays it through the sync pipeline with no
+ * server at all. Replaying the same recording on two builds runs both on identical traffic, so
+ * the stage timings this logs under its tag can be compared between them.
+ */
+@RunWith(AndroidJUnit4.class)
+public class TestSyncReplay {
+
+    private static final String TAG = TestSyncReplay.class.getSimpleName();
+
+    private static final int CITY_COUNT = 10;
+    private static final int SYNC_COUNT = 30;
+
+    /* Latency of the server while recording, replays must reproduce it */
+    private static final long LATENCY_MILLIS = 200;
+
+    private final Context mContext = InstrumentationRegistry.getTargetContext();
+
+    private File mRecording;
+    private String mPreviousLocation;
+
+    @Before
+    public void before() {
+        mRecording = new File(mContext.getCacheDir(), "test_sync_traffic");
+        mPreviousLocation = SunshinePreferences.getPreferredWeatherLocation(mContext);
+    }
+
+    @After
+    public void after() {
+        NetworkUtils.stopCapture();
+        NetworkUtils.stopReplay();
+        NetworkUtils.resetEndpoints();
+        SyncLoadHarness.setPreferredLocation(mContext, mPreviousLocation);
+        mRecording.delete();
+    }
+
+    @Test
+    public void testReplayReproducesRecordedSyncs() throws Exception {
+        StandInWeatherServer server = new StandInWeatherServer()
+                .setCityCount(CITY_COUNT)
+                .setLatencyMillis(LATENCY_MILLIS)
+                .setErrorRate(0.1)
+                .start();
+        NetworkUtils.setEndpoints(server.getBaseUrl());
+
+        NetworkUtils.startCapture(mRecording);
+        SyncLoadHarness.Report recorded = SyncLoadHarness.run(mContext, cities(), SYNC_COUNT);
+        NetworkUtils.stopCapture();
+        server.stop();
+        Log.i(TAG, "Recorded: " + recorded);
+
+        /* Real speed first, it must take about as long as the recorded run */
+        assertEquals(SYNC_COUNT, NetworkUtils.startReplay(mRecording, 1));
+        SyncLoadHarness.Report realSpeed = replay("Real speed");
+        assertEquals("Every recorded fetch should have been replayed", 0,
+                NetworkUtils.stopReplay());
+
+        assertEquals("Replayed syncs should end as the recorded ones did",
+                recorded.count(SunshineSyncTask.RESULT_SUCCESS),
+                realSpeed.count(SunshineSyncTask.RESULT_SUCCESS));
+        assertTrue("A replay at real speed should wait for the recorded latency",
+                realSpeed.latencyPercentile(50) >= LATENCY_MILLIS);
+
+        /* Then with no waiting at all, which leaves only the work of the app itself */
+        NetworkUtils.startReplay(mRecording, Double.POSITIVE_INFINITY);
+        SyncLoadHarness.Report accelerated = replay("Accelerated");
+        NetworkUtils.stopReplay();
+
+        assertEquals(recorded.count(SunshineSyncTask.RESULT_SUCCESS),
+                accelerated.count(SunshineSyncTask.RESULT_SUCCESS));
+        assertTrue("An accelerated replay should be faster than the recorded run",
+                accelerated.totalMillis < recorded.totalMillis);
+    }
+
+    /* Replays the recording and logs the average time the successful syncs spent per stage */
+    private SyncLoadHarness.Report replay(String run) {
+        long[] stagesBefore = stageTotals();
+        int runsBefore = SyncMetrics.getStageRunCount();
+
+        SyncLoadHarness.Report report = SyncLoadHarness.run(mContext, cities(), SYNC_COUNT);
+
+        long[] stagesAfter = stageTotals();
+        int runs = Math.max(1, SyncMetrics.getStageRunCount() - runsBefore);
+        Log.i(TAG, String.format(Locale.US,
+                "%s: %s, average fetch %d ms, parse %d ms, store %d ms, notify %d ms",
+                run, report,
+                (stagesAfter[0] - stagesBefore[0]) / runs,
+                (stagesAfter[1] - stagesBefore[1]) / runs,
+                (stagesAfter[2] - stagesBefore[2]) / runs,
+                (stagesAfter[3] - stagesBefore[3]) / runs));
+        return report;
+    }
+
+    private static long[] stageTotals() {
+        return new long[]{
+                SyncMetrics.getStageTotalMillis(SyncMetrics.STAGE_FETCH),
+                SyncMetrics.getStageTotalMillis(SyncMetrics.STAGE_PARSE),
+                SyncMetrics.getStageTotalMillis(SyncMetrics.STAGE_STORE),
+                SyncMetrics.getStageTotalMillis(SyncMetrics.STAGE_NOTIFY)};
+    }
+
+    private static List<String> cities() {
+        List<String> cities = new ArrayList<>();
+        for (int city = 0; city < CITY_COUNT; city++) {
+            cities.add(StandInWeatherServer.getCityName(city));
+        }
+        return cities;
+    }
+}
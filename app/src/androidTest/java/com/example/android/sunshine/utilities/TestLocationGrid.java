@@ -0,0 +1,69 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.utilities;
+
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+
+/**
+ * Verifies that LocationGrid computes standard geohashes, and that every position in a cell is
+ * snapped to the same center while positions in different cells are not.
+ */
+@RunWith(AndroidJUnit4.class)
+public class TestLocationGrid {
+
+    /* The reference example of the geohash specification */
+    private static final double LATITUDE = 57.64911;
+    private static final double LONGITUDE = 10.40744;
+    private static final String GEOHASH = "u4pruydqqvj";
+
+    @Test
+    public void testEncodeMatchesReferenceGeohash() {
+        for (int precision = 1; precision <= GEOHASH.length(); precision++) {
+            assertEquals("Wrong geohash at precision " + precision,
+                    GEOHASH.substring(0, precision),
+                    LocationGrid.encode(LATITUDE, LONGITUDE, precision));
+        }
+    }
+
+    @Test
+    public void testCenterFallsInItsOwnCell() {
+        for (int precision = 1; precision <= LocationGrid.MAX_PRECISION; precision++) {
+            String cell = LocationGrid.encode(LATITUDE, LONGITUDE, precision);
+            double[] center = LocationGrid.center(cell);
+            assertEquals("Center of " + cell + " is outside of it",
+                    cell,
+                    LocationGrid.encode(center[0], center[1], precision));
+        }
+    }
+
+    @Test
+    public void testNearbyPositionsShareACell() {
+        /* About 100 m apart, well within a 4.9 km cell */
+        String cell = LocationGrid.encode(37.4220, -122.0841, 5);
+        String nearby = LocationGrid.encode(37.4229, -122.0845, 5);
+        assertEquals(cell, nearby);
+
+        /* About 40 km apart */
+        String farAway = LocationGrid.encode(37.7749, -122.4194, 5);
+        assertFalse(cell.equals(farAway));
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.utilities;
+
+import android.content.ContentResolver;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.example.android.sunshine.data.ForecastBatch;
+import com.example.android.sunshine.data.WeatherContract;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+
+/**
+ * Verifies that SyntheticWeatherGenerator is repeatable, that its weather is plausible, and that
+ * its rows and its JSON describe the same weather.
+ */
+@RunWith(AndroidJUnit4.class)
+public class TestSyntheticWeatherGenerator {
+
+    private static final long SEED = 1234;
+    private static final long START_DATE = SunshineDateUtils.normalizeDate(1483228800000L);
+
+    /* Ten years, enough for every season to come up many times */
+    private static final int DAYS = 3653;
+
+    @Test
+    public void testSameSeedGivesSameWeather() {
+        ForecastBatch first = new SyntheticWeatherGenerator(SEED, 3, START_DATE).next(DAYS);
+        ForecastBatch second = new SyntheticWeatherGenerator(SEED, 3, START_DATE).next(DAYS);
+
+        for (int i = 0; i < DAYS; i++) {
+            assertEquals(first.dates[i], second.dates[i]);
+            assertEquals(first.weatherIds[i], second.weatherIds[i]);
+            assertEquals(first.maxTemps[i], second.maxTemps[i], 0.0);
+        }
+
+        /* Generating in steps continues the same series */
+        SyntheticWeatherGenerator stepped = new SyntheticWeatherGenerator(SEED, 3, START_DATE);
+        stepped.next(100);
+        ForecastBatch rest = stepped.next(DAYS - 100);
+        assertEquals(first.dates[100], rest.dates[0]);
+        assertEquals(first.maxTemps[100], rest.maxTemps[0], 0.0);
+    }
+
+    @Test
+    public void testWeatherIsPlausible() {
+        for (int location = 0; location < 20; location++) {
+            ForecastBatch batch =
+                    new SyntheticWeatherGenerator(SEED, location, START_DATE).next(DAYS);
+
+            int clearDays = 0;
+            for (int i = 0; i < DAYS; i++) {
+                String day = "Location " + location + ", day " + i;
+                int weatherId = batch.weatherIds[i];
+
+                assertEquals(day, START_DATE + i * SunshineDateUtils.DAY_IN_MILLIS,
+                        batch.dates[i]);
+                assertTrue(day, batch.minTemps[i] <= batch.maxTemps[i]);
+                assertTrue(day, batch.maxTemps[i] > -60 && batch.maxTemps[i] < 60);
+                assertTrue(day, batch.humidities[i] >= 0 && batch.humidities[i] <= 100);
+                assertTrue(day, batch.windSpeeds[i] >= 0);
+
+                if (weatherId >= 600 && weatherId < 700) {
+                    assertTrue(day + ": snow above freezing", batch.maxTemps[i] <= 1);
+                }
+                if (weatherId >= 200 && weatherId < 300) {
+                    assertTrue(day + ": thunderstorm in the cold", batch.maxTemps[i] >= 15);
+                }
+                if (weatherId == 800) clearDays++;
+            }
+
+            assertTrue("Location " + location + " is hardly ever clear",
+                    clearDays > DAYS / 20);
+        }
+    }
+
+    @Test
+    public void testJsonMatchesRows() throws Exception {
+        ForecastBatch rows = new SyntheticWeatherGenerator(SEED, 5, START_DATE).next(16);
+        String json = new SyntheticWeatherGenerator(SEED, 5, START_DATE).nextJson("City 5", 16);
+
+        JSONArray list = new JSONObject(json).getJSONArray("list");
+        assertEquals(16, list.length());
+
+        for (int i = 0; i < list.length(); i++) {
+            JSONObject day = list.getJSONObject(i);
+            assertEquals(rows.weatherIds[i],
+                    day.getJSONArray("weather").getJSONObject(0).getInt("id"));
+            assertEquals(rows.maxTemps[i], day.getJSONObject("temp").getDouble("max"), 0.005);
+            assertEquals(rows.humidities[i], day.getInt("humidity"));
+        }
+    }
+
+    /**
+     * Inserts more rows than fit in a single Binder transaction, which only works if the
+     * generator inserts them in chunks.
+     */
+    @Test
+    public void testInsertsLargeDatasets() {
+        ContentResolver contentResolver =
+                InstrumentationRegistry.getTargetContext().getContentResolver();
+        contentResolver.delete(WeatherContract.WeatherEntry.CONTENT_URI, null, null);
+
+        int rows = 20000;
+        int inserted = new SyntheticWeatherGenerator(SEED, 0, START_DATE)
+                .insert(contentResolver, rows);
+        assertEquals(rows, inserted);
+
+        ForecastBatch stored = ForecastBatch.query(contentResolver, Long.MIN_VALUE,
+                Long.MAX_VALUE, WeatherContract.WeatherEntry.COLUMN_DATE);
+        assertEquals(rows, stored.size());
+
+        contentResolver.delete(WeatherContract.WeatherEntry.CONTENT_URI, null, null);
+    }
+}
@@ -0,0 +1,193 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.utilities;
+
+import android.os.SystemClock;
+import android.support.test.runner.AndroidJUnit4;
+import android.support.v4.os.CancellationSignal;
+import android.support.v4.os.OperationCanceledException;
+
+import com.example.android.sunshine.utils.StandInWeatherServer;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.net.URL;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertNotNull;
+import static junit.framework.Assert.assertTrue;
+import static junit.framework.Assert.fail;
+
+/**
+ * Runs WeatherEndpoints against two StandInWeatherServers, a primary and a secondary, with
+ * injected latency and errors, to check its hedging, its failover and its circuit breakers.
+ */
+@RunWith(AndroidJUnit4.class)
+public class TestWeatherEndpoints {
+
+    /* Longer than the hedge delay WeatherEndpoints uses before it knows an endpoint's latency */
+    private static final long SLOW_LATENCY_MILLIS = 6000;
+
+    private static final int TIMEOUT_MILLIS = 20000;
+
+    /* Shorter than the hedge delay, so that a cancel comes while only the primary was tried */
+    private static final long CANCEL_AFTER_MILLIS = 500;
+
+    /* Longer than the hedge delay, time enough for a fetch that ignored its cancel to go on */
+    private static final long AFTER_CANCEL_MILLIS = 4000;
+
+    /* Failures in a row that open an endpoint's circuit */
+    private static final int FAILURES_TO_OPEN = 3;
+
+    private StandInWeatherServer mPrimary;
+    private StandInWeatherServer mSecondary;
+
+    @After
+    public void after() throws IOException {
+        if (mPrimary != null) mPrimary.stop();
+        if (mSecondary != null) mSecondary.stop();
+    }
+
+    private WeatherEndpoints startServers(StandInWeatherServer primary,
+            StandInWeatherServer secondary) throws IOException {
+        mPrimary = primary.start();
+        mSecondary = secondary.start();
+        return new WeatherEndpoints(mPrimary.getBaseUrl(), mSecondary.getBaseUrl());
+    }
+
+    private static String fetch(WeatherEndpoints endpoints) throws IOException {
+        return fetch(endpoints, new CancellationSignal());
+    }
+
+    private static String fetch(WeatherEndpoints endpoints, CancellationSignal cancellation)
+            throws IOException {
+        return endpoints.fetch(new WeatherEndpoints.UrlBuilder() {
+            @Override
+            public URL build(String baseUrl) {
+                try {
+                    return new URL(baseUrl + "?q=" + StandInWeatherServer.getCityName(0)
+                            .replace(" ", "%20") + "&mode=json&units=metric&cnt=7");
+                } catch (MalformedURLException e) {
+                    throw new IllegalArgumentException(e);
+                }
+            }
+        }, cancellation, TIMEOUT_MILLIS, TIMEOUT_MILLIS);
+    }
+
+    /**
+     * A primary that is too slow loses to the hedged request sent to the secondary. Losing the
+     * race is not a failure, so the primary stays first even after more lost races than it
+     * takes failures to open its circuit.
+     */
+    @Test
+    public void testHedgeWinsAgainstSlowPrimary() throws IOException {
+        WeatherEndpoints endpoints = startServers(
+                new StandInWeatherServer().setLatencyMillis(SLOW_LATENCY_MILLIS),
+                new StandInWeatherServer());
+
+        for (int i = 0; i <= FAILURES_TO_OPEN; i++) {
+            long start = SystemClock.elapsedRealtime();
+            assertNotNull(fetch(endpoints));
+            long elapsed = SystemClock.elapsedRealtime() - start;
+
+            assertTrue("Fetch " + i + " waited " + elapsed + " ms for the slow primary",
+                    elapsed < SLOW_LATENCY_MILLIS);
+            assertEquals("The primary wasn't tried first", i + 1, mPrimary.getRequestCount());
+            assertEquals(i + 1, mSecondary.getRequestCount());
+        }
+    }
+
+    /**
+     * A primary that answers with a 500 is failed over right away, without waiting for a
+     * hedge delay.
+     */
+    @Test
+    public void testFailoverOnServerError() throws IOException {
+        WeatherEndpoints endpoints = startServers(
+                new StandInWeatherServer().setErrorRate(1),
+                new StandInWeatherServer());
+
+        long start = SystemClock.elapsedRealtime();
+        assertNotNull(fetch(endpoints));
+        long elapsed = SystemClock.elapsedRealtime() - start;
+
+        assertEquals(1, mPrimary.getErrorCount());
+        assertEquals(1, mSecondary.getRequestCount());
+        assertTrue("Failing over took " + elapsed + " ms", elapsed < SLOW_LATENCY_MILLIS / 2);
+    }
+
+    /**
+     * After failing three times in a row, the primary gets no more requests while its circuit
+     * is open. Fetches go straight to the secondary.
+     */
+    @Test
+    public void testBreakerOpensAfterConsecutiveFailures() throws IOException {
+        WeatherEndpoints endpoints = startServers(
+                new StandInWeatherServer().setErrorRate(1),
+                new StandInWeatherServer());
+
+        for (int i = 0; i < FAILURES_TO_OPEN; i++) {
+            assertNotNull(fetch(endpoints));
+        }
+        assertEquals(FAILURES_TO_OPEN, mPrimary.getRequestCount());
+
+        for (int i = 0; i < 5; i++) {
+            assertNotNull(fetch(endpoints));
+        }
+        assertEquals("The open primary got requests", FAILURES_TO_OPEN,
+                mPrimary.getRequestCount());
+        assertEquals(FAILURES_TO_OPEN + 5, mSecondary.getRequestCount());
+    }
+
+    /**
+     * A fetch canceled while the slow primary is still answering gives up right away. Neither
+     * the hedge nor the failover that the canceled primary request would otherwise cause may
+     * send a request to the secondary.
+     */
+    @Test
+    public void testCancelStopsHedgeAndFailover() throws Exception {
+        WeatherEndpoints endpoints = startServers(
+                new StandInWeatherServer().setLatencyMillis(SLOW_LATENCY_MILLIS),
+                new StandInWeatherServer());
+
+        final CancellationSignal cancellation = new CancellationSignal();
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                SystemClock.sleep(CANCEL_AFTER_MILLIS);
+                cancellation.cancel();
+            }
+        }).start();
+
+        long start = SystemClock.elapsedRealtime();
+        try {
+            fetch(endpoints, cancellation);
+            fail("The canceled fetch returned a response");
+        } catch (OperationCanceledException expected) {
+        }
+        long elapsed = SystemClock.elapsedRealtime() - start;
+        assertTrue("The canceled fetch took " + elapsed + " ms", elapsed < SLOW_LATENCY_MILLIS);
+
+        SystemClock.sleep(AFTER_CANCEL_MILLIS);
+        assertEquals(1, mPrimary.getRequestCount());
+        assertEquals("The canceled fetch went on to the secondary", 0,
+                mSecondary.getRequestCount());
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.utilities;
+
+import android.support.test.runner.AndroidJUnit4;
+import android.support.v4.os.CancellationSignal;
+
+import com.example.android.sunshine.utils.StandInWeatherServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.URL;
+import java.util.zip.GZIPOutputStream;
+
+import static junit.framework.Assert.assertEquals;
+
+/**
+ * Fetches from a StandInWeatherServer, which gzips its responses and keeps connections alive,
+ * to check how WeatherHttpClient decodes responses, counts the bytes on the wire and reuses
+ * connections.
+ */
+@RunWith(AndroidJUnit4.class)
+public class TestWeatherHttpClient {
+
+    private static final int CITY = 0;
+    private static final int DAYS = 7;
+
+    private static final int TIMEOUT_MILLIS = 20000;
+
+    private StandInWeatherServer mServer;
+    private URL mUrl;
+
+    @Before
+    public void before() throws IOException {
+        mServer = new StandInWeatherServer().start();
+        mUrl = new URL(mServer.getBaseUrl() + "?q="
+                + StandInWeatherServer.getCityName(CITY).replace(" ", "%20")
+                + "&mode=json&units=metric&cnt=" + DAYS);
+    }
+
+    @After
+    public void after() throws IOException {
+        mServer.stop();
+    }
+
+    private String fetch() throws IOException {
+        return WeatherHttpClient.get(mUrl, new CancellationSignal(),
+                TIMEOUT_MILLIS, TIMEOUT_MILLIS);
+    }
+
+    /**
+     * A gzipped response is decoded back to the JSON the server compressed.
+     */
+    @Test
+    public void testGzippedResponseIsDecoded() throws IOException {
+        assertEquals(StandInWeatherServer.forecastJson(CITY, DAYS), fetch());
+    }
+
+    /**
+     * The wire byte count grows by the compressed size of the response, not by its decoded
+     * size.
+     */
+    @Test
+    public void testWireBytesCountCompressedBody() throws IOException {
+        long before = WeatherHttpClient.getWireByteCount();
+        fetch();
+        long wireBytes = WeatherHttpClient.getWireByteCount() - before;
+
+        assertEquals(gzip(StandInWeatherServer.forecastJson(CITY, DAYS)).length, wireBytes);
+    }
+
+    /**
+     * A response read to the end hands its connection back to the pool, so back to back
+     * fetches share one connection.
+     */
+    @Test
+    public void testBackToBackFetchesReuseConnection() throws IOException {
+        for (int i = 0; i < 3; i++) {
+            fetch();
+        }
+        assertEquals(3, mServer.getRequestCount());
+        assertEquals("Fetches opened new connections", 1, mServer.getConnectionCount());
+    }
+
+    /* Compresses the way StandInWeatherServer does */
+    private static byte[] gzip(String body) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        GZIPOutputStream gzip = new GZIPOutputStream(bytes);
+        gzip.write(body.getBytes("UTF-8"));
+        gzip.close();
+        return bytes.toByteArray();
+    }
+}
@@ -0,0 +1,503 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.utils;
+
+import android.net.Uri;
+import android.util.Log;
+
+import com.example.android.sunshine.utilities.SunshineDateUtils;
+import com.example.android.sunshine.utilities.SyntheticWeatherGenerator;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * A small HTTP/1.1 server, running inside the test process, that answers like the weather
+ * server: daily forecasts shaped like OpenWeatherMap's, for a location given either as a
+ * "q" query or as "lat" and "lon". Point NetworkUtils at it with
+ * {@code NetworkUtils.setEndpoints(server.getBaseUrl())} to run syncs without the internet.
+ * <p>
+ * It serves a fixed set of cities. A query naming "City 3" gets the fourth one, any other query
+ * is hashed to one of them, and coordinates get the nearest one. The forecast of a city is made
+ * by SyntheticWeatherGenerator and only depends on the city, the number of days and the day,
+ * so every response can be compared with the next.
+ * <p>
+ * What makes a real server hard to measure against can be dialed in: a latency before each
+ * response, a bandwidth limit, a share of requests that fail with a 500 and a share of
+ * responses that are cut off halfway. Responses are gzipped when the client accepts it,
+ * connections are kept alive, and ETags can be sent and honored with a 304.
+ * <p>
+ * Configure the server before {@link #start()}. Errors and truncations are drawn from a Random
+ * seeded with {@link #setSeed(long)}, so a run can be repeated.
+ */
+public class StandInWeatherServer {
+
+    private static final String TAG = StandInWeatherServer.class.getSimpleName();
+
+    private static final String PATH = "/weather";
+
+    private static final String CITY_NAME_PREFIX = "City ";
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /* Seed of the weather, the same for every server so that runs can be compared */
+    private static final long FORECAST_SEED = 1;
+
+    /* Size of the chunks a throttled response is written in */
+    private static final int CHUNK_SIZE = 1024;
+
+    private int mDays;
+    private int mCityCount = 10;
+    private long mLatencyMillis;
+    private long mBytesPerSecond;
+    private double mErrorRate;
+    private double mTruncationRate;
+    private boolean mETags = true;
+    private long mSeed = 42;
+
+    private ServerSocket mServerSocket;
+    private ExecutorService mExecutor;
+    private Random mRandom;
+
+    /* Bodies are generated once per city and day count, then served from here */
+    private final Map<String, byte[]> mBodies = new ConcurrentHashMap<>();
+    private final Map<String, byte[]> mGzippedBodies = new ConcurrentHashMap<>();
+
+    private final AtomicInteger mRequests = new AtomicInteger();
+    private final AtomicInteger mErrors = new AtomicInteger();
+    private final AtomicInteger mTruncations = new AtomicInteger();
+    private final AtomicInteger mNotModified = new AtomicInteger();
+    private final AtomicInteger mConnections = new AtomicInteger();
+    private final AtomicLong mBytesSent = new AtomicLong();
+
+    /**
+     * @param days Days of forecast in every response, or 0 to honor the "cnt" parameter of the
+     *             request (14 if it has none)
+     */
+    public StandInWeatherServer setDays(int days) {
+        mDays = days;
+        return this;
+    }
+
+    /**
+     * @param cityCount Number of distinct cities the server knows the weather of
+     */
+    public StandInWeatherServer setCityCount(int cityCount) {
+        mCityCount = cityCount;
+        return this;
+    }
+
+    /**
+     * @param latencyMillis How long to wait before answering each request
+     */
+    public StandInWeatherServer setLatencyMillis(long latencyMillis) {
+        mLatencyMillis = latencyMillis;
+        return this;
+    }
+
+    /**
+     * @param bytesPerSecond How fast response bodies are written, or 0 for as fast as possible
+     */
+    public StandInWeatherServer setBytesPerSecond(long bytesPerSecond) {
+        mBytesPerSecond = bytesPerSecond;
+        return this;
+    }
+
+    /**
+     * @param errorRate Share of requests, from 0 to 1, answered with a 500
+     */
+    public StandInWeatherServer setErrorRate(double errorRate) {
+        mErrorRate = errorRate;
+        return this;
+    }
+
+    /**
+     * @param truncationRate Share of responses, from 0 to 1, whose connection is closed halfway
+     *                       through the body
+     */
+    public StandInWeatherServer setTruncationRate(double truncationRate) {
+        mTruncationRate = truncationRate;
+        return this;
+    }
+
+    /**
+     * @param eTags Whether to send an ETag with each response and answer a matching
+     *              If-None-Match with a 304
+     */
+    public StandInWeatherServer setETags(boolean eTags) {
+        mETags = eTags;
+        return this;
+    }
+
+    /**
+     * @param seed Seed of the draws that decide which requests fail or are truncated
+     */
+    public StandInWeatherServer setSeed(long seed) {
+        mSeed = seed;
+        return this;
+    }
+
+    /**
+     * Starts listening on a free port of the loopback interface.
+     */
+    public StandInWeatherServer start() throws IOException {
+        mRandom = new Random(mSeed);
+        mServerSocket = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+        mExecutor = Executors.newCachedThreadPool();
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                acceptConnections();
+            }
+        });
+        return this;
+    }
+
+    /**
+     * Stops listening and closes every connection.
+     */
+    public void stop() throws IOException {
+        mServerSocket.close();
+        mExecutor.shutdownNow();
+        try {
+            mExecutor.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @return The base URL to hand to NetworkUtils.setEndpoints
+     */
+    public String getBaseUrl() {
+        return "http://127.0.0.1:" + mServerSocket.getLocalPort() + PATH;
+    }
+
+    /* Statistics since the server started */
+
+    public int getRequestCount() {
+        return mRequests.get();
+    }
+
+    public int getErrorCount() {
+        return mErrors.get();
+    }
+
+    public int getTruncationCount() {
+        return mTruncations.get();
+    }
+
+    public int getNotModifiedCount() {
+        return mNotModified.get();
+    }
+
+    public int getConnectionCount() {
+        return mConnections.get();
+    }
+
+    public long getBytesSent() {
+        return mBytesSent.get();
+    }
+
+    /**
+     * @param city Index of a city, from 0 to the city count
+     * @return The name to query that city by
+     */
+    public static String getCityName(int city) {
+        return CITY_NAME_PREFIX + city;
+    }
+
+    private void acceptConnections() {
+        while (!mServerSocket.isClosed()) {
+            try {
+                final Socket socket = mServerSocket.accept();
+                mConnections.incrementAndGet();
+                mExecutor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        serve(socket);
+                    }
+                });
+            } catch (SocketException e) {
+                /* The server socket was closed by stop() */
+                return;
+            } catch (IOException e) {
+                Log.w(TAG, "Couldn't accept a connection", e);
+            }
+        }
+    }
+
+    /* Answers every request of a keep-alive connection, until the client closes it */
+    private void serve(Socket socket) {
+        try {
+            InputStream in = new BufferedInputStream(socket.getInputStream());
+            OutputStream out = socket.getOutputStream();
+
+            while (true) {
+                String requestLine = readLine(in);
+                if (requestLine == null || requestLine.isEmpty()) break;
+
+                Map<String, String> headers = new HashMap<>();
+                String header;
+                while ((header = readLine(in)) != null && !header.isEmpty()) {
+                    int colon = header.indexOf(':');
+                    if (colon > 0) {
+                        headers.put(header.substring(0, colon).trim().toLowerCase(Locale.US),
+                                header.substring(colon + 1).trim());
+                    }
+                }
+
+                if (!respond(requestLine, headers, out)) break;
+            }
+        } catch (IOException e) {
+            /* The client went away, or the response was truncated on purpose */
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            try {
+                socket.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    /* Writes the response to one request. Returns whether the connection can be reused. */
+    private boolean respond(String requestLine, Map<String, String> headers, OutputStream out)
+            throws IOException, InterruptedException {
+        mRequests.incrementAndGet();
+
+        String[] parts = requestLine.split(" ");
+        Uri uri = Uri.parse(parts.length > 1 ? parts[1] : "/");
+
+        if (mLatencyMillis > 0) {
+            Thread.sleep(mLatencyMillis);
+        }
+
+        boolean fail;
+        boolean truncate;
+        synchronized (mRandom) {
+            fail = mRandom.nextDouble() < mErrorRate;
+            truncate = mRandom.nextDouble() < mTruncationRate;
+        }
+
+        if (!PATH.equals(uri.getPath())) {
+            writeHead(out, "404 Not Found", 0, null, null);
+            return true;
+        }
+
+        if (fail) {
+            mErrors.incrementAndGet();
+            writeHead(out, "500 Internal Server Error", 0, null, null);
+            return true;
+        }
+
+        int city = findCity(uri);
+        int days = mDays;
+        if (days == 0) {
+            String count = uri.getQueryParameter("cnt");
+            days = count == null ? 14 : Integer.parseInt(count);
+        }
+
+        byte[] body = body(city, days);
+        String eTag = mETags ? "\"" + Integer.toHexString(Arrays.hashCode(body)) + "\""
+                : null;
+
+        if (eTag != null && eTag.equals(headers.get("if-none-match"))) {
+            mNotModified.incrementAndGet();
+            writeHead(out, "304 Not Modified", 0, null, eTag);
+            return true;
+        }
+
+        String encoding = null;
+        String acceptEncoding = headers.get("accept-encoding");
+        if (acceptEncoding != null && acceptEncoding.contains("gzip")) {
+            body = gzippedBody(city, days);
+            encoding = "gzip";
+        }
+
+        writeHead(out, "200 OK", body.length, encoding, eTag);
+
+        int length = body.length;
+        if (truncate) {
+            mTruncations.incrementAndGet();
+            length = body.length / 2;
+        }
+        writeThrottled(out, body, length);
+
+        /* A truncated response can only end by closing the connection */
+        return !truncate;
+    }
+
+    private void writeHead(OutputStream out, String status, int contentLength, String encoding,
+            String eTag) throws IOException {
+        StringBuilder head = new StringBuilder()
+                .append("HTTP/1.1 ").append(status).append("\r\n")
+                .append("Content-Type: application/json; charset=utf-8\r\n")
+                .append("Content-Length: ").append(contentLength).append("\r\n");
+        if (encoding != null) {
+            head.append("Content-Encoding: ").append(encoding).append("\r\n");
+        }
+        if (eTag != null) {
+            head.append("ETag: ").append(eTag).append("\r\n");
+        }
+        head.append("\r\n");
+
+        byte[] bytes = head.toString().getBytes("US-ASCII");
+        out.write(bytes);
+        out.flush();
+        mBytesSent.addAndGet(bytes.length);
+    }
+
+    private void writeThrottled(OutputStream out, byte[] body, int length)
+            throws IOException, InterruptedException {
+        if (mBytesPerSecond <= 0) {
+            out.write(body, 0, length);
+            out.flush();
+            mBytesSent.addAndGet(length);
+            return;
+        }
+
+        for (int offset = 0; offset < length; offset += CHUNK_SIZE) {
+            int chunk = Math.min(CHUNK_SIZE, length - offset);
+            out.write(body, offset, chunk);
+            out.flush();
+            mBytesSent.addAndGet(chunk);
+            Thread.sleep(chunk * 1000L / mBytesPerSecond);
+        }
+    }
+
+    /* The city named by the "q" parameter, or the one nearest to "lat" and "lon" */
+    private int findCity(Uri uri) {
+        String query = uri.getQueryParameter("q");
+        if (query != null) {
+            if (query.regionMatches(true, 0, CITY_NAME_PREFIX, 0, CITY_NAME_PREFIX.length())) {
+                try {
+                    int city = Integer.parseInt(
+                            query.substring(CITY_NAME_PREFIX.length()).trim());
+                    if (city >= 0 && city < mCityCount) return city;
+                } catch (NumberFormatException ignored) {
+                }
+            }
+            return (query.toLowerCase(Locale.US).hashCode() & Integer.MAX_VALUE) % mCityCount;
+        }
+
+        double latitude = parseDouble(uri.getQueryParameter("lat"));
+        double longitude = parseDouble(uri.getQueryParameter("lon"));
+
+        int nearest = 0;
+        double nearestDistance = Double.MAX_VALUE;
+        for (int city = 0; city < mCityCount; city++) {
+            double latitudeDistance = cityLatitude(city) - latitude;
+            double longitudeDistance = cityLongitude(city) - longitude;
+            double distance = latitudeDistance * latitudeDistance
+                    + longitudeDistance * longitudeDistance;
+            if (distance < nearestDistance) {
+                nearest = city;
+                nearestDistance = distance;
+            }
+        }
+        return nearest;
+    }
+
+    private static double cityLatitude(int city) {
+        return SyntheticWeatherGenerator.latitudeOf(city);
+    }
+
+    private static double cityLongitude(int city) {
+        return SyntheticWeatherGenerator.longitudeOf(city);
+    }
+
+    private byte[] body(int city, int days) {
+        String key = city + "/" + days;
+        byte[] body = mBodies.get(key);
+        if (body == null) {
+            body = forecastJson(city, days).getBytes(UTF_8);
+            mBodies.put(key, body);
+        }
+        return body;
+    }
+
+    private byte[] gzippedBody(int city, int days) throws IOException {
+        String key = city + "/" + days;
+        byte[] gzipped = mGzippedBodies.get(key);
+        if (gzipped == null) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            GZIPOutputStream gzip = new GZIPOutputStream(bytes);
+            gzip.write(body(city, days));
+            gzip.close();
+            gzipped = bytes.toByteArray();
+            mGzippedBodies.put(key, gzipped);
+        }
+        return gzipped;
+    }
+
+    /**
+     * Builds the forecast of a city the way OpenWeatherMap's daily forecast API formats it,
+     * starting today. See SyntheticWeatherGenerator for the weather itself.
+     *
+     * @param city Index of the city
+     * @param days Number of days of forecast
+     * @return The response body
+     */
+    public static String forecastJson(int city, int days) {
+        long today = SunshineDateUtils.getNormalizedUtcDateForToday();
+        return new SyntheticWeatherGenerator(FORECAST_SEED, city, today)
+                .nextJson(getCityName(city), days);
+    }
+
+    private static double parseDouble(String value) {
+        try {
+            return value == null ? 0 : Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    /* Reads one CRLF terminated line of ASCII, or returns null at the end of the stream */
+    private static String readLine(InputStream in) throws IOException {
+        StringBuilder line = new StringBuilder();
+        int c;
+        while ((c = in.read()) != -1) {
+            if (c == '\n') {
+                int length = line.length();
+                if (length > 0 && line.charAt(length - 1) == '\r') line.setLength(length - 1);
+                return line.toString();
+            }
+            line.append((char) c);
+        }
+        return line.length() == 0 ? null : line.toString();
+    }
+}
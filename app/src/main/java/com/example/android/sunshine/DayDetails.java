@@ -0,0 +1,204 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine;
+
+import android.content.Context;
+import android.graphics.drawable.Drawable;
+import android.support.v4.content.ContextCompat;
+import android.support.v4.util.LruCache;
+
+import com.example.android.sunshine.data.Forecast;
+import com.example.android.sunshine.utilities.SunshineDateUtils;
+import com.example.android.sunshine.utilities.SunshineWeatherUtils;
+
+import java.util.Locale;
+
+/**
+ * Everything the detail screen shows for one day, already formatted: the Strings, their
+ * accessibility descriptions and the large weather art.
+ * <p>
+ * Formatting a day and inflating its vector art take long enough to be noticed between a tap in
+ * the forecast list and the first frame of DetailActivity. ForecastAdapter therefore
+ * {@link #warm(Context, Forecast, int) warms} the days that are visible or being touched, and
+ * DetailPagerAdapter binds from the warmed instances.
+ * <p>
+ * Instances are cached per day and only reused for the exact Forecast (and locale) they were
+ * made from. A new Forecast, which is what a units change or a sync produces, simply misses.
+ */
+final class DayDetails {
+
+    /* Two weeks of forecast, with room for the days of the previous Forecast to age out */
+    private static final int CACHE_SIZE = 32;
+
+    /* Keyed by normalized date. Only touched on the main thread. */
+    private static final LruCache<Long, DayDetails> sCache = new LruCache<>(CACHE_SIZE);
+
+    /* What this instance was made from, to tell whether it is still valid */
+    private final Forecast mForecast;
+    private final Locale mLocale;
+
+    final int weatherImageId;
+    final Drawable.ConstantState weatherArt;
+
+    final String dateText;
+    final String description;
+    final String descriptionA11y;
+    final String highString;
+    final String highA11y;
+    final String lowString;
+    final String lowA11y;
+    final String humidityString;
+    final String humidityA11y;
+    final String windString;
+    final String windA11y;
+    final String pressureString;
+    final String pressureA11y;
+
+    private DayDetails(Context context, Forecast forecast, int row) {
+        mForecast = forecast;
+        mLocale = Locale.getDefault();
+
+        /****************
+         * Weather Icon *
+         ****************/
+        /* Read weather condition ID from the forecast (ID provided by Open Weather Map) */
+        int weatherId = forecast.getWeatherId(row);
+        /* Use our utility method to determine the resource ID for the proper art */
+        weatherImageId = SunshineWeatherUtils.getLargeArtResourceIdForWeatherCondition(weatherId);
+
+        /*
+         * The art is a vector drawable, so loading it means parsing its XML. Keeping the constant
+         * state lets every page create its own Drawable from the parsed art without parsing again.
+         */
+        Drawable art = ContextCompat.getDrawable(context, weatherImageId);
+        weatherArt = art == null ? null : art.getConstantState();
+
+        /****************
+         * Weather Date *
+         ****************/
+        /*
+         * Read the date from the forecast. It is important to note that the date from the
+         * forecast is the same date from the weather SQL table. The date that is stored is a GMT
+         * representation at midnight of the date when the weather information was loaded for.
+         *
+         * When displaying this date, one must add the GMT offset (in milliseconds) to acquire
+         * the date representation for the local date in local time.
+         * SunshineDateUtils#getFriendlyDateString takes care of this for us.
+         */
+        long localDateMidnightGmt = forecast.getDate(row);
+        dateText = SunshineDateUtils.getFriendlyDateString(context, localDateMidnightGmt, true);
+
+        /***********************
+         * Weather Description *
+         ***********************/
+        /* Use the weatherId to obtain the proper description */
+        description = SunshineWeatherUtils.getStringForWeatherCondition(context, weatherId);
+
+        /* Create the accessibility (a11y) String from the weather description */
+        descriptionA11y = context.getString(R.string.a11y_forecast, description);
+
+        /**************************
+         * High (max) temperature *
+         **************************/
+        /*
+         * If the user's preference for weather is fahrenheit, formatTemperature will convert
+         * the temperature. This method will also append either °C or °F to the temperature
+         * String.
+         */
+        highString = SunshineWeatherUtils.formatTemperature(context, forecast.getMaxTemp(row));
+        highA11y = context.getString(R.string.a11y_high_temp, highString);
+
+        /*************************
+         * Low (min) temperature *
+         *************************/
+        lowString = SunshineWeatherUtils.formatTemperature(context, forecast.getMinTemp(row));
+        lowA11y = context.getString(R.string.a11y_low_temp, lowString);
+
+        /************
+         * Humidity *
+         ************/
+        float humidity = forecast.getHumidity(row);
+        humidityString = context.getString(R.string.format_humidity, humidity);
+        humidityA11y = context.getString(R.string.a11y_humidity, humidityString);
+
+        /****************************
+         * Wind speed and direction *
+         ****************************/
+        /* Wind speed (in MPH) and direction (in compass degrees) */
+        float windSpeed = (float) forecast.getWindSpeed(row);
+        float windDirection = (float) forecast.getDegrees(row);
+        windString = SunshineWeatherUtils.getFormattedWind(context, windSpeed, windDirection);
+        windA11y = context.getString(R.string.a11y_wind, windString);
+
+        /************
+         * Pressure *
+         ************/
+        /*
+         * Format the pressure text using string resources. The reason we directly access
+         * resources using getString rather than using a method from SunshineWeatherUtils as
+         * we have for other data displayed on this page is because there is no
+         * additional logic that needs to be considered in order to properly display the
+         * pressure.
+         */
+        float pressure = (float) forecast.getPressure(row);
+        pressureString = context.getString(R.string.format_pressure, pressure);
+        pressureA11y = context.getString(R.string.a11y_pressure, pressureString);
+    }
+
+    /**
+     * Returns the details of one day, formatting them only if they haven't been warmed yet.
+     * Must be called on the main thread.
+     *
+     * @param context  Used to format Strings and load the art
+     * @param forecast The forecast the day belongs to
+     * @param row      The day within the forecast
+     * @return The formatted details of that day
+     */
+    static DayDetails get(Context context, Forecast forecast, int row) {
+        DayDetails details = peek(forecast, row);
+        if (details == null) {
+            details = new DayDetails(context.getApplicationContext(), forecast, row);
+            sCache.put(forecast.getDate(row), details);
+        }
+        return details;
+    }
+
+    /**
+     * @param forecast The forecast the day belongs to
+     * @param row      The day within the forecast
+     * @return The details of that day if they are already warmed, null otherwise
+     */
+    static DayDetails peek(Forecast forecast, int row) {
+        DayDetails details = sCache.get(forecast.getDate(row));
+        if (details != null
+                && details.mForecast == forecast
+                && details.mLocale.equals(Locale.getDefault())) {
+            return details;
+        }
+        return null;
+    }
+
+    /**
+     * Formats a day ahead of time so that the detail screen can bind it without any work.
+     *
+     * @param context  Used to format Strings and load the art
+     * @param forecast The forecast the day belongs to
+     * @param row      The day within the forecast
+     */
+    static void warm(Context context, Forecast forecast, int row) {
+        get(context, forecast, row);
+    }
+}
@@ -16,26 +16,23 @@
 package com.example.android.sunshine;
 
 import android.content.Intent;
-import android.database.Cursor;
-import android.databinding.DataBindingUtil;
 import android.net.Uri;
 import android.os.Bundle;
-import android.support.v4.app.LoaderManager;
+import android.os.SystemClock;
 import android.support.v4.app.ShareCompat;
-import android.support.v4.content.CursorLoader;
-import android.support.v4.content.Loader;
+import android.support.v4.view.ViewPager;
 import android.support.v7.app.AppCompatActivity;
+import android.util.Log;
 import android.view.Menu;
 import android.view.MenuInflater;
 import android.view.MenuItem;
+import android.view.ViewTreeObserver;
 
-import com.example.android.sunshine.data.WeatherContract;
-import com.example.android.sunshine.databinding.ActivityDetailBinding;
-import com.example.android.sunshine.utilities.SunshineDateUtils;
-import com.example.android.sunshine.utilities.SunshineWeatherUtils;
+import com.example.android.sunshine.data.Forecast;
+import com.example.android.sunshine.data.ForecastRepository;
 
 public class DetailActivity extends AppCompatActivity implements
-        LoaderManager.LoaderCallbacks<Cursor> {
+        ForecastRepository.Listener {
 
     /*
      * In this Activity, you can share the selected day's forecast. No social sharing is complete
@@ -44,71 +41,162 @@ public class DetailActivity extends AppCompatActivity implements
     private static final String FORECAST_SHARE_HASHTAG = " #SunshineApp";
 
     /*
-     * The columns of data that we are interested in displaying within our DetailActivity's
-     * weather display.
+     * How many days on each side of the current one are kept bound and ready in the ViewPager.
+     * Swiping to a neighbouring day shows a page that has already been laid out.
      */
-    public static final String[] WEATHER_DETAIL_PROJECTION = {
-            WeatherContract.WeatherEntry.COLUMN_DATE,
-            WeatherContract.WeatherEntry.COLUMN_MAX_TEMP,
-            WeatherContract.WeatherEntry.COLUMN_MIN_TEMP,
-            WeatherContract.WeatherEntry.COLUMN_HUMIDITY,
-            WeatherContract.WeatherEntry.COLUMN_PRESSURE,
-            WeatherContract.WeatherEntry.COLUMN_WIND_SPEED,
-            WeatherContract.WeatherEntry.COLUMN_DEGREES,
-            WeatherContract.WeatherEntry.COLUMN_WEATHER_ID
-    };
+    private static final int OFFSCREEN_PAGE_LIMIT = 1;
 
-    /*
-     * We store the indices of the values in the array of Strings above to more quickly be able
-     * to access the data from our query. If the order of the Strings above changes, these
-     * indices must be adjusted to match the order of the Strings.
+    /**
+     * Optional Intent extra: the {@link SystemClock#uptimeMillis()} at which the user tapped the
+     * day that opened this Activity. When present, the time from that tap until the day's
+     * details are about to be drawn is logged.
      */
-    public static final int INDEX_WEATHER_DATE = 0;
-    public static final int INDEX_WEATHER_MAX_TEMP = 1;
-    public static final int INDEX_WEATHER_MIN_TEMP = 2;
-    public static final int INDEX_WEATHER_HUMIDITY = 3;
-    public static final int INDEX_WEATHER_PRESSURE = 4;
-    public static final int INDEX_WEATHER_WIND_SPEED = 5;
-    public static final int INDEX_WEATHER_DEGREES = 6;
-    public static final int INDEX_WEATHER_CONDITION_ID = 7;
+    public static final String EXTRA_TAP_UPTIME_MILLIS =
+            "com.example.android.sunshine.extra.TAP_UPTIME_MILLIS";
 
-    /*
-     * This ID will be used to identify the Loader responsible for loading the weather details
-     * for a particular day. In some cases, one Activity can deal with many Loaders. However, in
-     * our case, there is only one. We will still use this ID to initialize the loader and create
-     * the loader for best practice. Please note that 353 was chosen arbitrarily. You can use
-     * whatever number you like, so long as it is unique and consistent.
-     */
-    private static final int ID_DETAIL_LOADER = 353;
+    private static final String TAG = DetailActivity.class.getSimpleName();
 
-    /* A summary of the forecast that can be shared by clicking the share button in the ActionBar */
-    private String mForecastSummary;
+    /* Key used to remember which day was shown across configuration changes */
+    private static final String STATE_DATE = "date";
 
-    /* The URI that is used to access the chosen day's weather details */
+    /* The URI that was used to open the chosen day's weather details */
     private Uri mUri;
 
-
     /*
-     * This field is used for data binding. Normally, we would have to call findViewById many
-     * times to get references to the Views in this Activity. With data binding however, we only
-     * need to call DataBindingUtil.setContentView and pass in a Context and a layout, as we do
-     * in onCreate of this class. Then, we can access all of the Views in our layout
-     * programmatically without cluttering up the code with findViewById.
+     * The normalized date of the day currently shown. It starts as the date of mUri and follows
+     * the user as they swipe, so a new Forecast keeps showing the same day.
      */
-    private ActivityDetailBinding mDetailBinding;
+    private long mDate;
+
+    /* True once the ViewPager has been moved to mDate after the first Forecast arrived */
+    private boolean mInitialPageShown;
+
+    /* Holds the forecast that MainActivity already loaded, so opening this screen reads nothing */
+    private ForecastRepository mForecastRepository;
+
+    private ViewPager mPager;
+    private DetailPagerAdapter mPagerAdapter;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
-
-
-        mDetailBinding = DataBindingUtil.setContentView(this, R.layout.activity_detail);
+        setContentView(R.layout.activity_detail_pager);
 
         mUri = getIntent().getData();
         if (mUri == null) throw new NullPointerException("URI for DetailActivity cannot be null");
 
-        /* This connects our Activity into the loader lifecycle. */
-        getSupportLoaderManager().initLoader(ID_DETAIL_LOADER, null, this);
+        /* The date is the last path segment, as for WeatherProvider's CODE_WEATHER_WITH_DATE */
+        mDate = Long.parseLong(mUri.getLastPathSegment());
+        if (savedInstanceState != null) {
+            mDate = savedInstanceState.getLong(STATE_DATE, mDate);
+        }
+
+        mPager = (ViewPager) findViewById(R.id.detail_pager);
+        mPager.setOffscreenPageLimit(OFFSCREEN_PAGE_LIMIT);
+
+        mPagerAdapter = new DetailPagerAdapter(this);
+
+        /*
+         * The current page and OFFSCREEN_PAGE_LIMIT pages on each side are inflated on the first
+         * layout. One spare page is inflated now, so the first swipe already rebinds a page
+         * instead of inflating one.
+         */
+        mPagerAdapter.preInflatePages(mPager, 1);
+        mPager.setAdapter(mPagerAdapter);
+
+        mPager.addOnPageChangeListener(new ViewPager.SimpleOnPageChangeListener() {
+            @Override
+            public void onPageSelected(int position) {
+                mDate = mPagerAdapter.getDate(position);
+            }
+        });
+
+        mForecastRepository = ForecastRepository.getInstance(this);
+
+        /*
+         * When we are opened from the forecast list, the Forecast is already in memory and the
+         * chosen day has usually been warmed by ForecastAdapter. Binding it right here means the
+         * pages exist by the first layout, so the very first frame shows the details.
+         */
+        Forecast forecast = mForecastRepository.getForecast();
+        boolean warm = false;
+        if (forecast != null) {
+            int page = forecast.indexOfDate(mDate);
+            warm = page != -1 && DayDetails.peek(forecast, page) != null;
+            onForecastChanged(forecast);
+        }
+
+        long tapUptimeMillis = getIntent().getLongExtra(EXTRA_TAP_UPTIME_MILLIS, 0);
+        if (savedInstanceState == null && tapUptimeMillis != 0) {
+            logTapToContent(tapUptimeMillis, warm);
+        }
+    }
+
+    /*
+     * Logs how long it took from the tap in the forecast list until a frame with the details in
+     * it was about to be drawn, and whether those details had been warmed before the tap.
+     */
+    private void logTapToContent(final long tapUptimeMillis, final boolean warm) {
+        final ViewTreeObserver observer = mPager.getViewTreeObserver();
+        observer.addOnPreDrawListener(new ViewTreeObserver.OnPreDrawListener() {
+            @Override
+            public boolean onPreDraw() {
+                if (mPager.getChildCount() == 0) return true;
+
+                mPager.getViewTreeObserver().removeOnPreDrawListener(this);
+                Log.i(TAG, "Tap to content in " + (SystemClock.uptimeMillis() - tapUptimeMillis)
+                        + " ms (" + (warm ? "warm" : "cold") + ")");
+                return true;
+            }
+        });
+    }
+
+    /*
+     * Subscribing binds the chosen day immediately if the forecast is already in memory, which
+     * is always the case when we were opened from MainActivity.
+     */
+    @Override
+    protected void onStart() {
+        super.onStart();
+        mForecastRepository.subscribe(this);
+    }
+
+    @Override
+    protected void onStop() {
+        super.onStop();
+        mForecastRepository.unsubscribe(this);
+    }
+
+    @Override
+    protected void onSaveInstanceState(Bundle outState) {
+        super.onSaveInstanceState(outState);
+        outState.putLong(STATE_DATE, mDate);
+    }
+
+    /**
+     * Called by ForecastRepository with the forecast from today onwards, right after subscribing
+     * if it is already in memory, and again every time the weather data changes. Every day of
+     * the forecast becomes a page, and we make sure the day the user is looking at stays selected.
+     *
+     * @param forecast The latest forecast
+     */
+    @Override
+    public void onForecastChanged(Forecast forecast) {
+        /* onCreate may already have bound this exact Forecast */
+        if (forecast == mPagerAdapter.getForecast()) return;
+
+        mPagerAdapter.swapForecast(forecast);
+
+        /*
+         * The forecast starts at today, so a day in the past (or one that was deleted since the
+         * user clicked it) has no page. In that case we stay on whatever page is selected.
+         */
+        int page = forecast.indexOfDate(mDate);
+        if (page != -1) {
+            /* Jump straight to the page the first time, don't scroll through the days before it */
+            mPager.setCurrentItem(page, mInitialPageShown);
+            mInitialPageShown = true;
+        }
     }
 
     /**
@@ -154,6 +242,8 @@ public class DetailActivity extends AppCompatActivity implements
 
         /* Share menu item clicked */
         if (id == R.id.action_share) {
+            /* Nothing to share until the forecast has been loaded */
+            if (mPagerAdapter.getCount() == 0) return true;
             Intent shareIntent = createShareForecastIntent();
             startActivity(shareIntent);
             return true;
@@ -163,230 +253,20 @@ public class DetailActivity extends AppCompatActivity implements
     }
 
     /**
-     * Uses the ShareCompat Intent builder to create our Forecast intent for sharing.  All we need
-     * to do is set the type, text and the NEW_DOCUMENT flag so it treats our share as a new task.
+     * Uses the ShareCompat Intent builder to create our Forecast intent for sharing the day that
+     * is currently shown.  All we need to do is set the type, text and the NEW_DOCUMENT flag so
+     * it treats our share as a new task.
      * See: http://developer.android.com/guide/components/tasks-and-back-stack.html for more info.
      *
      * @return the Intent to use to share our weather forecast
      */
     private Intent createShareForecastIntent() {
+        String forecastSummary = mPagerAdapter.getForecastSummary(mPager.getCurrentItem());
         Intent shareIntent = ShareCompat.IntentBuilder.from(this)
                 .setType("text/plain")
-                .setText(mForecastSummary + FORECAST_SHARE_HASHTAG)
+                .setText(forecastSummary + FORECAST_SHARE_HASHTAG)
                 .getIntent();
         shareIntent.addFlags(Intent.FLAG_ACTIVITY_NEW_DOCUMENT);
         return shareIntent;
     }
-
-    /**
-     * Creates and returns a CursorLoader that loads the data for our URI and stores it in a Cursor.
-     *
-     * @param loaderId The loader ID for which we need to create a loader
-     * @param loaderArgs Any arguments supplied by the caller
-     *
-     * @return A new Loader instance that is ready to start loading.
-     */
-    @Override
-    public Loader<Cursor> onCreateLoader(int loaderId, Bundle loaderArgs) {
-
-        switch (loaderId) {
-
-            case ID_DETAIL_LOADER:
-
-                return new CursorLoader(this,
-                        mUri,
-                        WEATHER_DETAIL_PROJECTION,
-                        null,
-                        null,
-                        null);
-
-            default:
-                throw new RuntimeException("Loader Not Implemented: " + loaderId);
-        }
-    }
-
-    /**
-     * Runs on the main thread when a load is complete. If initLoader is called (we call it from
-     * onCreate in DetailActivity) and the LoaderManager already has completed a previous load
-     * for this Loader, onLoadFinished will be called immediately. Within onLoadFinished, we bind
-     * the data to our views so the user can see the details of the weather on the date they
-     * selected from the forecast.
-     *
-     * @param loader The cursor loader that finished.
-     * @param data   The cursor that is being returned.
-     */
-    @Override
-    public void onLoadFinished(Loader<Cursor> loader, Cursor data) {
-
-        /*
-         * Before we bind the data to the UI that will display that data, we need to check the
-         * cursor to make sure we have the results that we are expecting. In order to do that, we
-         * check to make sure the cursor is not null and then we call moveToFirst on the cursor.
-         * Although it may not seem obvious at first, moveToFirst will return true if it contains
-         * a valid first row of data.
-         *
-         * If we have valid data, we want to continue on to bind that data to the UI. If we don't
-         * have any data to bind, we just return from this method.
-         */
-        boolean cursorHasValidData = false;
-        if (data != null && data.moveToFirst()) {
-            /* We have valid data, continue on to bind the data to the UI */
-            cursorHasValidData = true;
-        }
-
-        if (!cursorHasValidData) {
-            /* No data to display, simply return and do nothing */
-            return;
-        }
-
-        /****************
-         * Weather Icon *
-         ****************/
-        /* Read weather condition ID from the cursor (ID provided by Open Weather Map) */
-        int weatherId = data.getInt(INDEX_WEATHER_CONDITION_ID);
-        /* Use our utility method to determine the resource ID for the proper art */
-        int weatherImageId = SunshineWeatherUtils.getLargeArtResourceIdForWeatherCondition(weatherId);
-
-        /* Set the resource ID on the icon to display the art */
-        mDetailBinding.primaryInfo.weatherIcon.setImageResource(weatherImageId);
-
-        /****************
-         * Weather Date *
-         ****************/
-        /*
-         * Read the date from the cursor. It is important to note that the date from the cursor
-         * is the same date from the weather SQL table. The date that is stored is a GMT
-         * representation at midnight of the date when the weather information was loaded for.
-         *
-         * When displaying this date, one must add the GMT offset (in milliseconds) to acquire
-         * the date representation for the local date in local time.
-         * SunshineDateUtils#getFriendlyDateString takes care of this for us.
-         */
-        long localDateMidnightGmt = data.getLong(INDEX_WEATHER_DATE);
-        String dateText = SunshineDateUtils.getFriendlyDateString(this, localDateMidnightGmt, true);
-
-        mDetailBinding.primaryInfo.date.setText(dateText);
-
-        /***********************
-         * Weather Description *
-         ***********************/
-        /* Use the weatherId to obtain the proper description */
-        String description = SunshineWeatherUtils.getStringForWeatherCondition(this, weatherId);
-
-        /* Create the accessibility (a11y) String from the weather description */
-        String descriptionA11y = getString(R.string.a11y_forecast, description);
-
-        /* Set the text and content description (for accessibility purposes) */
-        mDetailBinding.primaryInfo.weatherDescription.setText(description);
-        mDetailBinding.primaryInfo.weatherDescription.setContentDescription(descriptionA11y);
-
-        /* Set the content description on the weather image (for accessibility purposes) */
-        mDetailBinding.primaryInfo.weatherIcon.setContentDescription(descriptionA11y);
-
-        /**************************
-         * High (max) temperature *
-         **************************/
-        /* Read high temperature from the cursor (in degrees celsius) */
-        double highInCelsius = data.getDouble(INDEX_WEATHER_MAX_TEMP);
-        /*
-         * If the user's preference for weather is fahrenheit, formatTemperature will convert
-         * the temperature. This method will also append either °C or °F to the temperature
-         * String.
-         */
-        String highString = SunshineWeatherUtils.formatTemperature(this, highInCelsius);
-
-        /* Create the accessibility (a11y) String from the weather description */
-        String highA11y = getString(R.string.a11y_high_temp, highString);
-
-        /* Set the text and content description (for accessibility purposes) */
-        mDetailBinding.primaryInfo.highTemperature.setText(highString);
-        mDetailBinding.primaryInfo.highTemperature.setContentDescription(highA11y);
-
-        /*************************
-         * Low (min) temperature *
-         *************************/
-        /* Read low temperature from the cursor (in degrees celsius) */
-        double lowInCelsius = data.getDouble(INDEX_WEATHER_MIN_TEMP);
-        /*
-         * If the user's preference for weather is fahrenheit, formatTemperature will convert
-         * the temperature. This method will also append either °C or °F to the temperature
-         * String.
-         */
-        String lowString = SunshineWeatherUtils.formatTemperature(this, lowInCelsius);
-
-        String lowA11y = getString(R.string.a11y_low_temp, lowString);
-
-        /* Set the text and content description (for accessibility purposes) */
-        mDetailBinding.primaryInfo.lowTemperature.setText(lowString);
-        mDetailBinding.primaryInfo.lowTemperature.setContentDescription(lowA11y);
-
-        /************
-         * Humidity *
-         ************/
-        /* Read humidity from the cursor */
-        float humidity = data.getFloat(INDEX_WEATHER_HUMIDITY);
-        String humidityString = getString(R.string.format_humidity, humidity);
-
-        String humidityA11y = getString(R.string.a11y_humidity, humidityString);
-
-        /* Set the text and content description (for accessibility purposes) */
-        mDetailBinding.extraDetails.humidity.setText(humidityString);
-        mDetailBinding.extraDetails.humidity.setContentDescription(humidityA11y);
-
-        mDetailBinding.extraDetails.humidityLabel.setContentDescription(humidityA11y);
-
-        /****************************
-         * Wind speed and direction *
-         ****************************/
-        /* Read wind speed (in MPH) and direction (in compass degrees) from the cursor  */
-        float windSpeed = data.getFloat(INDEX_WEATHER_WIND_SPEED);
-        float windDirection = data.getFloat(INDEX_WEATHER_DEGREES);
-        String windString = SunshineWeatherUtils.getFormattedWind(this, windSpeed, windDirection);
-
-        String windA11y = getString(R.string.a11y_wind, windString);
-
-        /* Set the text and content description (for accessibility purposes) */
-        mDetailBinding.extraDetails.windMeasurement.setText(windString);
-        mDetailBinding.extraDetails.windMeasurement.setContentDescription(windA11y);
-
-        mDetailBinding.extraDetails.windLabel.setContentDescription(windA11y);
-
-        /************
-         * Pressure *
-         ************/
-        /* Read pressure from the cursor */
-        float pressure = data.getFloat(INDEX_WEATHER_PRESSURE);
-
-        /*
-         * Format the pressure text using string resources. The reason we directly access
-         * resources using getString rather than using a method from SunshineWeatherUtils as
-         * we have for other data displayed in this Activity is because there is no
-         * additional logic that needs to be considered in order to properly display the
-         * pressure.
-         */
-        String pressureString = getString(R.string.format_pressure, pressure);
-
-        String pressureA11y = getString(R.string.a11y_pressure, pressureString);
-
-        /* Set the text and content description (for accessibility purposes) */
-        mDetailBinding.extraDetails.pressure.setText(pressureString);
-        mDetailBinding.extraDetails.pressure.setContentDescription(pressureA11y);
-
-        mDetailBinding.extraDetails.pressureLabel.setContentDescription(pressureA11y);
-
-        /* Store the forecast summary String in our forecast summary field to share later */
-        mForecastSummary = String.format("%s - %s - %s/%s",
-                dateText, description, highString, lowString);
-    }
-
-    /**
-     * Called when a previously created loader is being reset, thus making its data unavailable.
-     * The application should at this point remove any references it has to the Loader's data.
-     * Since we don't store any of this cursor's data, there are no references we need to remove.
-     *
-     * @param loader The Loader that is being reset.
-     */
-    @Override
-    public void onLoaderReset(Loader<Cursor> loader) {
-    }
-}
\ No newline at end of file
+}
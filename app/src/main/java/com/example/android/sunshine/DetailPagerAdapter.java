@@ -0,0 +1,218 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine;
+
+import android.content.Context;
+import android.support.v4.view.PagerAdapter;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+
+import com.example.android.sunshine.data.Forecast;
+import com.example.android.sunshine.databinding.ActivityDetailBinding;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * {@link DetailPagerAdapter} shows one day of a {@link Forecast} per page of DetailActivity's
+ * ViewPager, so the user can swipe from day to day.
+ * <p>
+ * Every page is an {@link ActivityDetailBinding}. Bindings of pages that scroll out of the
+ * ViewPager's offscreen limit are kept in a pool and rebound to the next day that scrolls in, so
+ * once the first pages exist, swiping neither inflates layouts nor queries the database: the
+ * Forecast already holds every day.
+ */
+class DetailPagerAdapter extends PagerAdapter {
+
+    /* The context we use to utility methods, app resources and layout inflaters */
+    private final Context mContext;
+
+    private final LayoutInflater mInflater;
+
+    /* Bindings of destroyed pages, ready to be rebound to another day */
+    private final Deque<ActivityDetailBinding> mRecycledPages = new ArrayDeque<>();
+
+    private Forecast mForecast;
+
+    DetailPagerAdapter(Context context) {
+        mContext = context;
+        mInflater = LayoutInflater.from(context);
+    }
+
+    /**
+     * Inflates pages ahead of time, so that even the first swipe rebinds a recycled page. Call
+     * this once the ViewPager exists, before the first frame is drawn.
+     *
+     * @param container The ViewPager the pages will be shown in
+     * @param count     The number of spare pages to inflate
+     */
+    void preInflatePages(ViewGroup container, int count) {
+        for (int i = 0; i < count; i++) {
+            mRecycledPages.push(ActivityDetailBinding.inflate(mInflater, container, false));
+        }
+    }
+
+    /**
+     * Swaps the forecast shown by the pages. Every page is rebound, using recycled bindings.
+     *
+     * @param forecast The new forecast
+     */
+    void swapForecast(Forecast forecast) {
+        mForecast = forecast;
+        notifyDataSetChanged();
+    }
+
+    /**
+     * @return The forecast the pages currently show, or null if there is none yet
+     */
+    Forecast getForecast() {
+        return mForecast;
+    }
+
+    /**
+     * @param position A page of this adapter
+     * @return The normalized date shown by that page
+     */
+    long getDate(int position) {
+        return mForecast.getDate(position);
+    }
+
+    @Override
+    public int getCount() {
+        if (null == mForecast) return 0;
+        return mForecast.size();
+    }
+
+    @Override
+    public Object instantiateItem(ViewGroup container, int position) {
+        ActivityDetailBinding binding = mRecycledPages.poll();
+        if (binding == null) {
+            binding = ActivityDetailBinding.inflate(mInflater, container, false);
+        }
+
+        bindDay(binding, position);
+
+        container.addView(binding.getRoot());
+        return binding;
+    }
+
+    @Override
+    public void destroyItem(ViewGroup container, int position, Object object) {
+        ActivityDetailBinding binding = (ActivityDetailBinding) object;
+        container.removeView(binding.getRoot());
+        mRecycledPages.push(binding);
+    }
+
+    @Override
+    public boolean isViewFromObject(View view, Object object) {
+        return ((ActivityDetailBinding) object).getRoot() == view;
+    }
+
+    /*
+     * Days can shift when a new Forecast arrives (at midnight, for instance), so every page is
+     * destroyed and rebound from the pool rather than guessing which ones still match.
+     */
+    @Override
+    public int getItemPosition(Object object) {
+        return POSITION_NONE;
+    }
+
+    /**
+     * Builds the text that is shared for a page: the date, description and temperatures.
+     *
+     * @param position A page of this adapter
+     * @return The summary of that day
+     */
+    String getForecastSummary(int position) {
+        DayDetails details = DayDetails.get(mContext, mForecast, position);
+        return String.format("%s - %s - %s/%s",
+                details.dateText, details.description, details.highString, details.lowString);
+    }
+
+    /**
+     * Binds one day of the forecast to the views of a page. The day has usually been warmed by
+     * ForecastAdapter already, in which case this only sets text and images.
+     *
+     * @param binding The page to fill
+     * @param row     The day of mForecast to show
+     */
+    private void bindDay(ActivityDetailBinding binding, int row) {
+        DayDetails details = DayDetails.get(mContext, mForecast, row);
+
+        /****************
+         * Weather Icon *
+         ****************/
+        if (details.weatherArt != null) {
+            binding.primaryInfo.weatherIcon.setImageDrawable(
+                    details.weatherArt.newDrawable(mContext.getResources()));
+        } else {
+            binding.primaryInfo.weatherIcon.setImageResource(details.weatherImageId);
+        }
+
+        /* Set the content description on the weather image (for accessibility purposes) */
+        binding.primaryInfo.weatherIcon.setContentDescription(details.descriptionA11y);
+
+        /****************
+         * Weather Date *
+         ****************/
+        binding.primaryInfo.date.setText(details.dateText);
+
+        /***********************
+         * Weather Description *
+         ***********************/
+        /* Set the text and content description (for accessibility purposes) */
+        binding.primaryInfo.weatherDescription.setText(details.description);
+        binding.primaryInfo.weatherDescription.setContentDescription(details.descriptionA11y);
+
+        /**************************
+         * High (max) temperature *
+         **************************/
+        binding.primaryInfo.highTemperature.setText(details.highString);
+        binding.primaryInfo.highTemperature.setContentDescription(details.highA11y);
+
+        /*************************
+         * Low (min) temperature *
+         *************************/
+        binding.primaryInfo.lowTemperature.setText(details.lowString);
+        binding.primaryInfo.lowTemperature.setContentDescription(details.lowA11y);
+
+        /************
+         * Humidity *
+         ************/
+        binding.extraDetails.humidity.setText(details.humidityString);
+        binding.extraDetails.humidity.setContentDescription(details.humidityA11y);
+
+        binding.extraDetails.humidityLabel.setContentDescription(details.humidityA11y);
+
+        /****************************
+         * Wind speed and direction *
+         ****************************/
+        binding.extraDetails.windMeasurement.setText(details.windString);
+        binding.extraDetails.windMeasurement.setContentDescription(details.windA11y);
+
+        binding.extraDetails.windLabel.setContentDescription(details.windA11y);
+
+        /************
+         * Pressure *
+         ************/
+        binding.extraDetails.pressure.setText(details.pressureString);
+        binding.extraDetails.pressure.setContentDescription(details.pressureA11y);
+
+        binding.extraDetails.pressureLabel.setContentDescription(details.pressureA11y);
+    }
+
+}
@@ -16,21 +16,29 @@
 package com.example.android.sunshine;
 
 import android.content.Context;
-import android.database.Cursor;
+import android.graphics.Bitmap;
+import android.os.Looper;
+import android.os.MessageQueue;
 import android.support.annotation.NonNull;
 import android.support.v7.widget.RecyclerView;
 import android.view.LayoutInflater;
+import android.view.MotionEvent;
 import android.view.View;
 import android.view.ViewGroup;
 import android.widget.ImageView;
 import android.widget.TextView;
 
+import com.example.android.sunshine.data.Forecast;
 import com.example.android.sunshine.utilities.SunshineDateUtils;
 import com.example.android.sunshine.utilities.SunshineWeatherUtils;
+import com.example.android.sunshine.utilities.WeatherArtCache;
+
+import java.util.ArrayDeque;
 
 /**
  * {@link ForecastAdapter} exposes a list of weather forecasts
- * from a {@link android.database.Cursor} to a {@link android.support.v7.widget.RecyclerView}.
+ * from a {@link Forecast} to a {@link android.support.v7.widget.RecyclerView}.
+ * Until the first Forecast is available, it can show a {@link LastRenderedForecast} instead.
  */
 class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.ForecastAdapterViewHolder> {
 
@@ -63,7 +71,34 @@ class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.ForecastAdapt
      */
     private boolean mUseTodayLayout;
 
-    private Cursor mCursor;
+    private Forecast mForecast;
+
+    /*
+     * Rows that have been bound and whose details should be warmed for DetailActivity. They are
+     * warmed one at a time whenever the main thread is idle, so scrolling is never slowed down.
+     */
+    private final ArrayDeque<Integer> mRowsToWarm = new ArrayDeque<>();
+    private boolean mWarmingScheduled;
+
+    private final MessageQueue.IdleHandler mWarmer = new MessageQueue.IdleHandler() {
+        @Override
+        public boolean queueIdle() {
+            Integer row = mRowsToWarm.poll();
+            if (row != null && mForecast != null && row < mForecast.size()) {
+                DayDetails.warm(mContext, mForecast, row);
+            }
+
+            /* Returning false removes this handler until more rows are bound */
+            mWarmingScheduled = !mRowsToWarm.isEmpty();
+            return mWarmingScheduled;
+        }
+    };
+
+    /*
+     * The list as it was last rendered, shown until the first Forecast arrives. Once mForecast is
+     * set, the snapshot is never looked at again.
+     */
+    private LastRenderedForecast mSnapshot;
 
     /**
      * Creates a ForecastAdapter.
@@ -129,12 +164,84 @@ class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.ForecastAdapt
      */
     @Override
     public void onBindViewHolder(ForecastAdapterViewHolder forecastAdapterViewHolder, int position) {
-        mCursor.moveToPosition(position);
+
+        if (mForecast == null) {
+            /* No live data yet, so show the Strings that were formatted on the last run */
+            bindWeather(forecastAdapterViewHolder,
+                    position,
+                    mSnapshot.weatherIds[position],
+                    mSnapshot.dateStrings[position],
+                    mSnapshot.descriptions[position],
+                    mSnapshot.highStrings[position],
+                    mSnapshot.lowStrings[position]);
+            return;
+        }
+
+        int weatherId = mForecast.getWeatherId(position);
+
+        /****************
+         * Weather Date *
+         ****************/
+         /* Read date from the forecast */
+        long dateInMillis = mForecast.getDate(position);
+         /* Get human readable string using our utility method */
+        String dateString = SunshineDateUtils.getFriendlyDateString(mContext, dateInMillis, false);
+
+        /***********************
+         * Weather Description *
+         ***********************/
+        String description = SunshineWeatherUtils.getStringForWeatherCondition(mContext, weatherId);
+
+        /**************************
+         * High (max) temperature *
+         **************************/
+         /* Read high temperature from the forecast (in degrees celsius) */
+        double highInCelsius = mForecast.getMaxTemp(position);
+         /*
+          * If the user's preference for weather is fahrenheit, formatTemperature will convert
+          * the temperature. This method will also append either °C or °F to the temperature
+          * String.
+          */
+        String highString = SunshineWeatherUtils.formatTemperature(mContext, highInCelsius);
+
+        /*************************
+         * Low (min) temperature *
+         *************************/
+         /* Read low temperature from the forecast (in degrees celsius) */
+        double lowInCelsius = mForecast.getMinTemp(position);
+        String lowString = SunshineWeatherUtils.formatTemperature(mContext, lowInCelsius);
+
+        bindWeather(forecastAdapterViewHolder, position, weatherId, dateString, description,
+                highString, lowString);
+
+        warmWhenIdle(position);
+    }
+
+    /*
+     * A bound row is visible, which makes it a likely tap. Its details are prepared once the main
+     * thread has nothing better to do.
+     */
+    private void warmWhenIdle(int position) {
+        if (DayDetails.peek(mForecast, position) != null) return;
+
+        mRowsToWarm.add(position);
+        if (!mWarmingScheduled) {
+            mWarmingScheduled = true;
+            Looper.myQueue().addIdleHandler(mWarmer);
+        }
+    }
+
+    /**
+     * Displays one day of weather, already formatted, in a ViewHolder. This is shared by the live
+     * Forecast and the last rendered snapshot so that both look exactly the same.
+     */
+    private void bindWeather(ForecastAdapterViewHolder forecastAdapterViewHolder, int position,
+                             int weatherId, String dateString, String description,
+                             String highString, String lowString) {
 
         /****************
          * Weather Icon *
          ****************/
-        int weatherId = mCursor.getInt(MainActivity.INDEX_WEATHER_CONDITION_ID);
         int weatherImageId;
 
         int viewType = getItemViewType(position);
@@ -155,23 +262,20 @@ class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.ForecastAdapt
                 throw new IllegalArgumentException("Invalid view type, value of " + viewType);
         }
 
-        forecastAdapterViewHolder.iconView.setImageResource(weatherImageId);
-
-        /****************
-         * Weather Date *
-         ****************/
-         /* Read date from the cursor */
-        long dateInMillis = mCursor.getLong(MainActivity.INDEX_WEATHER_DATE);
-         /* Get human readable string using our utility method */
-        String dateString = SunshineDateUtils.getFriendlyDateString(mContext, dateInMillis, false);
+        /*
+         * The art comes from WeatherArtCache, so rebinding a row (or binding another row with the
+         * same weather) doesn't rasterize it again. The Bitmap this row showed before is handed
+         * back so that the cache can reuse it once nothing displays it.
+         */
+        int iconSize = forecastAdapterViewHolder.iconView.getLayoutParams().width;
+        Bitmap art = WeatherArtCache.acquire(mContext, weatherImageId, iconSize);
+        forecastAdapterViewHolder.iconView.setImageBitmap(art);
+        WeatherArtCache.release(forecastAdapterViewHolder.iconBitmap);
+        forecastAdapterViewHolder.iconBitmap = art;
 
          /* Display friendly date string */
         forecastAdapterViewHolder.dateView.setText(dateString);
 
-        /***********************
-         * Weather Description *
-         ***********************/
-        String description = SunshineWeatherUtils.getStringForWeatherCondition(mContext, weatherId);
          /* Create the accessibility (a11y) String from the weather description */
         String descriptionA11y = mContext.getString(R.string.a11y_forecast, description);
 
@@ -179,42 +283,27 @@ class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.ForecastAdapt
         forecastAdapterViewHolder.descriptionView.setText(description);
         forecastAdapterViewHolder.descriptionView.setContentDescription(descriptionA11y);
 
-        /**************************
-         * High (max) temperature *
-         **************************/
-         /* Read high temperature from the cursor (in degrees celsius) */
-        double highInCelsius = mCursor.getDouble(MainActivity.INDEX_WEATHER_MAX_TEMP);
-         /*
-          * If the user's preference for weather is fahrenheit, formatTemperature will convert
-          * the temperature. This method will also append either °C or °F to the temperature
-          * String.
-          */
-        String highString = SunshineWeatherUtils.formatTemperature(mContext, highInCelsius);
-         /* Create the accessibility (a11y) String from the weather description */
         String highA11y = mContext.getString(R.string.a11y_high_temp, highString);
-
-         /* Set the text and content description (for accessibility purposes) */
         forecastAdapterViewHolder.highTempView.setText(highString);
         forecastAdapterViewHolder.highTempView.setContentDescription(highA11y);
 
-        /*************************
-         * Low (min) temperature *
-         *************************/
-         /* Read low temperature from the cursor (in degrees celsius) */
-        double lowInCelsius = mCursor.getDouble(MainActivity.INDEX_WEATHER_MIN_TEMP);
-         /*
-          * If the user's preference for weather is fahrenheit, formatTemperature will convert
-          * the temperature. This method will also append either °C or °F to the temperature
-          * String.
-          */
-        String lowString = SunshineWeatherUtils.formatTemperature(mContext, lowInCelsius);
         String lowA11y = mContext.getString(R.string.a11y_low_temp, lowString);
-
-         /* Set the text and content description (for accessibility purposes) */
         forecastAdapterViewHolder.lowTempView.setText(lowString);
         forecastAdapterViewHolder.lowTempView.setContentDescription(lowA11y);
     }
 
+    /**
+     * Hands the art of a row that scrolled away back to WeatherArtCache.
+     *
+     * @param holder The ViewHolder that is about to be recycled
+     */
+    @Override
+    public void onViewRecycled(ForecastAdapterViewHolder holder) {
+        holder.iconView.setImageDrawable(null);
+        WeatherArtCache.release(holder.iconBitmap);
+        holder.iconBitmap = null;
+    }
+
     /**
      * This method simply returns the number of items to display. It is used behind the scenes
      * to help layout our Views and for animations.
@@ -223,8 +312,9 @@ class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.ForecastAdapt
      */
     @Override
     public int getItemCount() {
-        if (null == mCursor) return 0;
-        return mCursor.getCount();
+        if (null != mForecast) return mForecast.size();
+        if (null != mSnapshot) return mSnapshot.size();
+        return 0;
     }
 
     /**
@@ -234,7 +324,7 @@ class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.ForecastAdapt
      * different layout for the "today" layout. The "today" layout is only shown in portrait mode
      * with the first item in the list.
      *
-     * @param position index within our RecyclerView and Cursor
+     * @param position index within our RecyclerView and Forecast
      * @return the view type (today or future day)
      */
     @Override
@@ -247,26 +337,50 @@ class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.ForecastAdapt
     }
 
     /**
-     * Swaps the cursor used by the ForecastAdapter for its weather data. This method is called by
-     * MainActivity after a load has finished, as well as when the Loader responsible for loading
-     * the weather data is reset. When this method is called, we assume we have a completely new
-     * set of data, so we call notifyDataSetChanged to tell the RecyclerView to update.
+     * Swaps the forecast used by the ForecastAdapter for its weather data. This method is called
+     * by MainActivity every time ForecastRepository delivers a new Forecast. When this method is
+     * called, we assume we have a completely new set of data, so we call notifyDataSetChanged to
+     * tell the RecyclerView to update.
      *
-     * @param newCursor the new cursor to use as ForecastAdapter's data source
+     * @param newForecast the new forecast to use as ForecastAdapter's data source
      */
-    void swapCursor(Cursor newCursor) {
-        mCursor = newCursor;
+    void swapForecast(Forecast newForecast) {
+        mForecast = newForecast;
+        mRowsToWarm.clear();
         notifyDataSetChanged();
     }
 
+    /**
+     * @return true while the list shows a LastRenderedForecast rather than live data
+     */
+    boolean isShowingSnapshot() {
+        return mForecast == null && mSnapshot != null;
+    }
+
+    /**
+     * Shows the list as it was last rendered until the first Forecast is swapped in. This is what
+     * lets MainActivity draw a populated list on its very first frame.
+     *
+     * @param snapshot The last rendered forecast, read in MainActivity's onCreate
+     */
+    void showSnapshot(LastRenderedForecast snapshot) {
+        mSnapshot = snapshot;
+        if (mForecast == null) notifyDataSetChanged();
+    }
+
     /**
      * A ViewHolder is a required part of the pattern for RecyclerViews. It mostly behaves as
      * a cache of the child views for a forecast item. It's also a convenient place to set an
      * OnClickListener, since it has access to the adapter and the views.
      */
-    class ForecastAdapterViewHolder extends RecyclerView.ViewHolder implements View.OnClickListener {
+    class ForecastAdapterViewHolder extends RecyclerView.ViewHolder implements
+            View.OnClickListener,
+            View.OnTouchListener {
         final ImageView iconView;
 
+        /* The art iconView shows, acquired from WeatherArtCache */
+        Bitmap iconBitmap;
+
         final TextView dateView;
         final TextView descriptionView;
         final TextView highTempView;
@@ -282,6 +396,26 @@ class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.ForecastAdapt
             lowTempView = (TextView) view.findViewById(R.id.low_temperature);
 
             view.setOnClickListener(this);
+            view.setOnTouchListener(this);
+        }
+
+        /**
+         * A finger going down on a row is the best hint that its details are about to be opened.
+         * The time until the finger goes up is used to warm them if that hasn't happened yet.
+         *
+         * @param v     the View that is being touched
+         * @param event the touch event
+         * @return false, so that the click is still handled as usual
+         */
+        @Override
+        public boolean onTouch(View v, MotionEvent event) {
+            int adapterPosition = getAdapterPosition();
+            if (event.getActionMasked() == MotionEvent.ACTION_DOWN
+                    && mForecast != null
+                    && adapterPosition != RecyclerView.NO_POSITION) {
+                DayDetails.warm(mContext, mForecast, adapterPosition);
+            }
+            return false;
         }
 
         /**
@@ -294,8 +428,12 @@ class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.ForecastAdapt
         @Override
         public void onClick(View v) {
             int adapterPosition = getAdapterPosition();
-            mCursor.moveToPosition(adapterPosition);
-            long dateInMillis = mCursor.getLong(MainActivity.INDEX_WEATHER_DATE);
+            long dateInMillis;
+            if (mForecast != null) {
+                dateInMillis = mForecast.getDate(adapterPosition);
+            } else {
+                dateInMillis = mSnapshot.dates[adapterPosition];
+            }
             mClickHandler.onClick(dateInMillis);
         }
     }
@@ -0,0 +1,267 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine;
+
+import android.content.Context;
+import android.util.Log;
+
+import com.example.android.sunshine.data.Forecast;
+import com.example.android.sunshine.data.SunshinePreferences;
+import com.example.android.sunshine.utilities.SunshineDateUtils;
+import com.example.android.sunshine.utilities.SunshineWeatherUtils;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * The forecast list exactly as MainActivity last showed it, with every String already formatted.
+ * <p>
+ * A snapshot is written to a small file after each load and memory mapped when MainActivity
+ * starts, which is much faster than waiting for the ContentProvider and the database to open. That
+ * way the list can be drawn on the very first frame and is then replaced by the live data as soon
+ * as ForecastRepository delivers it.
+ * <p>
+ * The friendly date Strings ("Today", "Tomorrow") depend on the current day, and the temperatures
+ * depend on the units and locale. A snapshot taken on another day, with other units or in another
+ * locale is therefore discarded rather than shown.
+ */
+final class LastRenderedForecast {
+
+    private static final String TAG = LastRenderedForecast.class.getSimpleName();
+
+    private static final String FILE_NAME = "last_rendered_forecast";
+
+    /* "SNAP", followed by the version of the file format. Bump the version if the layout changes. */
+    private static final int MAGIC = 0x534E4150;
+    private static final int FORMAT_VERSION = 1;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /* The day, units and locale the Strings below were formatted for */
+    private final long mDay;
+    private final boolean mMetric;
+    private final String mLocale;
+
+    final long[] dates;
+    final int[] weatherIds;
+    final String[] dateStrings;
+    final String[] descriptions;
+    final String[] highStrings;
+    final String[] lowStrings;
+
+    private LastRenderedForecast(long day, boolean metric, String locale, int size) {
+        mDay = day;
+        mMetric = metric;
+        mLocale = locale;
+        dates = new long[size];
+        weatherIds = new int[size];
+        dateStrings = new String[size];
+        descriptions = new String[size];
+        highStrings = new String[size];
+        lowStrings = new String[size];
+    }
+
+    /**
+     * @return The number of rows in this snapshot
+     */
+    int size() {
+        return dates.length;
+    }
+
+    /**
+     * Formats every day of a Forecast the same way ForecastAdapter displays it.
+     *
+     * @param context  Used to format Strings and to read the user's preferences
+     * @param forecast The forecast that is being displayed
+     * @return A snapshot of the displayed list
+     */
+    static LastRenderedForecast fromForecast(Context context, Forecast forecast) {
+        LastRenderedForecast snapshot = new LastRenderedForecast(
+                SunshineDateUtils.getNormalizedUtcDateForToday(),
+                SunshinePreferences.isMetric(context),
+                Locale.getDefault().toString(),
+                forecast.size());
+
+        for (int i = 0; i < forecast.size(); i++) {
+            long date = forecast.getDate(i);
+            int weatherId = forecast.getWeatherId(i);
+
+            snapshot.dates[i] = date;
+            snapshot.weatherIds[i] = weatherId;
+            snapshot.dateStrings[i] =
+                    SunshineDateUtils.getFriendlyDateString(context, date, false);
+            snapshot.descriptions[i] =
+                    SunshineWeatherUtils.getStringForWeatherCondition(context, weatherId);
+            snapshot.highStrings[i] =
+                    SunshineWeatherUtils.formatTemperature(context, forecast.getMaxTemp(i));
+            snapshot.lowStrings[i] =
+                    SunshineWeatherUtils.formatTemperature(context, forecast.getMinTemp(i));
+        }
+
+        return snapshot;
+    }
+
+    /**
+     * @param other Another snapshot, or null
+     * @return true if both snapshots would render exactly the same list
+     */
+    boolean rendersSameAs(LastRenderedForecast other) {
+        return other != null
+                && mDay == other.mDay
+                && mMetric == other.mMetric
+                && mLocale.equals(other.mLocale)
+                && Arrays.equals(dates, other.dates)
+                && Arrays.equals(weatherIds, other.weatherIds)
+                && Arrays.equals(dateStrings, other.dateStrings)
+                && Arrays.equals(descriptions, other.descriptions)
+                && Arrays.equals(highStrings, other.highStrings)
+                && Arrays.equals(lowStrings, other.lowStrings);
+    }
+
+    /**
+     * Reads the last snapshot that was written. This is meant to be called on the main thread
+     * while the first frame is being prepared: the file is a few hundred bytes and is memory
+     * mapped rather than read through a stream.
+     *
+     * @param context Used to find the file and to check the user's preferences
+     * @return The last snapshot, or null if there is none that is still valid today
+     */
+    static LastRenderedForecast read(Context context) {
+        File file = new File(context.getFilesDir(), FILE_NAME);
+        if (!file.exists()) {
+            return null;
+        }
+
+        FileInputStream in = null;
+        try {
+            in = new FileInputStream(file);
+            FileChannel channel = in.getChannel();
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+            if (buffer.getInt() != MAGIC || buffer.getInt() != FORMAT_VERSION) {
+                return null;
+            }
+
+            long day = buffer.getLong();
+            boolean metric = buffer.get() != 0;
+            String locale = readString(buffer);
+
+            if (day != SunshineDateUtils.getNormalizedUtcDateForToday()
+                    || metric != SunshinePreferences.isMetric(context)
+                    || !locale.equals(Locale.getDefault().toString())) {
+                return null;
+            }
+
+            LastRenderedForecast snapshot =
+                    new LastRenderedForecast(day, metric, locale, buffer.getInt());
+
+            for (int i = 0; i < snapshot.size(); i++) {
+                snapshot.dates[i] = buffer.getLong();
+                snapshot.weatherIds[i] = buffer.getInt();
+                snapshot.dateStrings[i] = readString(buffer);
+                snapshot.descriptions[i] = readString(buffer);
+                snapshot.highStrings[i] = readString(buffer);
+                snapshot.lowStrings[i] = readString(buffer);
+            }
+
+            return snapshot;
+
+        } catch (IOException | BufferUnderflowException | NegativeArraySizeException e) {
+            /* A missing or truncated snapshot only costs us the fast first frame */
+            Log.w(TAG, "Discarding unreadable forecast snapshot", e);
+            return null;
+        } finally {
+            closeQuietly(in);
+        }
+    }
+
+    /**
+     * Writes this snapshot so that the next launch of MainActivity can show it immediately. The
+     * file is replaced atomically, so a reader never sees a half written snapshot. This does
+     * disk I/O and must not be called on the main thread.
+     *
+     * @param context Used to find the file
+     */
+    void write(Context context) {
+        File file = new File(context.getFilesDir(), FILE_NAME);
+        File temp = new File(context.getFilesDir(), FILE_NAME + ".tmp");
+
+        DataOutputStream out = null;
+        try {
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeLong(mDay);
+            out.writeByte(mMetric ? 1 : 0);
+            writeString(out, mLocale);
+            out.writeInt(size());
+
+            for (int i = 0; i < size(); i++) {
+                out.writeLong(dates[i]);
+                out.writeInt(weatherIds[i]);
+                writeString(out, dateStrings[i]);
+                writeString(out, descriptions[i]);
+                writeString(out, highStrings[i]);
+                writeString(out, lowStrings[i]);
+            }
+
+            out.close();
+            out = null;
+
+            if (!temp.renameTo(file)) {
+                Log.w(TAG, "Couldn't replace the forecast snapshot");
+            }
+
+        } catch (IOException e) {
+            Log.w(TAG, "Couldn't write the forecast snapshot", e);
+        } finally {
+            closeQuietly(out);
+            temp.delete();
+        }
+    }
+
+    /* Strings are stored as their length in bytes followed by their UTF-8 bytes */
+    private static String readString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getShort()];
+        buffer.get(bytes);
+        return new String(bytes, UTF_8);
+    }
+
+    private static void writeString(DataOutputStream out, String string) throws IOException {
+        byte[] bytes = string.getBytes(UTF_8);
+        out.writeShort(bytes.length);
+        out.write(bytes);
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable == null) return;
+        try {
+            closeable.close();
+        } catch (IOException ignored) {
+        }
+    }
+}
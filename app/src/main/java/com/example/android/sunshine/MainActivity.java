@@ -17,24 +17,27 @@ package com.example.android.sunshine;
 
 import android.content.Context;
 import android.content.Intent;
-import android.database.Cursor;
 import android.net.Uri;
+import android.os.AsyncTask;
+import android.os.Build;
 import android.os.Bundle;
+import android.os.SystemClock;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
-import android.support.v4.app.LoaderManager;
-import android.support.v4.content.CursorLoader;
-import android.support.v4.content.Loader;
 import android.support.v7.app.AppCompatActivity;
 import android.support.v7.widget.LinearLayoutManager;
 import android.support.v7.widget.RecyclerView;
+import android.text.format.DateUtils;
 import android.util.Log;
 import android.view.Menu;
 import android.view.MenuInflater;
 import android.view.MenuItem;
 import android.view.View;
+import android.view.ViewTreeObserver;
 import android.widget.ProgressBar;
 
+import com.example.android.sunshine.data.Forecast;
+import com.example.android.sunshine.data.ForecastRepository;
 import com.example.android.sunshine.data.SunshinePreferences;
 import com.example.android.sunshine.data.WeatherContract;
 import com.example.android.sunshine.sync.SunshineSyncTask;
@@ -49,56 +52,38 @@ import com.google.android.gms.wearable.PutDataMapRequest;
 import com.google.android.gms.wearable.PutDataRequest;
 import com.google.android.gms.wearable.Wearable;
 
-import static com.example.android.sunshine.utilities.NotificationUtils.INDEX_MAX_TEMP;
-import static com.example.android.sunshine.utilities.NotificationUtils.INDEX_MIN_TEMP;
-import static com.example.android.sunshine.utilities.NotificationUtils.INDEX_WEATHER_ID;
-import static com.example.android.sunshine.utilities.NotificationUtils.WEATHER_NOTIFICATION_PROJECTION;
 
 public class MainActivity extends AppCompatActivity implements
-        LoaderManager.LoaderCallbacks<Cursor>,
+        ForecastRepository.Listener,
         ForecastAdapter.ForecastAdapterOnClickHandler {
 
     private final String TAG = MainActivity.class.getSimpleName();
 
-    /*
-     * The columns of data that we are interested in displaying within our MainActivity's list of
-     * weather data.
-     */
-    public static final String[] MAIN_FORECAST_PROJECTION = {
-            WeatherContract.WeatherEntry.COLUMN_DATE,
-            WeatherContract.WeatherEntry.COLUMN_MAX_TEMP,
-            WeatherContract.WeatherEntry.COLUMN_MIN_TEMP,
-            WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
-    };
+    private ForecastAdapter mForecastAdapter;
+    private RecyclerView mRecyclerView;
+    private int mPosition = RecyclerView.NO_POSITION;
+
+    private ProgressBar mLoadingIndicator;
 
     /*
-     * We store the indices of the values in the array of Strings above to more quickly be able to
-     * access the data from our query. If the order of the Strings above changes, these indices
-     * must be adjusted to match the order of the Strings.
+     * Shared with DetailActivity and kept across rotations, so neither recreating this Activity
+     * nor opening the details of a day reads the database again.
      */
-    public static final int INDEX_WEATHER_DATE = 0;
-    public static final int INDEX_WEATHER_MAX_TEMP = 1;
-    public static final int INDEX_WEATHER_MIN_TEMP = 2;
-    public static final int INDEX_WEATHER_CONDITION_ID = 3;
-
+    private ForecastRepository mForecastRepository;
 
     /*
-     * This ID will be used to identify the Loader responsible for loading our weather forecast. In
-     * some cases, one Activity can deal with many Loaders. However, in our case, there is only one.
-     * We will still use this ID to initialize the loader and create the loader for best practice.
-     * Please note that 44 was chosen arbitrarily. You can use whatever number you like, so long as
-     * it is unique and consistent.
+     * The list as it was last rendered. It is read from disk in onCreate so the first frame can
+     * show the forecast right away, and it is replaced every time a new Forecast is delivered.
      */
-    private static final int ID_FORECAST_LOADER = 44;
+    private LastRenderedForecast mLastRendered;
 
-    private ForecastAdapter mForecastAdapter;
-    private RecyclerView mRecyclerView;
-    private int mPosition = RecyclerView.NO_POSITION;
-
-    private ProgressBar mLoadingIndicator;
+    /* When onCreate started, used to measure how long it takes until the forecast is visible */
+    private long mCreateUptimeMillis;
+    private boolean mReportedFullyDrawn;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
+        mCreateUptimeMillis = SystemClock.uptimeMillis();
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_forecast);
         getSupportActionBar().setElevation(0f);
@@ -159,20 +144,55 @@ public class MainActivity extends AppCompatActivity implements
         /* Setting the adapter attaches it to the RecyclerView in our layout. */
         mRecyclerView.setAdapter(mForecastAdapter);
 
-
-        showLoading();
-
         /*
-         * Ensures a loader is initialized and active. If the loader doesn't already exist, one is
-         * created and (if the activity/fragment is currently started) starts the loader. Otherwise
-         * the last created loader is re-used.
+         * The snapshot of the last rendered list is tiny and memory mapped, so reading it here is
+         * much faster than waiting for the first query. If today's snapshot exists, the list is drawn
+         * on the very first frame and only falls back to the loading indicator otherwise.
          */
-        getSupportLoaderManager().initLoader(ID_FORECAST_LOADER, null, this);
+        mLastRendered = LastRenderedForecast.read(this);
+        if (mLastRendered != null && mLastRendered.size() != 0) {
+            mForecastAdapter.showSnapshot(mLastRendered);
+            showWeatherDataView();
+        } else {
+            showLoading();
+        }
+
+        logFirstMeaningfulFrame();
+
+        mForecastRepository = ForecastRepository.getInstance(this);
 
         SunshineSyncUtils.initialize(this);
 
     }
 
+    /*
+     * If the repository already holds a Forecast (after a rotation, or when coming back from
+     * DetailActivity), subscribing delivers it right away, before the next frame is drawn.
+     */
+    @Override
+    protected void onStart() {
+        super.onStart();
+        mForecastRepository.subscribe(this);
+        showDataAge();
+    }
+
+    @Override
+    protected void onStop() {
+        super.onStop();
+        mForecastRepository.unsubscribe(this);
+    }
+
+    /**
+     * Rows that are still on screen, or cached by the RecyclerView, are never recycled when the
+     * activity goes away. Removing the adapter recycles every one of them, which hands their art
+     * back to WeatherArtCache instead of leaking it.
+     */
+    @Override
+    protected void onDestroy() {
+        mRecyclerView.setAdapter(null);
+        super.onDestroy();
+    }
+
     /**
      * Uses the URI scheme for showing a location found on a map in conjunction with
      * an implicit Intent. This super-handy Intent is detailed in the "Common Intents" page of
@@ -200,78 +220,95 @@ public class MainActivity extends AppCompatActivity implements
     }
 
     /**
-     * Called by the {@link android.support.v4.app.LoaderManagerImpl} when a new Loader needs to be
-     * created. This Activity only uses one loader, so we don't necessarily NEED to check the
-     * loaderId, but this is certainly best practice.
+     * Called by ForecastRepository with the forecast from today onwards, right after subscribing
+     * if it is already in memory, and again every time the weather data changes.
+     *
+     * NOTE: If no data is present due to an initial load being performed with no access to
+     * internet, the loading indicator will show indefinitely, until data is present from the
+     * ContentProvider.
      *
-     * @param loaderId The loader ID for which we need to create a loader
-     * @param bundle   Any arguments supplied by the caller
-     * @return A new Loader instance that is ready to start loading.
+     * @param forecast The forecast to display
      */
     @Override
-    public Loader<Cursor> onCreateLoader(int loaderId, Bundle bundle) {
-
-
-        switch (loaderId) {
-
-            case ID_FORECAST_LOADER:
-                /* URI for all rows of weather data in our weather table */
-                Uri forecastQueryUri = WeatherContract.WeatherEntry.CONTENT_URI;
-                /* Sort order: Ascending by date */
-                String sortOrder = WeatherContract.WeatherEntry.COLUMN_DATE + " ASC";
-                /*
-                 * A SELECTION in SQL declares which rows you'd like to return. In our case, we
-                 * want all weather data from today onwards that is stored in our weather table.
-                 * We created a handy method to do that in our WeatherEntry class.
-                 */
-                String selection = WeatherContract.WeatherEntry.getSqlSelectForTodayOnwards();
-
-                return new CursorLoader(this,
-                        forecastQueryUri,
-                        MAIN_FORECAST_PROJECTION,
-                        selection,
-                        null,
-                        sortOrder);
-
-            default:
-                throw new RuntimeException("Loader Not Implemented: " + loaderId);
+    public void onForecastChanged(Forecast forecast) {
+        mForecastAdapter.swapForecast(forecast);
+        if (mPosition == RecyclerView.NO_POSITION) mPosition = 0;
+        mRecyclerView.smoothScrollToPosition(mPosition);
+        if (forecast.size() != 0) {
+            showWeatherDataView();
+            saveLastRendered(LastRenderedForecast.fromForecast(this, forecast));
+            reportFullyDrawnOnce();
         }
+        showDataAge();
     }
 
     /**
-     * Called when a Loader has finished loading its data.
-     *
-     * NOTE: There is one small bug in this code. If no data is present in the cursor do to an
-     * initial load being performed with no access to internet, the loading indicator will show
-     * indefinitely, until data is present from the ContentProvider. This will be fixed in a
-     * future version of the course.
-     *
-     * @param loader The Loader that has finished.
-     * @param data   The data generated by the Loader.
+     * Shows how long ago the displayed weather was downloaded, as the subtitle of the action bar.
+     * The time is kept in memory by SunshinePreferences, so this never waits for anything.
      */
-    @Override
-    public void onLoadFinished(Loader<Cursor> loader, Cursor data) {
-
+    private void showDataAge() {
+        long lastSync = SunshinePreferences.getLastSyncTimeInMillis(this);
+        if (lastSync == 0) {
+            getSupportActionBar().setSubtitle(null);
+            return;
+        }
 
-        mForecastAdapter.swapCursor(data);
-        if (mPosition == RecyclerView.NO_POSITION) mPosition = 0;
-        mRecyclerView.smoothScrollToPosition(mPosition);
-        if (data.getCount() != 0) showWeatherDataView();
+        CharSequence age = DateUtils.getRelativeTimeSpanString(lastSync,
+                System.currentTimeMillis(), DateUtils.MINUTE_IN_MILLIS);
+        getSupportActionBar().setSubtitle(getString(R.string.format_data_age, age));
     }
 
     /**
-     * Called when a previously created loader is being reset, and thus making its data unavailable.
-     * The application should at this point remove any references it has to the Loader's data.
+     * Persists what the list now shows so that the next launch can draw it on its first frame.
+     * Nothing is written if the list renders exactly as the snapshot we already have.
      *
-     * @param loader The Loader that is being reset.
+     * @param rendered The list as it is now displayed
      */
-    @Override
-    public void onLoaderReset(Loader<Cursor> loader) {
-        /*
-         * Since this Loader's data is now invalid, we need to clear the Adapter that is
-         * displaying the data.
-         */
-        mForecastAdapter.swapCursor(null);
+    private void saveLastRendered(final LastRenderedForecast rendered) {
+        if (rendered.rendersSameAs(mLastRendered)) return;
+        mLastRendered = rendered;
+
+        final Context appContext = getApplicationContext();
+
+        /* The serial executor keeps two writes of the snapshot from ever overlapping */
+        AsyncTask.SERIAL_EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                rendered.write(appContext);
+            }
+        });
+    }
+
+    /**
+     * Logs how long it took from onCreate until a frame with forecast rows in it was about to be
+     * drawn, whether those rows came from the snapshot or from ForecastRepository.
+     */
+    private void logFirstMeaningfulFrame() {
+        final ViewTreeObserver observer = mRecyclerView.getViewTreeObserver();
+        observer.addOnPreDrawListener(new ViewTreeObserver.OnPreDrawListener() {
+            @Override
+            public boolean onPreDraw() {
+                if (mRecyclerView.getChildCount() == 0) return true;
+
+                mRecyclerView.getViewTreeObserver().removeOnPreDrawListener(this);
+                Log.i(TAG, "First meaningful frame after "
+                        + (SystemClock.uptimeMillis() - mCreateUptimeMillis) + " ms"
+                        + (mForecastAdapter.isShowingSnapshot() ? " (from snapshot)" : ""));
+                return true;
+            }
+        });
+    }
+
+    /*
+     * Tells the system (and the "Fully drawn" line of the startup logs) when the live data, not
+     * just the snapshot, is on screen.
+     */
+    private void reportFullyDrawnOnce() {
+        if (mReportedFullyDrawn) return;
+        mReportedFullyDrawn = true;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+            reportFullyDrawn();
+        }
     }
 
     /**
@@ -285,6 +322,8 @@ public class MainActivity extends AppCompatActivity implements
         Intent weatherDetailIntent = new Intent(MainActivity.this, DetailActivity.class);
         Uri uriForDateClicked = WeatherContract.WeatherEntry.buildWeatherUriWithDate(date);
         weatherDetailIntent.setData(uriForDateClicked);
+        weatherDetailIntent.putExtra(DetailActivity.EXTRA_TAP_UPTIME_MILLIS,
+                SystemClock.uptimeMillis());
         startActivity(weatherDetailIntent);
     }
 
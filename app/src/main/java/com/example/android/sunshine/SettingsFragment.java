@@ -24,8 +24,9 @@ import android.support.v7.preference.Preference;
 import android.support.v7.preference.PreferenceFragmentCompat;
 import android.support.v7.preference.PreferenceScreen;
 
+import com.example.android.sunshine.data.ForecastRepository;
 import com.example.android.sunshine.data.SunshinePreferences;
-import com.example.android.sunshine.data.WeatherContract;
+import com.example.android.sunshine.sync.SunshineSyncTask;
 import com.example.android.sunshine.sync.SunshineSyncUtils;
 
 /**
@@ -98,10 +99,14 @@ public class SettingsFragment extends PreferenceFragmentCompat implements
             // we've changed the location
             // Wipe out any potential PlacePicker latlng values so that we can use this text entry.
             SunshinePreferences.resetLocationCoordinates(activity);
-            SunshineSyncUtils.startImmediateSync(activity);
+            SunshineSyncUtils.startLocationSync(activity);
         } else if (key.equals(getString(R.string.pref_units_key))) {
-            // units have changed. update lists of weather entries accordingly
-            activity.getContentResolver().notifyChange(WeatherContract.WeatherEntry.CONTENT_URI, null);
+            // units have changed. The weather is stored in Celsius, so the screens and the watch
+            // only need to format it again; the database doesn't have to be queried.
+            SunshinePreferences.reload(activity);
+            ForecastRepository repository = ForecastRepository.getInstance(activity);
+            repository.rerender();
+            SunshineSyncTask.sendTodaysWeather(activity, repository.getForecast());
         }
         Preference preference = findPreference(key);
         if (null != preference) {
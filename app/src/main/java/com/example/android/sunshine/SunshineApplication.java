@@ -6,6 +6,7 @@ import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 import android.util.Log;
 
+import com.example.android.sunshine.utilities.WeatherArtCache;
 import com.google.android.gms.common.ConnectionResult;
 import com.google.android.gms.common.api.GoogleApiClient;
 import com.google.android.gms.wearable.Wearable;
@@ -36,6 +37,16 @@ public class SunshineApplication extends Application implements
         mGoogleApiClient.connect();
     }
 
+    /*
+     * The weather art cache is the biggest thing we keep in memory, so it is what we give back
+     * when the system asks.
+     */
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        WeatherArtCache.trimMemory(level);
+    }
+
     @Override
     public void onTerminate() {
         super.onTerminate();
@@ -0,0 +1,114 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.data;
+
+import java.util.Arrays;
+
+/**
+ * An immutable snapshot of the forecast from one day onwards, sorted by ascending date. Instances
+ * are created by {@link ForecastRepository} and shared by every screen that shows the forecast,
+ * so they must never be modified. That is why the rows are only reachable through getters.
+ */
+public final class Forecast {
+
+    /* The normalized day this forecast was loaded on. Rows before that day are not included. */
+    private final long mDay;
+
+    /* Holds every WeatherEntry column. Never handed out, so nobody can write into its arrays. */
+    private final ForecastBatch mRows;
+
+    Forecast(long day, ForecastBatch rows) {
+        if (!rows.hasAllColumns()) {
+            throw new IllegalArgumentException("A Forecast needs every weather column");
+        }
+        mDay = day;
+        mRows = rows;
+    }
+
+    /**
+     * @return The normalized UTC date of the day this forecast was loaded on
+     */
+    public long getDay() {
+        return mDay;
+    }
+
+    /**
+     * @return The number of days in this forecast
+     */
+    public int size() {
+        return mRows.size();
+    }
+
+    /**
+     * Finds the row of a given day.
+     *
+     * @param normalizedDate The normalized UTC date of the day to look for
+     * @return The row of that day, or -1 if this forecast has no weather for it
+     */
+    public int indexOfDate(long normalizedDate) {
+        int index = Arrays.binarySearch(mRows.dates, 0, mRows.size(), normalizedDate);
+        return index >= 0 ? index : -1;
+    }
+
+    public long getDate(int row) {
+        return mRows.dates[checkRow(row)];
+    }
+
+    public int getWeatherId(int row) {
+        return mRows.weatherIds[checkRow(row)];
+    }
+
+    public double getMinTemp(int row) {
+        return mRows.minTemps[checkRow(row)];
+    }
+
+    public double getMaxTemp(int row) {
+        return mRows.maxTemps[checkRow(row)];
+    }
+
+    public int getHumidity(int row) {
+        return mRows.humidities[checkRow(row)];
+    }
+
+    public double getPressure(int row) {
+        return mRows.pressures[checkRow(row)];
+    }
+
+    public double getWindSpeed(int row) {
+        return mRows.windSpeeds[checkRow(row)];
+    }
+
+    public double getDegrees(int row) {
+        return mRows.degrees[checkRow(row)];
+    }
+
+    /*
+     * A new instance over the same rows. Screens and caches treat a new instance as new data, so
+     * this is how ForecastRepository makes them format the rows again.
+     */
+    Forecast copy() {
+        return new Forecast(mDay, mRows);
+    }
+
+    /* The arrays can be longer than the number of rows, so bounds are checked against size() */
+    private int checkRow(int row) {
+        if (row < 0 || row >= mRows.size()) {
+            throw new IndexOutOfBoundsException("Row " + row + " of a " + mRows.size()
+                    + " day forecast");
+        }
+        return row;
+    }
+}
@@ -0,0 +1,303 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.data;
+
+import android.content.ContentResolver;
+import android.database.Cursor;
+import android.os.Bundle;
+
+import com.example.android.sunshine.data.WeatherContract.WeatherEntry;
+
+/**
+ * A set of weather rows stored column by column in primitive arrays. Row i of the batch is made
+ * of dates[i], weatherIds[i], minTemps[i] and so on.
+ * <p>
+ * Compared to an array of ContentValues, a batch needs one allocation per column instead of a
+ * HashMap plus a boxed Long, Double or Integer per value, and nothing has to be unboxed again
+ * when the rows are written to the database. Use {@link #insert(ContentResolver)} to hand a
+ * batch to {@link WeatherProvider}.
+ * <p>
+ * Batches are also how bulk readers get data out of the provider: {@link #query} returns a
+ * whole date range as a batch in one call, with no Cursor to walk. A batch returned by query only
+ * holds the columns that were asked for; the arrays of the other columns are null.
+ */
+public final class ForecastBatch {
+
+    public final long[] dates;
+    public final int[] weatherIds;
+    public final double[] minTemps;
+    public final double[] maxTemps;
+    public final int[] humidities;
+    public final double[] pressures;
+    public final double[] windSpeeds;
+    public final double[] degrees;
+
+    /* Number of rows that have been added so far. Never larger than the arrays' length. */
+    private int mSize;
+
+    /**
+     * Creates an empty batch that can hold up to capacity rows.
+     *
+     * @param capacity The maximum number of rows this batch will hold
+     */
+    public ForecastBatch(int capacity) {
+        this(new long[capacity], new int[capacity], new double[capacity], new double[capacity],
+                new int[capacity], new double[capacity], new double[capacity],
+                new double[capacity], 0);
+    }
+
+    private ForecastBatch(long[] dates, int[] weatherIds, double[] minTemps, double[] maxTemps,
+                          int[] humidities, double[] pressures, double[] windSpeeds,
+                          double[] degrees, int size) {
+        this.dates = dates;
+        this.weatherIds = weatherIds;
+        this.minTemps = minTemps;
+        this.maxTemps = maxTemps;
+        this.humidities = humidities;
+        this.pressures = pressures;
+        this.windSpeeds = windSpeeds;
+        this.degrees = degrees;
+        mSize = size;
+    }
+
+    /**
+     * Appends a row to this batch.
+     *
+     * @param date      Normalized UTC date of the forecast
+     * @param weatherId Weather condition ID as returned by the API
+     * @param minTemp   Low temperature in degrees Celsius
+     * @param maxTemp   High temperature in degrees Celsius
+     * @param humidity  Humidity in percent
+     * @param pressure  Pressure in hPa
+     * @param windSpeed Wind speed
+     * @param degree    Meteorological wind direction in degrees
+     */
+    public void add(long date, int weatherId, double minTemp, double maxTemp, int humidity,
+                    double pressure, double windSpeed, double degree) {
+        if (!hasAllColumns()) {
+            throw new IllegalStateException("Can't add rows to a partial ForecastBatch");
+        }
+        if (mSize == dates.length) {
+            throw new IllegalStateException("ForecastBatch is full (" + mSize + " rows)");
+        }
+
+        dates[mSize] = date;
+        weatherIds[mSize] = weatherId;
+        minTemps[mSize] = minTemp;
+        maxTemps[mSize] = maxTemp;
+        humidities[mSize] = humidity;
+        pressures[mSize] = pressure;
+        windSpeeds[mSize] = windSpeed;
+        degrees[mSize] = degree;
+        mSize++;
+    }
+
+    /**
+     * @return The number of rows in this batch
+     */
+    public int size() {
+        return mSize;
+    }
+
+    /**
+     * @return true if every column of this batch is present, which is required to insert it
+     */
+    public boolean hasAllColumns() {
+        return dates != null && weatherIds != null && minTemps != null && maxTemps != null
+                && humidities != null && pressures != null && windSpeeds != null
+                && degrees != null;
+    }
+
+    /**
+     * Reads some columns of the weather for a range of dates in a single call to
+     * {@link WeatherProvider#call(String, String, Bundle)}. Rows are sorted by ascending date.
+     *
+     * @param contentResolver Used to reach Sunshine's ContentProvider
+     * @param startDate       First normalized date to read, inclusive
+     * @param endDate         Last normalized date to read, inclusive
+     * @param columns         The WeatherEntry columns to read. Pass none to read every column.
+     * @return A batch holding the requested columns, or null if the provider couldn't be reached
+     */
+    public static ForecastBatch query(ContentResolver contentResolver, long startDate,
+                                      long endDate, String... columns) {
+        Bundle extras = new Bundle();
+        extras.putLong(WeatherContract.EXTRA_START_DATE, startDate);
+        extras.putLong(WeatherContract.EXTRA_END_DATE, endDate);
+        if (columns.length != 0) {
+            extras.putStringArray(WeatherContract.EXTRA_PROJECTION, columns);
+        }
+
+        Bundle result = contentResolver.call(
+                WeatherEntry.CONTENT_URI,
+                WeatherContract.METHOD_QUERY_COLUMNS,
+                null,
+                extras);
+
+        return result == null ? null : fromBundle(result);
+    }
+
+    /**
+     * Inserts every row of this batch into the weather table through
+     * {@link WeatherProvider#call(String, String, Bundle)}.
+     *
+     * @param contentResolver Used to reach Sunshine's ContentProvider
+     * @return The number of rows that were inserted
+     */
+    public int insert(ContentResolver contentResolver) {
+        Bundle result = contentResolver.call(
+                WeatherEntry.CONTENT_URI,
+                WeatherContract.METHOD_BULK_INSERT_BATCH,
+                null,
+                toBundle());
+
+        return result == null ? 0 : result.getInt(WeatherContract.EXTRA_ROW_COUNT);
+    }
+
+    /**
+     * Packs this batch into a Bundle, one primitive array per column, keyed by column name.
+     * Missing columns are left out of the Bundle.
+     *
+     * @return A Bundle that can be turned back into a batch with {@link #fromBundle(Bundle)}
+     */
+    Bundle toBundle() {
+        Bundle bundle = new Bundle();
+        bundle.putInt(WeatherContract.EXTRA_ROW_COUNT, mSize);
+        if (dates != null) bundle.putLongArray(WeatherEntry.COLUMN_DATE, dates);
+        if (weatherIds != null) bundle.putIntArray(WeatherEntry.COLUMN_WEATHER_ID, weatherIds);
+        if (minTemps != null) bundle.putDoubleArray(WeatherEntry.COLUMN_MIN_TEMP, minTemps);
+        if (maxTemps != null) bundle.putDoubleArray(WeatherEntry.COLUMN_MAX_TEMP, maxTemps);
+        if (humidities != null) bundle.putIntArray(WeatherEntry.COLUMN_HUMIDITY, humidities);
+        if (pressures != null) bundle.putDoubleArray(WeatherEntry.COLUMN_PRESSURE, pressures);
+        if (windSpeeds != null) bundle.putDoubleArray(WeatherEntry.COLUMN_WIND_SPEED, windSpeeds);
+        if (degrees != null) bundle.putDoubleArray(WeatherEntry.COLUMN_DEGREES, degrees);
+        return bundle;
+    }
+
+    /**
+     * Unpacks a batch that was packed by {@link #toBundle()}. The arrays are used as they are,
+     * not copied.
+     *
+     * @param bundle A Bundle created by {@link #toBundle()}
+     * @return The batch held by the Bundle
+     */
+    static ForecastBatch fromBundle(Bundle bundle) {
+        ForecastBatch batch = new ForecastBatch(
+                bundle.getLongArray(WeatherEntry.COLUMN_DATE),
+                bundle.getIntArray(WeatherEntry.COLUMN_WEATHER_ID),
+                bundle.getDoubleArray(WeatherEntry.COLUMN_MIN_TEMP),
+                bundle.getDoubleArray(WeatherEntry.COLUMN_MAX_TEMP),
+                bundle.getIntArray(WeatherEntry.COLUMN_HUMIDITY),
+                bundle.getDoubleArray(WeatherEntry.COLUMN_PRESSURE),
+                bundle.getDoubleArray(WeatherEntry.COLUMN_WIND_SPEED),
+                bundle.getDoubleArray(WeatherEntry.COLUMN_DEGREES),
+                bundle.getInt(WeatherContract.EXTRA_ROW_COUNT));
+
+        batch.checkColumnLengths();
+        return batch;
+    }
+
+    /**
+     * Copies the rows of a Cursor into a new batch. This is used by {@link WeatherProvider} to
+     * answer {@link #query}: the Cursor is walked once, inside the provider, and the client
+     * only ever sees the arrays.
+     *
+     * @param cursor  The rows to copy, positioned before the first row
+     * @param columns The columns of the Cursor, all of which must be WeatherEntry columns
+     * @return A batch that holds the given columns of every row of the Cursor
+     */
+    static ForecastBatch fromCursor(Cursor cursor, String[] columns) {
+        int rowCount = cursor.getCount();
+
+        long[] dates = null;
+        int[] weatherIds = null;
+        double[] minTemps = null;
+        double[] maxTemps = null;
+        int[] humidities = null;
+        double[] pressures = null;
+        double[] windSpeeds = null;
+        double[] degrees = null;
+
+        for (String column : columns) {
+            switch (column) {
+                case WeatherEntry.COLUMN_DATE:
+                    dates = new long[rowCount];
+                    break;
+                case WeatherEntry.COLUMN_WEATHER_ID:
+                    weatherIds = new int[rowCount];
+                    break;
+                case WeatherEntry.COLUMN_MIN_TEMP:
+                    minTemps = new double[rowCount];
+                    break;
+                case WeatherEntry.COLUMN_MAX_TEMP:
+                    maxTemps = new double[rowCount];
+                    break;
+                case WeatherEntry.COLUMN_HUMIDITY:
+                    humidities = new int[rowCount];
+                    break;
+                case WeatherEntry.COLUMN_PRESSURE:
+                    pressures = new double[rowCount];
+                    break;
+                case WeatherEntry.COLUMN_WIND_SPEED:
+                    windSpeeds = new double[rowCount];
+                    break;
+                case WeatherEntry.COLUMN_DEGREES:
+                    degrees = new double[rowCount];
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown weather column: " + column);
+            }
+        }
+
+        /* Look the column indices up once rather than once per row */
+        int dateIndex = cursor.getColumnIndex(WeatherEntry.COLUMN_DATE);
+        int weatherIdIndex = cursor.getColumnIndex(WeatherEntry.COLUMN_WEATHER_ID);
+        int minTempIndex = cursor.getColumnIndex(WeatherEntry.COLUMN_MIN_TEMP);
+        int maxTempIndex = cursor.getColumnIndex(WeatherEntry.COLUMN_MAX_TEMP);
+        int humidityIndex = cursor.getColumnIndex(WeatherEntry.COLUMN_HUMIDITY);
+        int pressureIndex = cursor.getColumnIndex(WeatherEntry.COLUMN_PRESSURE);
+        int windSpeedIndex = cursor.getColumnIndex(WeatherEntry.COLUMN_WIND_SPEED);
+        int degreesIndex = cursor.getColumnIndex(WeatherEntry.COLUMN_DEGREES);
+
+        int row = 0;
+        while (row < rowCount && cursor.moveToNext()) {
+            if (dates != null) dates[row] = cursor.getLong(dateIndex);
+            if (weatherIds != null) weatherIds[row] = cursor.getInt(weatherIdIndex);
+            if (minTemps != null) minTemps[row] = cursor.getDouble(minTempIndex);
+            if (maxTemps != null) maxTemps[row] = cursor.getDouble(maxTempIndex);
+            if (humidities != null) humidities[row] = cursor.getInt(humidityIndex);
+            if (pressures != null) pressures[row] = cursor.getDouble(pressureIndex);
+            if (windSpeeds != null) windSpeeds[row] = cursor.getDouble(windSpeedIndex);
+            if (degrees != null) degrees[row] = cursor.getDouble(degreesIndex);
+            row++;
+        }
+
+        return new ForecastBatch(dates, weatherIds, minTemps, maxTemps, humidities, pressures,
+                windSpeeds, degrees, row);
+    }
+
+    private void checkColumnLengths() {
+        if ((dates != null && dates.length < mSize)
+                || (weatherIds != null && weatherIds.length < mSize)
+                || (minTemps != null && minTemps.length < mSize)
+                || (maxTemps != null && maxTemps.length < mSize)
+                || (humidities != null && humidities.length < mSize)
+                || (pressures != null && pressures.length < mSize)
+                || (windSpeeds != null && windSpeeds.length < mSize)
+                || (degrees != null && degrees.length < mSize)) {
+            throw new IllegalArgumentException("ForecastBatch columns are shorter than " + mSize);
+        }
+    }
+}
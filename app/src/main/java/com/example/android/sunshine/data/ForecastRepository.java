@@ -0,0 +1,224 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.data;
+
+import android.content.Context;
+import android.database.ContentObserver;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.example.android.sunshine.utilities.SunshineDateUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+
+/**
+ * Holds the forecast from today onwards in memory and shares it with every screen of the app.
+ * <p>
+ * Screens {@link #subscribe(Listener) subscribe} instead of running their own queries. A
+ * subscriber immediately receives the {@link Forecast} that is already in memory, which means
+ * that rotating the screen or opening the details of a day never reads the database. When the
+ * weather table changes, the repository re-queries it once on a background thread and delivers
+ * the new Forecast to every subscriber. Changes that arrive while a query is running are
+ * coalesced into a single follow-up query.
+ * <p>
+ * The repository lives as long as the process. All of its methods must be called on the main
+ * thread, and listeners are always called on the main thread.
+ */
+public final class ForecastRepository {
+
+    private static final String TAG = ForecastRepository.class.getSimpleName();
+
+    /**
+     * Receives every new Forecast. Called on the main thread.
+     */
+    public interface Listener {
+        void onForecastChanged(Forecast forecast);
+    }
+
+    private static ForecastRepository sInstance;
+
+    private final Context mContext;
+
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+    /* Queries run one at a time, in order, off the main thread */
+    private final Executor mQueryExecutor = Executors.newSingleThreadExecutor();
+
+    private final List<Listener> mListeners = new ArrayList<>();
+
+    /* The latest forecast, or null until the first query has finished */
+    private Forecast mForecast;
+
+    /* True while a query is running on mQueryExecutor */
+    private boolean mQueryRunning;
+
+    /* True if the table changed after the running query started, or while nobody listened */
+    private boolean mStale = true;
+
+    private ForecastRepository(Context context) {
+        mContext = context.getApplicationContext();
+
+        mContext.getContentResolver().registerContentObserver(
+                WeatherContract.WeatherEntry.CONTENT_URI,
+                true,
+                new ContentObserver(mMainHandler) {
+                    @Override
+                    public void onChange(boolean selfChange) {
+                        mStale = true;
+                        refreshIfNeeded();
+                    }
+                });
+    }
+
+    /**
+     * @param context Any Context, only its application Context is kept
+     * @return The repository shared by the whole process
+     */
+    public static ForecastRepository getInstance(Context context) {
+        checkMainThread();
+        if (sInstance == null) {
+            sInstance = new ForecastRepository(context);
+        }
+        return sInstance;
+    }
+
+    /**
+     * Registers a listener. If a Forecast is already in memory, the listener receives it before
+     * this method returns; otherwise it receives the Forecast as soon as it has been loaded.
+     *
+     * @param listener The listener to add
+     */
+    public void subscribe(Listener listener) {
+        checkMainThread();
+        if (mListeners.contains(listener)) return;
+        mListeners.add(listener);
+
+        /* A forecast loaded yesterday doesn't start at today anymore */
+        if (mForecast != null
+                && mForecast.getDay() != SunshineDateUtils.getNormalizedUtcDateForToday()) {
+            mStale = true;
+        }
+
+        if (mForecast != null) {
+            listener.onForecastChanged(mForecast);
+        }
+        refreshIfNeeded();
+    }
+
+    /**
+     * Removes a listener. Call this when a screen stops, so the repository doesn't keep it alive.
+     *
+     * @param listener The listener to remove
+     */
+    public void unsubscribe(Listener listener) {
+        checkMainThread();
+        mListeners.remove(listener);
+    }
+
+    /**
+     * @return The latest Forecast, or null if none has been loaded yet
+     */
+    public Forecast getForecast() {
+        checkMainThread();
+        return mForecast;
+    }
+
+    /**
+     * Delivers the Forecast that is in memory again, as a new instance, without querying the
+     * database. Call this when something changes how the forecast is displayed but not the
+     * weather itself, like the units: temperatures are stored in Celsius whatever the user
+     * prefers, so there is nothing to reload. Screens and caches that compare Forecast
+     * instances see the new one as new data and format it again.
+     */
+    public void rerender() {
+        checkMainThread();
+        if (mForecast == null) return;
+
+        mForecast = mForecast.copy();
+
+        /* Screens that are stopped get the new instance when they subscribe again */
+        for (Listener listener : new ArrayList<>(mListeners)) {
+            listener.onForecastChanged(mForecast);
+        }
+    }
+
+    /*
+     * Starts a query if the data is stale and someone is listening. Nobody listening means the
+     * query is simply deferred until the next subscribe.
+     */
+    private void refreshIfNeeded() {
+        if (!mStale || mQueryRunning || mListeners.isEmpty()) return;
+
+        mStale = false;
+        mQueryRunning = true;
+
+        mQueryExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                long start = SystemClock.elapsedRealtime();
+                long today = SunshineDateUtils.getNormalizedUtcDateForToday();
+
+                Forecast loaded = null;
+                try {
+                    ForecastBatch rows = ForecastBatch.query(
+                            mContext.getContentResolver(), today, Long.MAX_VALUE);
+                    loaded = rows == null ? null : new Forecast(today, rows);
+
+                    Log.d(TAG, "Loaded " + (loaded == null ? 0 : loaded.size()) + " days in "
+                            + (SystemClock.elapsedRealtime() - start) + " ms");
+                } catch (RuntimeException e) {
+                    /* The next change or subscribe tries again, the query must still finish */
+                    Log.e(TAG, "Couldn't load the forecast", e);
+                }
+
+                final Forecast forecast = loaded;
+                mMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        onQueryFinished(forecast);
+                    }
+                });
+            }
+        });
+    }
+
+    private void onQueryFinished(Forecast forecast) {
+        mQueryRunning = false;
+
+        if (forecast != null) {
+            mForecast = forecast;
+
+            /* Iterate over a copy, since listeners may unsubscribe while being called */
+            for (Listener listener : new ArrayList<>(mListeners)) {
+                listener.onForecastChanged(forecast);
+            }
+        }
+
+        /* Catch up with changes that arrived while we were querying */
+        refreshIfNeeded();
+    }
+
+    private static void checkMainThread() {
+        if (Looper.myLooper() != Looper.getMainLooper()) {
+            throw new IllegalStateException("ForecastRepository must be used on the main thread");
+        }
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.data;
+
+import android.content.ContentResolver;
+import android.os.Bundle;
+
+import java.util.Locale;
+
+/**
+ * Remembers which coordinates the weather server resolved each location query to, so that any
+ * place the user has looked at before can be fetched by coordinates rather than by name. The
+ * server resolves a name on every request, coordinates it can use as they are.
+ * <p>
+ * The mappings are stored in the geocode table through
+ * {@link WeatherProvider#call(String, String, android.os.Bundle)}, which keeps the most recently
+ * used ones. All methods do disk I/O and must not be called on the main thread.
+ */
+public final class GeocodeCache {
+
+    private GeocodeCache() {
+    }
+
+    /**
+     * Normalizes a location query, so that "Mountain View, CA" and " mountain  view, ca" are
+     * the same location.
+     *
+     * @param locationQuery The location as the user typed it
+     * @return The query trimmed, lower case and with single spaces
+     */
+    public static String normalize(String locationQuery) {
+        return locationQuery.trim().replaceAll("\\s+", " ").toLowerCase(Locale.US);
+    }
+
+    /**
+     * @param contentResolver Used to reach Sunshine's ContentProvider
+     * @param locationQuery   The location as the user typed it
+     * @return The latitude and longitude the query was last resolved to, or null if it never was
+     */
+    public static double[] get(ContentResolver contentResolver, String locationQuery) {
+        String query = normalize(locationQuery);
+        if (query.isEmpty()) return null;
+
+        Bundle result = contentResolver.call(
+                WeatherContract.BASE_CONTENT_URI,
+                WeatherContract.METHOD_GEOCODE_LOOKUP,
+                query,
+                null);
+
+        if (result == null) return null;
+        return new double[]{
+                result.getDouble(WeatherContract.EXTRA_LATITUDE),
+                result.getDouble(WeatherContract.EXTRA_LONGITUDE)};
+    }
+
+    /**
+     * Remembers the coordinates the weather server resolved a location query to.
+     *
+     * @param contentResolver Used to reach Sunshine's ContentProvider
+     * @param locationQuery   The location as the user typed it
+     * @param latitude        Latitude of the city the server answered with
+     * @param longitude       Longitude of the city the server answered with
+     */
+    public static void put(ContentResolver contentResolver, String locationQuery,
+            double latitude, double longitude) {
+        String query = normalize(locationQuery);
+        if (query.isEmpty()) return;
+
+        Bundle extras = new Bundle();
+        extras.putDouble(WeatherContract.EXTRA_LATITUDE, latitude);
+        extras.putDouble(WeatherContract.EXTRA_LONGITUDE, longitude);
+
+        contentResolver.call(
+                WeatherContract.BASE_CONTENT_URI,
+                WeatherContract.METHOD_GEOCODE_STORE,
+                query,
+                extras);
+    }
+}
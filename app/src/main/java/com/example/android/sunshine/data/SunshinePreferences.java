@@ -21,6 +21,16 @@ import android.preference.PreferenceManager;
 
 import com.example.android.sunshine.R;
 
+/**
+ * Typed access to Sunshine's preferences.
+ * <p>
+ * Reading a preference used to mean looking up the default SharedPreferences and resolving its
+ * key through context.getString, and isMetric alone runs for every temperature that is
+ * formatted. Now all preferences are read once into an immutable {@link Snapshot}. The snapshot
+ * is replaced whenever a preference changes, both through the settings screen (seen by one
+ * OnSharedPreferenceChangeListener) and through the setters below, which refresh it right away.
+ * Getters only read fields of the current snapshot.
+ */
 public final class SunshinePreferences {
 
     /*
@@ -31,6 +41,120 @@ public final class SunshinePreferences {
     public static final String PREF_COORD_LAT = "coord_lat";
     public static final String PREF_COORD_LONG = "coord_long";
 
+    /**
+     * The value of every preference at one point in time. Coordinates are kept as doubles, so
+     * they are converted from their stored long bits only once per change.
+     */
+    private static final class Snapshot {
+        final String location;
+        final boolean metric;
+        final boolean latLonAvailable;
+        final double latitude;
+        final double longitude;
+        final boolean notificationsEnabled;
+        final long lastNotificationTime;
+        final long lastSyncTime;
+        final String storedLocationKey;
+
+        Snapshot(Context context, SharedPreferences sp) {
+            location = sp.getString(
+                    context.getString(R.string.pref_location_key),
+                    context.getString(R.string.pref_location_default));
+
+            String metricUnits = context.getString(R.string.pref_units_metric);
+            metric = metricUnits.equals(
+                    sp.getString(context.getString(R.string.pref_units_key), metricUnits));
+
+            latLonAvailable = sp.contains(PREF_COORD_LAT) && sp.contains(PREF_COORD_LONG);
+
+            /*
+             * This is a hack we have to resort to since you can't store doubles in
+             * SharedPreferences.
+             *
+             * Double.doubleToLongBits returns an integer corresponding to the bits of the given
+             * IEEE 754 double precision value.
+             *
+             * Double.longBitsToDouble does the opposite, converting a long (that represents a
+             * double) into the double itself.
+             */
+            latitude = Double.longBitsToDouble(
+                    sp.getLong(PREF_COORD_LAT, Double.doubleToRawLongBits(0.0)));
+            longitude = Double.longBitsToDouble(
+                    sp.getLong(PREF_COORD_LONG, Double.doubleToRawLongBits(0.0)));
+
+            /*
+             * In Sunshine, the user has the ability to say whether they would like notifications
+             * enabled or not. If no preference has been chosen, we reference a bool stored in
+             * bools.xml.
+             */
+            notificationsEnabled = sp.getBoolean(
+                    context.getString(R.string.pref_enable_notifications_key),
+                    context.getResources().getBoolean(R.bool.show_notifications_by_default));
+
+            lastNotificationTime =
+                    sp.getLong(context.getString(R.string.pref_last_notification), 0);
+
+            lastSyncTime = sp.getLong(context.getString(R.string.pref_last_sync), 0);
+
+            storedLocationKey =
+                    sp.getString(context.getString(R.string.pref_stored_location), null);
+        }
+    }
+
+    /* The current values. Replaced as a whole, never modified. */
+    private static volatile Snapshot sSnapshot;
+
+    /*
+     * SharedPreferences only keeps weak references to its listeners, so this one is held here for
+     * as long as the process lives.
+     */
+    private static SharedPreferences.OnSharedPreferenceChangeListener sListener;
+
+    private static final Object sLock = new Object();
+
+    /*
+     * Returns the current snapshot, reading the preferences and registering the change listener
+     * the first time it is called.
+     */
+    private static Snapshot snapshot(Context context) {
+        Snapshot snapshot = sSnapshot;
+        if (snapshot != null) return snapshot;
+
+        synchronized (sLock) {
+            if (sSnapshot == null) {
+                final Context appContext = context.getApplicationContext();
+                SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(appContext);
+
+                sListener = new SharedPreferences.OnSharedPreferenceChangeListener() {
+                    @Override
+                    public void onSharedPreferenceChanged(SharedPreferences sp, String key) {
+                        refresh(appContext, sp);
+                    }
+                };
+                sp.registerOnSharedPreferenceChangeListener(sListener);
+
+                sSnapshot = new Snapshot(appContext, sp);
+            }
+            return sSnapshot;
+        }
+    }
+
+    /**
+     * Reads every preference again. SharedPreferences calls its listeners in no particular order,
+     * so a listener that reacts to a change by calling the getters below must call this first.
+     *
+     * @param context Used to get the SharedPreferences
+     */
+    public static void reload(Context context) {
+        refresh(context, PreferenceManager.getDefaultSharedPreferences(context));
+    }
+
+    private static void refresh(Context context, SharedPreferences sp) {
+        synchronized (sLock) {
+            sSnapshot = new Snapshot(context.getApplicationContext(), sp);
+        }
+    }
+
     /**
      * Helper method to handle setting location details in Preferences (city name, latitude,
      * longitude)
@@ -48,6 +172,9 @@ public final class SunshinePreferences {
         editor.putLong(PREF_COORD_LAT, Double.doubleToRawLongBits(lat));
         editor.putLong(PREF_COORD_LONG, Double.doubleToRawLongBits(lon));
         editor.apply();
+
+        /* apply updates the in-memory values now but notifies listeners later */
+        refresh(context, sp);
     }
 
     /**
@@ -62,6 +189,7 @@ public final class SunshinePreferences {
         editor.remove(PREF_COORD_LAT);
         editor.remove(PREF_COORD_LONG);
         editor.apply();
+        refresh(context, sp);
     }
 
     /**
@@ -74,12 +202,7 @@ public final class SunshinePreferences {
      * "94043,USA" if SharedPreferences have not been implemented yet.
      */
     public static String getPreferredWeatherLocation(Context context) {
-        SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(context);
-
-        String keyForLocation = context.getString(R.string.pref_location_key);
-        String defaultLocation = context.getString(R.string.pref_location_default);
-
-        return sp.getString(keyForLocation, defaultLocation);
+        return snapshot(context).location;
     }
 
     /**
@@ -89,19 +212,7 @@ public final class SunshinePreferences {
      * @return true if metric display should be used, false if imperial display should be used
      */
     public static boolean isMetric(Context context) {
-        SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(context);
-
-        String keyForUnits = context.getString(R.string.pref_units_key);
-        String defaultUnits = context.getString(R.string.pref_units_metric);
-        String preferredUnits = sp.getString(keyForUnits, defaultUnits);
-        String metric = context.getString(R.string.pref_units_metric);
-
-        boolean userPrefersMetric = false;
-        if (metric.equals(preferredUnits)) {
-            userPrefersMetric = true;
-        }
-
-        return userPrefersMetric;
+        return snapshot(context).metric;
     }
 
     /**
@@ -113,25 +224,8 @@ public final class SunshinePreferences {
      * @return an array containing the two coordinate values for the user's preferred location
      */
     public static double[] getLocationCoordinates(Context context) {
-        SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(context);
-
-        double[] preferredCoordinates = new double[2];
-
-        /*
-         * This is a hack we have to resort to since you can't store doubles in SharedPreferences.
-         *
-         * Double.doubleToLongBits returns an integer corresponding to the bits of the given
-         * IEEE 754 double precision value.
-         *
-         * Double.longBitsToDouble does the opposite, converting a long (that represents a double)
-         * into the double itself.
-         */
-        preferredCoordinates[0] = Double
-                 .longBitsToDouble(sp.getLong(PREF_COORD_LAT, Double.doubleToRawLongBits(0.0)));
-        preferredCoordinates[1] = Double
-                .longBitsToDouble(sp.getLong(PREF_COORD_LONG, Double.doubleToRawLongBits(0.0)));
-
-        return preferredCoordinates;
+        Snapshot snapshot = snapshot(context);
+        return new double[]{snapshot.latitude, snapshot.longitude};
     }
 
     /**
@@ -142,17 +236,7 @@ public final class SunshinePreferences {
      * @return true if lat/long are saved in SharedPreferences
      */
     public static boolean isLocationLatLonAvailable(Context context) {
-        SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(context);
-
-        boolean spContainLatitude = sp.contains(PREF_COORD_LAT);
-        boolean spContainLongitude = sp.contains(PREF_COORD_LONG);
-
-        boolean spContainBothLatitudeAndLongitude = false;
-        if (spContainLatitude && spContainLongitude) {
-            spContainBothLatitudeAndLongitude = true;
-        }
-
-        return spContainBothLatitudeAndLongitude;
+        return snapshot(context).latLonAvailable;
     }
 
     /**
@@ -163,26 +247,7 @@ public final class SunshinePreferences {
      * @return true if the user prefers to see notifications, false otherwise
      */
     public static boolean areNotificationsEnabled(Context context) {
-        /* Key for accessing the preference for showing notifications */
-        String displayNotificationsKey = context.getString(R.string.pref_enable_notifications_key);
-
-        /*
-         * In Sunshine, the user has the ability to say whether she would like notifications
-         * enabled or not. If no preference has been chosen, we want to be able to determine
-         * whether or not to show them. To do this, we reference a bool stored in bools.xml.
-         */
-        boolean shouldDisplayNotificationsByDefault = context
-                .getResources()
-                .getBoolean(R.bool.show_notifications_by_default);
-
-        /* As usual, we use the default SharedPreferences to access the user's preferences */
-        SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(context);
-
-        /* If a value is stored with the key, we extract it here. If not, use a default. */
-        boolean shouldDisplayNotifications = sp
-                .getBoolean(displayNotificationsKey, shouldDisplayNotificationsByDefault);
-
-        return shouldDisplayNotifications;
+        return snapshot(context).notificationsEnabled;
     }
 
     /**
@@ -192,25 +257,13 @@ public final class SunshinePreferences {
      * @return UNIX time of when the last notification was shown
      */
     public static long getLastNotificationTimeInMillis(Context context) {
-        /* Key for accessing the time at which Sunshine last displayed a notification */
-        String lastNotificationKey = context.getString(R.string.pref_last_notification);
-
-        /* As usual, we use the default SharedPreferences to access the user's preferences */
-        SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(context);
-
         /*
-         * Here, we retrieve the time in milliseconds when the last notification was shown. If
-         * SharedPreferences doesn't have a value for lastNotificationKey, we return 0. The reason
-         * we return 0 is because we compare the value returned from this method to the current
-         * system time. If the difference between the last notification time and the current time
-         * is greater than one day, we will show a notification again. When we compare the two
-         * values, we subtract the last notification time from the current system time. If the
-         * time of the last notification was 0, the difference will always be greater than the
-         * number of milliseconds in a day and we will show another notification.
+         * If no notification was ever shown, this is 0. The reason we return 0 is because we
+         * compare the value returned from this method to the current system time. If the time of
+         * the last notification was 0, the difference will always be greater than the number of
+         * milliseconds in a day and we will show another notification.
          */
-        long lastNotificationTime = sp.getLong(lastNotificationKey, 0);
-
-        return lastNotificationTime;
+        return snapshot(context).lastNotificationTime;
     }
 
     /**
@@ -241,5 +294,55 @@ public final class SunshinePreferences {
         String lastNotificationKey = context.getString(R.string.pref_last_notification);
         editor.putLong(lastNotificationKey, timeOfNotification);
         editor.apply();
+        refresh(context, sp);
+    }
+
+    /**
+     * Returns when the weather that is stored was downloaded (in UNIX time). This is read from
+     * memory, so the UI can show how old the weather is without waiting for anything.
+     *
+     * @param context Used to access SharedPreferences
+     * @return UNIX time of when the stored weather was downloaded, 0 if it never was
+     */
+    public static long getLastSyncTimeInMillis(Context context) {
+        return snapshot(context).lastSyncTime;
+    }
+
+    /**
+     * Saves when the weather that was just stored was downloaded.
+     *
+     * @param context  Used to access SharedPreferences
+     * @param syncTime When the weather was downloaded (in UNIX time)
+     */
+    public static void saveLastSyncTime(Context context, long syncTime) {
+        SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(context);
+        SharedPreferences.Editor editor = sp.edit();
+        editor.putLong(context.getString(R.string.pref_last_sync), syncTime);
+        editor.apply();
+        refresh(context, sp);
+    }
+
+    /**
+     * Returns the location the stored weather is for, as a key of NetworkUtils.getLocationKey.
+     *
+     * @param context Used to access SharedPreferences
+     * @return The location key of the stored weather, null if it isn't known
+     */
+    public static String getStoredWeatherLocation(Context context) {
+        return snapshot(context).storedLocationKey;
+    }
+
+    /**
+     * Saves the location of the weather that was just stored.
+     *
+     * @param context     Used to access SharedPreferences
+     * @param locationKey The key NetworkUtils.getLocationKey gave for that location
+     */
+    public static void saveStoredWeatherLocation(Context context, String locationKey) {
+        SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(context);
+        SharedPreferences.Editor editor = sp.edit();
+        editor.putString(context.getString(R.string.pref_stored_location), locationKey);
+        editor.apply();
+        refresh(context, sp);
     }
-}
\ No newline at end of file
+}
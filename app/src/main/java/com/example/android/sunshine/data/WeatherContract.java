@@ -56,6 +56,48 @@ public class WeatherContract {
      */
     public static final String PATH_WEATHER = "weather";
 
+    /*
+     * Methods that Sunshine's ContentProvider handles through ContentResolver#call. They move
+     * whole batches of rows as primitive arrays rather than one ContentValues (or one Cursor
+     * row) at a time. See ForecastBatch for the layout of the arrays.
+     */
+
+    /* Inserts a ForecastBatch packed in the extras. The result holds EXTRA_ROW_COUNT. */
+    public static final String METHOD_BULK_INSERT_BATCH = "bulk_insert_batch";
+
+    /*
+     * Reads the rows between EXTRA_START_DATE and EXTRA_END_DATE (both inclusive), sorted by
+     * date, as a ForecastBatch holding only the columns listed in EXTRA_PROJECTION.
+     */
+    public static final String METHOD_QUERY_COLUMNS = "query_columns";
+
+    /* Number of rows held by, or written from, a Bundle of primitive column arrays */
+    public static final String EXTRA_ROW_COUNT = "row_count";
+
+    /* Normalized date bounds of METHOD_QUERY_COLUMNS. Both default to an open range. */
+    public static final String EXTRA_START_DATE = "start_date";
+    public static final String EXTRA_END_DATE = "end_date";
+
+    /* WeatherEntry columns to read with METHOD_QUERY_COLUMNS. If missing, all are read. */
+    public static final String EXTRA_PROJECTION = "projection";
+
+    /*
+     * Looks up the coordinates of a location query in the geocode table. The arg is the query,
+     * as normalized by GeocodeCache. The result holds EXTRA_LATITUDE and EXTRA_LONGITUDE, or is
+     * null if the query was never resolved.
+     */
+    public static final String METHOD_GEOCODE_LOOKUP = "geocode_lookup";
+
+    /*
+     * Stores the coordinates of a location query, held by EXTRA_LATITUDE and EXTRA_LONGITUDE.
+     * The arg is the normalized query.
+     */
+    public static final String METHOD_GEOCODE_STORE = "geocode_store";
+
+    /* Coordinates of the METHOD_GEOCODE_ methods */
+    public static final String EXTRA_LATITUDE = "latitude";
+    public static final String EXTRA_LONGITUDE = "longitude";
+
     /* Inner class that defines the table contents of the weather table */
     public static final class WeatherEntry implements BaseColumns {
 
@@ -135,4 +177,25 @@ public class WeatherContract {
             return WeatherContract.WeatherEntry.COLUMN_DATE + " >= " + normalizedUtcNow;
         }
     }
-}
\ No newline at end of file
+
+    /*
+     * Inner class that defines the table contents of the geocode table, which remembers the
+     * coordinates the weather server resolved for each location query. It is only reached
+     * through the METHOD_GEOCODE_ methods, see GeocodeCache.
+     */
+    public static final class GeocodeEntry implements BaseColumns {
+
+        /* Used internally as the name of our geocode table. */
+        public static final String TABLE_NAME = "geocode";
+
+        /* The location query, as normalized by GeocodeCache. Unique. */
+        public static final String COLUMN_QUERY = "query";
+
+        /* Coordinates of the city the weather server answered the query with */
+        public static final String COLUMN_LATITUDE = "lat";
+        public static final String COLUMN_LONGITUDE = "lon";
+
+        /* When the query was last stored or looked up, in UNIX time. Rows are evicted by it. */
+        public static final String COLUMN_LAST_USED = "last_used";
+    }
+}
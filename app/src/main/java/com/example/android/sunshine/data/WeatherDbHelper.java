@@ -18,14 +18,22 @@ package com.example.android.sunshine.data;
 import android.content.Context;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.os.SystemClock;
+import android.util.Log;
 
+import com.example.android.sunshine.data.WeatherContract.GeocodeEntry;
 import com.example.android.sunshine.data.WeatherContract.WeatherEntry;
+import com.example.android.sunshine.data.WeatherDbMigrations.Migration;
+
+import java.util.List;
 
 /**
  * Manages a local database for weather data.
  */
 public class WeatherDbHelper extends SQLiteOpenHelper {
 
+    private static final String TAG = WeatherDbHelper.class.getSimpleName();
+
     /*
      * This is the name of our database. Database names should be descriptive and end with the
      * .db extension.
@@ -42,8 +50,10 @@ public class WeatherDbHelper extends SQLiteOpenHelper {
      * versions of Sunshine could cause everything to break. Although that is certainly a rare
      * use-case, we wanted to watch out for it and warn you what could happen if you mistakenly
      * version your databases.
+     *
+     * Version 4 added the geocode table.
      */
-    private static final int DATABASE_VERSION = 3;
+    private static final int DATABASE_VERSION = 4;
 
     public WeatherDbHelper(Context context) {
         super(context, DATABASE_NAME, null, DATABASE_VERSION);
@@ -99,15 +109,41 @@ public class WeatherDbHelper extends SQLiteOpenHelper {
          * that SQL with the execSQL method of our SQLite database object.
          */
         sqLiteDatabase.execSQL(SQL_CREATE_WEATHER_TABLE);
+
+        /*
+         * The geocode table maps each location query to the coordinates the weather server
+         * resolved it to. There is at most one row per query, a newer resolution replaces it.
+         */
+        final String SQL_CREATE_GEOCODE_TABLE =
+
+                "CREATE TABLE " + GeocodeEntry.TABLE_NAME + " (" +
+
+                GeocodeEntry._ID              + " INTEGER PRIMARY KEY AUTOINCREMENT, " +
+
+                GeocodeEntry.COLUMN_QUERY     + " TEXT NOT NULL, "                     +
+
+                GeocodeEntry.COLUMN_LATITUDE  + " REAL NOT NULL, "                     +
+                GeocodeEntry.COLUMN_LONGITUDE + " REAL NOT NULL, "                     +
+
+                GeocodeEntry.COLUMN_LAST_USED + " INTEGER NOT NULL, "                  +
+
+                " UNIQUE (" + GeocodeEntry.COLUMN_QUERY + ") ON CONFLICT REPLACE);";
+
+        sqLiteDatabase.execSQL(SQL_CREATE_GEOCODE_TABLE);
     }
 
     /**
-     * This database is only a cache for online data, so its upgrade policy is simply to discard
-     * the data and call through to onCreate to recreate the table. Note that this only fires if
-     * you change the version number for your database (in our case, DATABASE_VERSION). It does NOT
-     * depend on the version number for your application found in your app/build.gradle file. If
-     * you want to update the schema without wiping data, commenting out the current body of this
-     * method should be your top priority before modifying this method.
+     * Upgrades the database by running every migration between oldVersion and newVersion, in
+     * order, so that the weather we already have survives an app update. Note that this only
+     * fires if you change the version number for your database (in our case, DATABASE_VERSION).
+     * It does NOT depend on the version number for your application found in your
+     * app/build.gradle file.
+     * <p>
+     * SQLiteOpenHelper already wraps onUpgrade in a single transaction, so either every
+     * migration is applied or none of them are. If there is no chain of migrations between the
+     * two versions (for instance, a database from one of the very old releases of Sunshine),
+     * the data is discarded and the tables recreated, which is safe as this database is only a
+     * cache for online data.
      *
      * @param sqLiteDatabase Database that is being upgraded
      * @param oldVersion     The old database version
@@ -115,7 +151,28 @@ public class WeatherDbHelper extends SQLiteOpenHelper {
      */
     @Override
     public void onUpgrade(SQLiteDatabase sqLiteDatabase, int oldVersion, int newVersion) {
-        sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + WeatherEntry.TABLE_NAME);
-        onCreate(sqLiteDatabase);
+        List<Migration> migrations = WeatherDbMigrations.findMigrationPath(oldVersion, newVersion);
+
+        if (migrations == null) {
+            Log.w(TAG, "No migration path from version " + oldVersion + " to " + newVersion
+                    + ", recreating the database");
+            sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + WeatherEntry.TABLE_NAME);
+            sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + GeocodeEntry.TABLE_NAME);
+            onCreate(sqLiteDatabase);
+            return;
+        }
+
+        long upgradeStart = SystemClock.elapsedRealtime();
+
+        for (Migration migration : migrations) {
+            long stepStart = SystemClock.elapsedRealtime();
+            migration.migrate(sqLiteDatabase);
+            Log.i(TAG, "Migrated from version " + migration.startVersion + " to "
+                    + migration.endVersion + " in "
+                    + (SystemClock.elapsedRealtime() - stepStart) + " ms");
+        }
+
+        Log.i(TAG, "Upgraded from version " + oldVersion + " to " + newVersion + " in "
+                + (SystemClock.elapsedRealtime() - upgradeStart) + " ms");
     }
-}
\ No newline at end of file
+}
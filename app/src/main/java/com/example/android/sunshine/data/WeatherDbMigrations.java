@@ -0,0 +1,108 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.data;
+
+import android.database.sqlite.SQLiteDatabase;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The ordered list of incremental schema migrations for weather.db. Each {@link Migration} moves
+ * the database forward by exactly one version and must keep the data that is already stored.
+ * <p>
+ * To change the schema, bump WeatherDbHelper's DATABASE_VERSION, update its onCreate statement
+ * so that fresh installs get the new schema directly, and append a Migration here that takes an
+ * existing database from the previous version to the new one.
+ */
+final class WeatherDbMigrations {
+
+    /*
+     * The oldest schema we know how to migrate from. Anything older than this predates the
+     * current weather table (the very first Sunshine releases had a location table and a
+     * different weather schema) and is simply recreated by WeatherDbHelper.
+     */
+    static final int FIRST_MIGRATABLE_VERSION = 3;
+
+    /**
+     * A single step that upgrades the database from {@link #startVersion} to
+     * {@link #endVersion}. Steps are always run inside the upgrade transaction that
+     * SQLiteOpenHelper opens around onUpgrade, so they must not begin or end transactions
+     * themselves.
+     */
+    abstract static class Migration {
+
+        final int startVersion;
+        final int endVersion;
+
+        Migration(int startVersion, int endVersion) {
+            this.startVersion = startVersion;
+            this.endVersion = endVersion;
+        }
+
+        abstract void migrate(SQLiteDatabase db);
+    }
+
+    /*
+     * Every migration we ship, in version order. Never edit a migration once it has been
+     * released; add a new one instead.
+     */
+    private static final Migration[] MIGRATIONS = {
+
+            /* Adds the geocode table, the weather table is untouched */
+            new Migration(3, 4) {
+                @Override
+                void migrate(SQLiteDatabase db) {
+                    db.execSQL("CREATE TABLE geocode ("
+                            + "_id INTEGER PRIMARY KEY AUTOINCREMENT, "
+                            + "query TEXT NOT NULL, "
+                            + "lat REAL NOT NULL, "
+                            + "lon REAL NOT NULL, "
+                            + "last_used INTEGER NOT NULL, "
+                            + " UNIQUE (query) ON CONFLICT REPLACE);");
+                }
+            },
+    };
+
+    private WeatherDbMigrations() {
+    }
+
+    /**
+     * Finds the chain of migrations that takes a database from oldVersion to newVersion.
+     *
+     * @param oldVersion The version the database is currently at
+     * @param newVersion The version we want the database to be at
+     * @return The migrations to run in order, or null if there is no unbroken chain between the
+     * two versions (in which case the caller has to fall back to recreating the database)
+     */
+    static List<Migration> findMigrationPath(int oldVersion, int newVersion) {
+        if (oldVersion < FIRST_MIGRATABLE_VERSION || newVersion < oldVersion) {
+            return null;
+        }
+
+        List<Migration> path = new ArrayList<>();
+        int version = oldVersion;
+        for (Migration migration : MIGRATIONS) {
+            if (version == newVersion) break;
+            if (migration.startVersion == version) {
+                path.add(migration);
+                version = migration.endVersion;
+            }
+        }
+
+        return version == newVersion ? path : null;
+    }
+}
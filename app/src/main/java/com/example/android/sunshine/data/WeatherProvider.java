@@ -21,14 +21,18 @@ import android.content.ContentValues;
 import android.content.UriMatcher;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
 import android.net.Uri;
+import android.os.Bundle;
 import android.support.annotation.NonNull;
 
+import com.example.android.sunshine.data.WeatherContract.GeocodeEntry;
 import com.example.android.sunshine.utilities.SunshineDateUtils;
 
 /**
  * This class serves as the ContentProvider for all of Sunshine's data. This class allows us to
- * bulkInsert data, query data, and delete data.
+ * bulkInsert data, query data, and delete data. Batches of rows stored as primitive arrays can
+ * also be written and read through {@link #call(String, String, Bundle)}.
  * <p>
  * Although ContentProvider implementation requires the implementation of additional methods to
  * perform single inserts, updates, and the ability to get the type of the data from a URI.
@@ -52,6 +56,41 @@ public class WeatherProvider extends ContentProvider {
      * common convention in Android programming.
      */
     private static final UriMatcher sUriMatcher = buildUriMatcher();
+
+    /*
+     * Insert statement used by the ForecastBatch path. The order of the columns here is the
+     * order in which insertBatch binds its values.
+     */
+    private static final String SQL_INSERT_WEATHER =
+            "INSERT INTO " + WeatherContract.WeatherEntry.TABLE_NAME + " ("
+                    + WeatherContract.WeatherEntry.COLUMN_DATE + ", "
+                    + WeatherContract.WeatherEntry.COLUMN_WEATHER_ID + ", "
+                    + WeatherContract.WeatherEntry.COLUMN_MIN_TEMP + ", "
+                    + WeatherContract.WeatherEntry.COLUMN_MAX_TEMP + ", "
+                    + WeatherContract.WeatherEntry.COLUMN_HUMIDITY + ", "
+                    + WeatherContract.WeatherEntry.COLUMN_PRESSURE + ", "
+                    + WeatherContract.WeatherEntry.COLUMN_WIND_SPEED + ", "
+                    + WeatherContract.WeatherEntry.COLUMN_DEGREES
+                    + ") VALUES (?, ?, ?, ?, ?, ?, ?, ?)";
+
+    /* Columns read by METHOD_QUERY_COLUMNS when the caller doesn't pass a projection */
+    private static final String[] ALL_BATCH_COLUMNS = {
+            WeatherContract.WeatherEntry.COLUMN_DATE,
+            WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
+            WeatherContract.WeatherEntry.COLUMN_MIN_TEMP,
+            WeatherContract.WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherContract.WeatherEntry.COLUMN_HUMIDITY,
+            WeatherContract.WeatherEntry.COLUMN_PRESSURE,
+            WeatherContract.WeatherEntry.COLUMN_WIND_SPEED,
+            WeatherContract.WeatherEntry.COLUMN_DEGREES
+    };
+
+    /*
+     * Location queries whose coordinates are remembered. Each row is tiny, this is only there
+     * so that a user who tries a lot of places doesn't grow the table forever.
+     */
+    private static final int MAX_GEOCODE_ENTRIES = 64;
+
     private WeatherDbHelper mOpenHelper;
 
     /**
@@ -176,6 +215,218 @@ public class WeatherProvider extends ContentProvider {
         }
     }
 
+    /**
+     * Handles the batch methods declared in {@link WeatherContract}. In Sunshine, this is how a
+     * freshly parsed forecast gets into the database: the rows arrive as a {@link ForecastBatch}
+     * packed into the extras Bundle, so no ContentValues (and no boxed values) are created
+     * between the JSON parser and SQLite. Readers that want many rows at once, like the
+     * notification and the wearable sync, get them back the same way.
+     *
+     * @param method The method to call, one of the METHOD_ constants in WeatherContract
+     * @param arg    The normalized location query for the METHOD_GEOCODE_ methods, unused by
+     *               the others
+     * @param extras The arguments of the method: the batch to insert, the date range and
+     *               projection to read, or the coordinates to store. Unused by
+     *               METHOD_GEOCODE_LOOKUP.
+     * @return The result of the method, or null if the method isn't known
+     */
+    @Override
+    public Bundle call(@NonNull String method, String arg, Bundle extras) {
+        switch (method) {
+
+            case WeatherContract.METHOD_BULK_INSERT_BATCH: {
+                /* Missing extras are an empty batch, which insertBatch rejects */
+                int rowsInserted = insertBatch(
+                        ForecastBatch.fromBundle(extras == null ? Bundle.EMPTY : extras));
+
+                Bundle result = new Bundle();
+                result.putInt(WeatherContract.EXTRA_ROW_COUNT, rowsInserted);
+                return result;
+            }
+
+            case WeatherContract.METHOD_QUERY_COLUMNS:
+                return queryColumns(extras == null ? Bundle.EMPTY : extras).toBundle();
+
+            case WeatherContract.METHOD_GEOCODE_LOOKUP:
+                return lookupGeocode(arg);
+
+            case WeatherContract.METHOD_GEOCODE_STORE:
+                if (extras == null) {
+                    throw new IllegalArgumentException("Coordinates are required to store");
+                }
+                storeGeocode(arg,
+                        extras.getDouble(WeatherContract.EXTRA_LATITUDE),
+                        extras.getDouble(WeatherContract.EXTRA_LONGITUDE));
+                return null;
+
+            default:
+                return super.call(method, arg, extras);
+        }
+    }
+
+    /**
+     * Inserts every row of a ForecastBatch in a single transaction. The insert statement is
+     * compiled once and each value is bound straight from the batch's primitive arrays.
+     *
+     * @param batch The rows to insert
+     * @return The number of rows that were inserted
+     */
+    private int insertBatch(ForecastBatch batch) {
+        if (!batch.hasAllColumns()) {
+            throw new IllegalArgumentException("Every weather column is required to insert");
+        }
+
+        final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
+        int rowsInserted = 0;
+
+        db.beginTransaction();
+        try {
+            SQLiteStatement insert = db.compileStatement(SQL_INSERT_WEATHER);
+            try {
+                for (int i = 0; i < batch.size(); i++) {
+                    if (!SunshineDateUtils.isDateNormalized(batch.dates[i])) {
+                        throw new IllegalArgumentException("Date must be normalized to insert");
+                    }
+
+                    insert.bindLong(1, batch.dates[i]);
+                    insert.bindLong(2, batch.weatherIds[i]);
+                    insert.bindDouble(3, batch.minTemps[i]);
+                    insert.bindDouble(4, batch.maxTemps[i]);
+                    insert.bindLong(5, batch.humidities[i]);
+                    insert.bindDouble(6, batch.pressures[i]);
+                    insert.bindDouble(7, batch.windSpeeds[i]);
+                    insert.bindDouble(8, batch.degrees[i]);
+
+                    if (insert.executeInsert() != -1) {
+                        rowsInserted++;
+                    }
+                }
+            } finally {
+                insert.close();
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+
+        if (rowsInserted > 0) {
+            getContext().getContentResolver()
+                    .notifyChange(WeatherContract.WeatherEntry.CONTENT_URI, null);
+        }
+
+        return rowsInserted;
+    }
+
+    /**
+     * Reads a range of rows into a ForecastBatch. The Cursor is walked here, inside the
+     * provider, so callers never pay for a Cursor or for one getter call per cell.
+     *
+     * @param extras The date range and projection, as described by METHOD_QUERY_COLUMNS
+     * @return The requested columns of every row in the range, sorted by date
+     */
+    private ForecastBatch queryColumns(Bundle extras) {
+        long startDate = extras.getLong(WeatherContract.EXTRA_START_DATE, Long.MIN_VALUE);
+        long endDate = extras.getLong(WeatherContract.EXTRA_END_DATE, Long.MAX_VALUE);
+
+        String[] columns = extras.getStringArray(WeatherContract.EXTRA_PROJECTION);
+        if (columns == null) {
+            columns = ALL_BATCH_COLUMNS;
+        }
+
+        Cursor cursor = mOpenHelper.getReadableDatabase().query(
+                WeatherContract.WeatherEntry.TABLE_NAME,
+                columns,
+                WeatherContract.WeatherEntry.COLUMN_DATE + " BETWEEN ? AND ?",
+                new String[]{String.valueOf(startDate), String.valueOf(endDate)},
+                null,
+                null,
+                WeatherContract.WeatherEntry.COLUMN_DATE + " ASC");
+
+        try {
+            return ForecastBatch.fromCursor(cursor, columns);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Finds the coordinates a location query was resolved to, and marks the query as recently
+     * used so that it is evicted last.
+     *
+     * @param query The normalized location query
+     * @return EXTRA_LATITUDE and EXTRA_LONGITUDE, or null if the query is unknown
+     */
+    private Bundle lookupGeocode(String query) {
+        final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
+        String[] selectionArgs = new String[]{query};
+
+        Cursor cursor = db.query(
+                GeocodeEntry.TABLE_NAME,
+                new String[]{GeocodeEntry.COLUMN_LATITUDE, GeocodeEntry.COLUMN_LONGITUDE},
+                GeocodeEntry.COLUMN_QUERY + " = ?",
+                selectionArgs,
+                null,
+                null,
+                null);
+
+        Bundle result = null;
+        try {
+            if (cursor.moveToFirst()) {
+                result = new Bundle();
+                result.putDouble(WeatherContract.EXTRA_LATITUDE, cursor.getDouble(0));
+                result.putDouble(WeatherContract.EXTRA_LONGITUDE, cursor.getDouble(1));
+            }
+        } finally {
+            cursor.close();
+        }
+
+        if (result != null) {
+            ContentValues lastUsed = new ContentValues();
+            lastUsed.put(GeocodeEntry.COLUMN_LAST_USED, System.currentTimeMillis());
+            db.update(GeocodeEntry.TABLE_NAME, lastUsed,
+                    GeocodeEntry.COLUMN_QUERY + " = ?", selectionArgs);
+        }
+
+        return result;
+    }
+
+    /**
+     * Stores the coordinates a location query was resolved to, then evicts the least recently
+     * used queries beyond MAX_GEOCODE_ENTRIES, in the same transaction.
+     *
+     * @param query     The normalized location query
+     * @param latitude  Latitude of the city the query resolved to
+     * @param longitude Longitude of the city the query resolved to
+     */
+    private void storeGeocode(String query, double latitude, double longitude) {
+        if (query == null || query.isEmpty()) {
+            throw new IllegalArgumentException("A location query is required to store");
+        }
+
+        final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
+
+        ContentValues values = new ContentValues();
+        values.put(GeocodeEntry.COLUMN_QUERY, query);
+        values.put(GeocodeEntry.COLUMN_LATITUDE, latitude);
+        values.put(GeocodeEntry.COLUMN_LONGITUDE, longitude);
+        values.put(GeocodeEntry.COLUMN_LAST_USED, System.currentTimeMillis());
+
+        db.beginTransaction();
+        try {
+            db.insert(GeocodeEntry.TABLE_NAME, null, values);
+            db.delete(GeocodeEntry.TABLE_NAME,
+                    GeocodeEntry._ID + " NOT IN (SELECT " + GeocodeEntry._ID
+                            + " FROM " + GeocodeEntry.TABLE_NAME
+                            + " ORDER BY " + GeocodeEntry.COLUMN_LAST_USED + " DESC, "
+                            + GeocodeEntry._ID + " DESC"
+                            + " LIMIT " + MAX_GEOCODE_ENTRIES + ")",
+                    null);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
     /**
      * Handles query requests from clients. We will use this method in Sunshine to query for all
      * of our weather data as well as to query for the weather on a particular day.
@@ -0,0 +1,196 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.sync;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * The last forecast JSON downloaded for each location, kept on disk as it came from the server.
+ * <p>
+ * The database only holds the weather of the current location, and it is empty after a fresh
+ * install or a schema upgrade. With this cache, the weather that was last downloaded for a
+ * location can be shown right away in those cases, or when the server can't be reached, while a
+ * sync fetches fresh weather in the background.
+ * <p>
+ * Each location is one small gzipped file in the cache directory, holding the time the JSON was
+ * downloaded. The system may delete those files when it runs low on storage, which only costs
+ * us the fallback. All methods do disk I/O and must not be called on the main thread.
+ */
+final class ForecastResponseCache {
+
+    private static final String TAG = ForecastResponseCache.class.getSimpleName();
+
+    private static final String DIRECTORY_NAME = "forecast_responses";
+
+    /* Locations kept at most. The ones downloaded longest ago are deleted first. */
+    private static final int MAX_ENTRIES = 8;
+
+    /* "FRSP", followed by the version of the file format */
+    private static final int MAGIC = 0x46525350;
+    private static final int FORMAT_VERSION = 1;
+
+    /**
+     * A cached response.
+     */
+    static final class Entry {
+        final String json;
+        final long fetchedAtMillis;
+
+        Entry(String json, long fetchedAtMillis) {
+            this.json = json;
+            this.fetchedAtMillis = fetchedAtMillis;
+        }
+    }
+
+    private ForecastResponseCache() {
+    }
+
+    /**
+     * Stores the JSON that was just downloaded for a location, replacing the previous one.
+     *
+     * @param context         Used to find the cache directory
+     * @param locationKey     The location, as returned by NetworkUtils.getLocationKey
+     * @param json            The JSON exactly as it came from the server
+     * @param fetchedAtMillis When it was downloaded, in UNIX time
+     */
+    static synchronized void put(Context context, String locationKey, String json,
+            long fetchedAtMillis) {
+        File directory = directory(context);
+        File file = fileFor(directory, locationKey);
+        File temp = new File(directory, file.getName() + ".tmp");
+
+        DataOutputStream out = null;
+        try {
+            out = new DataOutputStream(new BufferedOutputStream(
+                    new GZIPOutputStream(new FileOutputStream(temp))));
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeUTF(locationKey);
+            out.writeLong(fetchedAtMillis);
+
+            /* writeUTF is limited to 64 KB, the JSON is written as raw UTF-8 instead */
+            byte[] bytes = json.getBytes("UTF-8");
+            out.writeInt(bytes.length);
+            out.write(bytes);
+
+            out.close();
+            out = null;
+
+            if (!temp.renameTo(file)) {
+                Log.w(TAG, "Couldn't replace the cached response");
+            }
+            trim(directory);
+
+        } catch (IOException e) {
+            Log.w(TAG, "Couldn't cache the response", e);
+        } finally {
+            closeQuietly(out);
+            temp.delete();
+        }
+    }
+
+    /**
+     * @param context     Used to find the cache directory
+     * @param locationKey The location, as returned by NetworkUtils.getLocationKey
+     * @return The last JSON downloaded for that location, or null if there is none
+     */
+    static synchronized Entry get(Context context, String locationKey) {
+        File file = fileFor(directory(context), locationKey);
+        if (!file.exists()) {
+            return null;
+        }
+
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(
+                    new GZIPInputStream(new FileInputStream(file))));
+
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) {
+                return null;
+            }
+
+            /* Two keys can share a file name, only the key stored in the file is trusted */
+            if (!locationKey.equals(in.readUTF())) {
+                return null;
+            }
+
+            long fetchedAtMillis = in.readLong();
+            byte[] bytes = new byte[in.readInt()];
+            in.readFully(bytes);
+
+            return new Entry(new String(bytes, "UTF-8"), fetchedAtMillis);
+
+        } catch (IOException | NegativeArraySizeException e) {
+            Log.w(TAG, "Discarding unreadable cached response", e);
+            file.delete();
+            return null;
+        } finally {
+            closeQuietly(in);
+        }
+    }
+
+    private static File directory(Context context) {
+        File directory = new File(context.getCacheDir(), DIRECTORY_NAME);
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            Log.w(TAG, "Couldn't create " + directory);
+        }
+        return directory;
+    }
+
+    private static File fileFor(File directory, String locationKey) {
+        return new File(directory, Integer.toHexString(locationKey.hashCode()));
+    }
+
+    /* Deletes the locations that were written longest ago, beyond MAX_ENTRIES */
+    private static void trim(File directory) {
+        File[] files = directory.listFiles();
+        if (files == null || files.length <= MAX_ENTRIES) return;
+
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File a, File b) {
+                long difference = b.lastModified() - a.lastModified();
+                return difference == 0 ? 0 : difference < 0 ? -1 : 1;
+            }
+        });
+        for (int i = MAX_ENTRIES; i < files.length; i++) {
+            files[i].delete();
+        }
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable == null) return;
+        try {
+            closeable.close();
+        } catch (IOException ignored) {
+        }
+    }
+}
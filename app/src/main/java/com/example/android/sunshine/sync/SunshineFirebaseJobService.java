@@ -15,27 +15,49 @@
  */
 package com.example.android.sunshine.sync;
 
-import android.content.Context;
-import android.os.AsyncTask;
-import android.os.Bundle;
-import android.support.annotation.NonNull;
-import android.support.annotation.Nullable;
-import android.util.Log;
+import android.os.Process;
+import android.os.SystemClock;
+import android.support.v4.os.CancellationSignal;
 
 import com.firebase.jobdispatcher.Job;
 import com.firebase.jobdispatcher.JobParameters;
 import com.firebase.jobdispatcher.JobService;
 import com.firebase.jobdispatcher.RetryStrategy;
-import com.google.android.gms.common.ConnectionResult;
-import com.google.android.gms.common.api.GoogleApiClient;
-import com.google.android.gms.wearable.Wearable;
 
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 
 public class SunshineFirebaseJobService extends JobService {
 
     private final String TAG = SunshineFirebaseJobService.class.getSimpleName();
 
-    private AsyncTask<Void, Void, Void> mFetchWeatherTask;
+    /*
+     * Syncs run on their own background thread rather than on AsyncTask's serial executor, which
+     * they would block for every other AsyncTask in the app.
+     */
+    private static final ExecutorService sSyncExecutor =
+            Executors.newSingleThreadExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(final Runnable runnable) {
+                    return new Thread(new Runnable() {
+                        @Override
+                        public void run() {
+                            Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                            runnable.run();
+                        }
+                    }, "SunshineSync");
+                }
+            });
+
+    /*
+     * The cancellation signal of every job that is running, by tag. A job is removed from here
+     * exactly once, either when it finishes or when it is stopped, and only whoever removes it
+     * reports the end of the job.
+     */
+    private final Map<String, CancellationSignal> mRunningJobs = new HashMap<>();
 
     /**
      * The entry point to your Job. Implementations should offload work to another thread of
@@ -49,23 +71,32 @@ public class SunshineFirebaseJobService extends JobService {
      */
     @Override
     public boolean onStartJob(final JobParameters jobParameters) {
+        final CancellationSignal cancellation = new CancellationSignal();
+        synchronized (mRunningJobs) {
+            mRunningJobs.put(jobParameters.getTag(), cancellation);
+        }
 
-        mFetchWeatherTask = new AsyncTask<Void, Void, Void>(){
-            @Override
-            protected Void doInBackground(Void... voids) {
-                Context context = getApplicationContext();
-                SunshineSyncTask.syncWeather(context);
-                jobFinished(jobParameters, false);
-                return null;
-            }
+        final long startMillis = SystemClock.elapsedRealtime();
 
+        sSyncExecutor.execute(new Runnable() {
             @Override
-            protected void onPostExecute(Void aVoid) {
-                jobFinished(jobParameters, false);
-            }
-        };
+            public void run() {
+                int result = SunshineSyncTask.syncWeather(
+                        getApplicationContext(), cancellation, true);
+                SyncMetrics.recordSync("job", result,
+                        SystemClock.elapsedRealtime() - startMillis);
+
+                synchronized (mRunningJobs) {
+                    /* onStopJob already reported the end of this job */
+                    if (mRunningJobs.get(jobParameters.getTag()) != cancellation) return;
+                    mRunningJobs.remove(jobParameters.getTag());
+                }
 
-        mFetchWeatherTask.execute();
+                /* Only a download that failed is worth retrying with the job's back off */
+                jobFinished(jobParameters, result == SunshineSyncTask.RESULT_FAILED
+                        || result == SunshineSyncTask.RESULT_TIMED_OUT);
+            }
+        });
         return true;
     }
 
@@ -79,10 +110,20 @@ public class SunshineFirebaseJobService extends JobService {
      */
     @Override
     public boolean onStopJob(JobParameters jobParameters) {
-        if (mFetchWeatherTask != null) {
-            mFetchWeatherTask.cancel(true);
+        CancellationSignal cancellation;
+        synchronized (mRunningJobs) {
+            cancellation = mRunningJobs.remove(jobParameters.getTag());
         }
+
+        /* The job already finished, there is nothing left to retry */
+        if (cancellation == null) return false;
+
+        /*
+         * Aborts the download and keeps the sync from writing anything. This runs on the main
+         * thread and canceling closes the connection, so it happens in the background. Not on
+         * sSyncExecutor, whose only thread is busy running the sync.
+         */
+        SunshineSyncTask.cancelInBackground(cancellation);
         return true;
     }
-
-}
\ No newline at end of file
+}
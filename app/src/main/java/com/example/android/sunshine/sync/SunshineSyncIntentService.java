@@ -17,6 +17,7 @@ package com.example.android.sunshine.sync;
 
 import android.app.IntentService;
 import android.content.Intent;
+import android.os.SystemClock;
 
 /**
  * An {@link IntentService} subclass for handling asynchronous task requests in
@@ -30,6 +31,8 @@ public class SunshineSyncIntentService extends IntentService {
 
     @Override
     protected void onHandleIntent(Intent intent) {
-        SunshineSyncTask.syncWeather(this);
+        long startMillis = SystemClock.elapsedRealtime();
+        int result = SunshineSyncTask.syncWeather(this);
+        SyncMetrics.recordSync("immediate", result, SystemClock.elapsedRealtime() - startMillis);
     }
 }
\ No newline at end of file
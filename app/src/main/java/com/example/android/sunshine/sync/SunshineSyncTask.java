@@ -16,22 +16,28 @@
 package com.example.android.sunshine.sync;
 
 import android.content.ContentResolver;
-import android.content.ContentValues;
 import android.content.Context;
-import android.database.Cursor;
-import android.net.Uri;
+import android.os.SystemClock;
 import android.support.annotation.NonNull;
+import android.support.annotation.VisibleForTesting;
+import android.support.v4.os.CancellationSignal;
+import android.support.v4.os.OperationCanceledException;
 import android.text.format.DateUtils;
 import android.util.Log;
 
 import com.example.android.sunshine.MainActivity;
 import com.example.android.sunshine.SunshineApplication;
+import com.example.android.sunshine.data.Forecast;
+import com.example.android.sunshine.data.ForecastBatch;
+import com.example.android.sunshine.data.GeocodeCache;
 import com.example.android.sunshine.data.SunshinePreferences;
 import com.example.android.sunshine.data.WeatherContract;
 import com.example.android.sunshine.utilities.NetworkUtils;
 import com.example.android.sunshine.utilities.NotificationUtils;
 import com.example.android.sunshine.utilities.OpenWeatherJsonUtils;
 import com.example.android.sunshine.utilities.SunshineDateUtils;
+import com.example.android.sunshine.utilities.SunshineWeatherUtils;
+import com.example.android.sunshine.utilities.WeatherHttpClient;
 import com.google.android.gms.common.api.GoogleApiClient;
 import com.google.android.gms.common.api.ResultCallback;
 import com.google.android.gms.wearable.DataApi;
@@ -39,17 +45,67 @@ import com.google.android.gms.wearable.PutDataMapRequest;
 import com.google.android.gms.wearable.PutDataRequest;
 import com.google.android.gms.wearable.Wearable;
 
-import java.net.URL;
+import org.json.JSONException;
+
+import java.net.SocketTimeoutException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
-import static com.example.android.sunshine.utilities.NotificationUtils.INDEX_MAX_TEMP;
-import static com.example.android.sunshine.utilities.NotificationUtils.INDEX_MIN_TEMP;
-import static com.example.android.sunshine.utilities.NotificationUtils.INDEX_WEATHER_ID;
 import static com.example.android.sunshine.utilities.NotificationUtils.WEATHER_NOTIFICATION_PROJECTION;
 
 public class SunshineSyncTask {
 
     private static final String TAG = SunshineSyncTask.class.getSimpleName();
 
+    /** The new weather was downloaded and stored. */
+    public static final int RESULT_SUCCESS = 0;
+    /** The server answered, but without any weather, for example for an unknown location. */
+    public static final int RESULT_NO_DATA = 1;
+    /** The weather couldn't be downloaded or parsed. Trying again later may help. */
+    public static final int RESULT_FAILED = 2;
+    /** The sync was canceled before it stored anything. */
+    public static final int RESULT_CANCELED = 3;
+    /** The server didn't answer in time, or the whole sync took longer than its deadline. */
+    public static final int RESULT_TIMED_OUT = 4;
+    /** A periodic sync on a low battery left the weather alone, as it was still fresh. */
+    public static final int RESULT_SKIPPED = 5;
+
+    /*
+     * The longest a sync may take, from the moment it starts until it has stored the weather.
+     * Leaves room for the connect and read timeouts of NetworkUtils, but not for a server that
+     * keeps trickling its response.
+     */
+    private static final long SYNC_DEADLINE_MILLIS = TimeUnit.SECONDS.toMillis(45);
+
+    /* The deadline syncs are given, only ever shortened by tests */
+    private static volatile long sDeadlineMillis = SYNC_DEADLINE_MILLIS;
+
+    /* Cancels the sync that is currently running. Only set while the sync lock is held. */
+    private static volatile CancellationSignal sRunningSync;
+
+    /* Runs cancellations. Cancelling may close a socket, so it can't be done on the main thread. */
+    private static final Executor sCanceller =
+            Executors.newSingleThreadExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "SyncCanceller");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+
+    /* Where today's weather is published for the watch face, and its keys */
+    private static final String WEATHER_PATH = "/weather";
+    private static final String WEATHER_KEY = "com.example.android.sunshine.weather_key";
+    private static final String WEATHER_MIN_KEY = "com.example.android.sunshine.weather_min_key";
+    private static final String WEATHER_MAX_KEY = "com.example.android.sunshine.weather_max_key";
+    private static final String WEATHER_MIN_TEXT_KEY =
+            "com.example.android.sunshine.weather_min_text_key";
+    private static final String WEATHER_MAX_TEXT_KEY =
+            "com.example.android.sunshine.weather_max_text_key";
+
     /**
      * Performs the network request for updated weather, parses the JSON from that request, and
      * inserts the new weather information into our ContentProvider. Will notify the user that new
@@ -57,50 +113,140 @@ public class SunshineSyncTask {
      * AND they haven't disabled notifications in the preferences screen.
      *
      * @param context Used to access utility methods and the ContentResolver
+     * @return One of the RESULT_ constants
+     */
+    public static int syncWeather(Context context) {
+        return syncWeather(context, new CancellationSignal());
+    }
+
+    /**
+     * Same as {@link #syncWeather(Context)}, but stops as soon as the sync is canceled, either
+     * through the given signal or through {@link #cancelRunningSync()}. A canceled sync never
+     * writes anything to the ContentProvider.
+     *
+     * @param context      Used to access utility methods and the ContentResolver
+     * @param cancellation Signal that cancels this sync, even in the middle of the download
+     * @return One of the RESULT_ constants
+     */
+    public static int syncWeather(Context context, CancellationSignal cancellation) {
+        return syncWeather(context, cancellation, false);
+    }
+
+    /**
+     * Same as {@link #syncWeather(Context, CancellationSignal)}. How many days are fetched
+     * depends on the network and the battery, see SyncTier. A periodic sync, which nobody is
+     * waiting for, is skipped on a low battery while the stored weather is still fresh.
+     *
+     * @param context      Used to access utility methods and the ContentResolver
+     * @param cancellation Signal that cancels this sync, even in the middle of the download
+     * @param periodic     Whether this is a scheduled sync rather than one the user asked for
+     * @return One of the RESULT_ constants
      */
-    synchronized public static void syncWeather(Context context) {
+    synchronized public static int syncWeather(Context context, CancellationSignal cancellation,
+            boolean periodic) {
+
+        int tier = SyncTier.choose(context);
+        if (periodic && SyncTier.shouldSkipPeriodicSync(tier,
+                SunshinePreferences.getLastSyncTimeInMillis(context))) {
+            SyncMetrics.recordTier(tier, 0);
+            return RESULT_SKIPPED;
+        }
+
+        sRunningSync = cancellation;
+        long wireBytesBefore = WeatherHttpClient.getWireByteCount();
+
+        /* The clock starts once we hold the lock, waiting for the previous sync doesn't count */
+        SyncDeadline deadline = new SyncDeadline(sDeadlineMillis, cancellation);
 
+        /* Null until it is known, the location key looks up the geocode cache and may fail */
+        String locationKey = null;
         try {
-            /*
-             * The getUrl method will return the URL that we need to get the forecast JSON for the
-             * weather. It will decide whether to create a URL based off of the latitude and
-             * longitude or off of a simple location as a String.
-             */
-            URL weatherRequestUrl = NetworkUtils.getUrl(context);
+            locationKey = NetworkUtils.getLocationKey(context);
 
-            /* Use the URL to retrieve the JSON */
-            String jsonWeatherResponse = NetworkUtils.getResponseFromHttpUrl(weatherRequestUrl);
+            /* A location known only by name, its coordinates are kept once the server finds it */
+            String locationQuery = SunshinePreferences.isLocationLatLonAvailable(context)
+                    ? null : SunshinePreferences.getPreferredWeatherLocation(context);
 
-            /* Parse the JSON into a list of weather values */
-            ContentValues[] weatherValues = OpenWeatherJsonUtils
-                    .getWeatherContentValuesFromJson(context, jsonWeatherResponse);
+            /* A sync canceled while it waited for the previous one doesn't even start */
+            cancellation.throwIfCanceled();
 
+            /*
+             * getForecastJson builds the URL that we need to get the forecast JSON for the
+             * weather. It will decide whether to create a URL based off of the latitude and
+             * longitude or off of a simple location as a String, and retrieves the JSON from
+             * whichever weather server answers first.
+             */
+            long fetchStart = SystemClock.elapsedRealtime();
+            String jsonWeatherResponse = NetworkUtils.getForecastJson(
+                    context,
+                    SyncTier.forecastDays(tier),
+                    cancellation,
+                    deadline.clamp(NetworkUtils.CONNECT_TIMEOUT_MILLIS),
+                    deadline.clamp(NetworkUtils.READ_TIMEOUT_MILLIS));
+
+            /* Parsing stores the city's coordinates, which must not happen for a stale location */
+            cancellation.throwIfCanceled();
+
+            /* Parse the JSON into a batch of weather values */
+            long parseStart = SystemClock.elapsedRealtime();
+            ForecastBatch weatherBatch = OpenWeatherJsonUtils
+                    .getForecastBatchFromJson(context, jsonWeatherResponse);
 
             /*
-             * In cases where our JSON contained an error code, getWeatherContentValuesFromJson
-             * would have returned null. We need to check for those cases here to prevent any
+             * In cases where our JSON contained an error code, getForecastBatchFromJson would
+             * have returned null. We need to check for those cases here to prevent any
              * NullPointerExceptions being thrown. We also have no reason to insert fresh data if
              * there isn't any to insert.
              */
-            if (weatherValues != null && weatherValues.length != 0) {
+            if (weatherBatch != null && weatherBatch.size() != 0) {
+                /* The last moment at which a sync for a location the user has left can stop */
+                cancellation.throwIfCanceled();
+
+                long storeStart = SystemClock.elapsedRealtime();
+
+                /* Saved first, so that the screens show the new age along with the new data */
+                long syncTime = System.currentTimeMillis();
+                SunshinePreferences.saveLastSyncTime(context, syncTime);
+
                 /* Get a handle on the ContentResolver to delete and insert data */
                 ContentResolver sunshineContentResolver = context.getContentResolver();
 
-                /* Delete old weather data because we don't need to keep multiple days' data */
+                /*
+                 * Delete the days we fetched again and the days that are over. A cheaper tier
+                 * fetches fewer days than a richer one may have stored, and those later days
+                 * are kept rather than lost because the phone went on mobile data. Weather
+                 * stored for another location is all deleted.
+                 */
+                String selection = null;
+                if (locationKey.equals(SunshinePreferences.getStoredWeatherLocation(context))) {
+                    selection = WeatherContract.WeatherEntry.COLUMN_DATE + " <= "
+                            + lastDate(weatherBatch);
+                }
                 sunshineContentResolver.delete(
                         WeatherContract.WeatherEntry.CONTENT_URI,
-                        null,
+                        selection,
                         null);
 
                 /* Insert our new weather data into Sunshine's ContentProvider */
-                sunshineContentResolver.bulkInsert(
-                        WeatherContract.WeatherEntry.CONTENT_URI,
-                        weatherValues);
+                weatherBatch.insert(sunshineContentResolver);
+                SunshinePreferences.saveStoredWeatherLocation(context, locationKey);
+
+                /* Keep the raw response, in case the database ever has to start over */
+                ForecastResponseCache.put(context, locationKey, jsonWeatherResponse, syncTime);
+
+                /* Parsing stored the city's coordinates, next time the name isn't needed */
+                if (locationQuery != null
+                        && SunshinePreferences.isLocationLatLonAvailable(context)) {
+                    double[] coordinates = SunshinePreferences.getLocationCoordinates(context);
+                    GeocodeCache.put(sunshineContentResolver, locationQuery,
+                            coordinates[0], coordinates[1]);
+                }
 
                 /*
                  * Finally, after we insert data into the ContentProvider, determine whether or not
                  * we should notify the user that the weather has been refreshed.
                  */
+                long notifyStart = SystemClock.elapsedRealtime();
                 boolean notificationsEnabled = SunshinePreferences.areNotificationsEnabled(context);
 
                 /*
@@ -127,72 +273,213 @@ public class SunshineSyncTask {
 
                 sendWeatherData(context);
 
-            /* If the code reaches this point, we have successfully performed our sync */
+                SyncMetrics.recordStages(
+                        parseStart - fetchStart,
+                        storeStart - parseStart,
+                        notifyStart - storeStart,
+                        SystemClock.elapsedRealtime() - notifyStart);
 
+                /* If the code reaches this point, we have successfully performed our sync */
+                return RESULT_SUCCESS;
             }
 
+            return RESULT_NO_DATA;
+
+        } catch (OperationCanceledException e) {
+            if (deadline.isExpired()) {
+                Log.w(TAG, "Sync ran out of time");
+                restoreIfEmpty(context, locationKey);
+                return RESULT_TIMED_OUT;
+            }
+            Log.d(TAG, "Sync canceled");
+            return RESULT_CANCELED;
+        } catch (SocketTimeoutException e) {
+            Log.w(TAG, "Weather server timed out", e);
+            restoreIfEmpty(context, locationKey);
+            return RESULT_TIMED_OUT;
         } catch (Exception e) {
             /* Server probably invalid */
             e.printStackTrace();
+            restoreIfEmpty(context, locationKey);
+            return RESULT_FAILED;
+        } finally {
+            deadline.finish();
+            sRunningSync = null;
+            SyncMetrics.recordTier(tier, WeatherHttpClient.getWireByteCount() - wireBytesBefore);
+        }
+    }
+
+    /**
+     * Fills an empty database with the weather last downloaded for the user's location, if it
+     * was cached. This shows something right away after a fresh install or a database upgrade,
+     * while a sync fetches up-to-date weather. The stored sync time is the time the cached
+     * weather was downloaded, so screens can tell how old it is.
+     *
+     * @param context Used to access utility methods and the ContentResolver
+     * @return true if cached weather was stored
+     */
+    synchronized public static boolean restoreFromCache(Context context) {
+        return restoreIfEmpty(context, NetworkUtils.getLocationKey(context));
+    }
+
+    private static boolean restoreIfEmpty(Context context, String locationKey) {
+        /* The sync failed before it knew its location */
+        if (locationKey == null) return false;
+
+        ContentResolver contentResolver = context.getContentResolver();
+        long today = SunshineDateUtils.getNormalizedUtcDateForToday();
+
+        ForecastBatch stored = ForecastBatch.query(contentResolver, today, Long.MAX_VALUE,
+                WeatherContract.WeatherEntry.COLUMN_DATE);
+        if (stored != null && stored.size() != 0) return false;
+
+        ForecastResponseCache.Entry cached = ForecastResponseCache.get(context, locationKey);
+        if (cached == null) return false;
+
+        try {
+            ForecastBatch weatherBatch =
+                    OpenWeatherJsonUtils.getForecastBatchFromJson(context, cached.json);
+            if (weatherBatch == null || weatherBatch.size() == 0) return false;
+
+            SunshinePreferences.saveLastSyncTime(context, cached.fetchedAtMillis);
+            contentResolver.delete(WeatherContract.WeatherEntry.CONTENT_URI, null, null);
+            weatherBatch.insert(contentResolver);
+            SunshinePreferences.saveStoredWeatherLocation(context, locationKey);
+
+            Log.i(TAG, "Restored weather downloaded "
+                    + (System.currentTimeMillis() - cached.fetchedAtMillis) + " ms ago");
+            return true;
+
+        } catch (JSONException e) {
+            Log.w(TAG, "Couldn't parse the cached response", e);
+            return false;
+        }
+    }
+
+    /* The latest date of a batch, its rows aren't guaranteed to be sorted */
+    private static long lastDate(ForecastBatch batch) {
+        long lastDate = Long.MIN_VALUE;
+        for (int i = 0; i < batch.size(); i++) {
+            lastDate = Math.max(lastDate, batch.dates[i]);
+        }
+        return lastDate;
+    }
+
+    /**
+     * Shortens the deadline of the syncs that start from now on, so that tests don't have to
+     * wait for the real one.
+     *
+     * @param deadlineMillis The longest a sync may take
+     */
+    @VisibleForTesting
+    static void setDeadlineMillis(long deadlineMillis) {
+        sDeadlineMillis = deadlineMillis;
+    }
+
+    /**
+     * Goes back to the real deadline after {@link #setDeadlineMillis(long)}.
+     */
+    @VisibleForTesting
+    static void resetDeadline() {
+        sDeadlineMillis = SYNC_DEADLINE_MILLIS;
+    }
+
+    /**
+     * Cancels the sync that is running, if any, wherever it currently is. A sync that is waiting
+     * for the running one to finish is not affected, and will sync the current preferences.
+     * Returns right away, the sync is canceled on a background thread.
+     */
+    public static void cancelRunningSync() {
+        CancellationSignal running = sRunningSync;
+        if (running != null) {
+            cancelInBackground(running);
         }
     }
 
+    /**
+     * Cancels a sync's signal on a background thread. Canceling runs the signal's listeners,
+     * which disconnect the download, and closing a socket must not happen on the main thread.
+     *
+     * @param cancellation The signal to cancel
+     */
+    static void cancelInBackground(final CancellationSignal cancellation) {
+        sCanceller.execute(new Runnable() {
+            @Override
+            public void run() {
+                cancellation.cancel();
+            }
+        });
+    }
+
     private static void sendWeatherData(Context context) {
 
-        final String WEATHER_PATH = "/weather";
-        final String WEATHER_KEY = "com.example.android.sunshine.weather_key";
-        final String WEATHER_MIN_KEY = "com.example.android.sunshine.weather_min_key";
-        final String WEATHER_MAX_KEY = "com.example.android.sunshine.weather_max_key";
+        long today = SunshineDateUtils.normalizeDate(System.currentTimeMillis());
 
-        Uri todaysWeatherUri = WeatherContract.WeatherEntry
-                .buildWeatherUriWithDate(SunshineDateUtils.normalizeDate(System.currentTimeMillis()));
+        /* The watch face only needs today's condition and temperatures */
+        ForecastBatch todaysWeather = ForecastBatch.query(
+                context.getContentResolver(),
+                today,
+                today,
+                WEATHER_NOTIFICATION_PROJECTION);
 
-        /*
-         * The MAIN_FORECAST_PROJECTION array passed in as the second parameter is defined in our WeatherContract
-         * class and is used to limit the columns returned in our cursor.
-         */
-        Cursor todayWeatherCursor = context.getContentResolver().query(
-                todaysWeatherUri,
-                WEATHER_NOTIFICATION_PROJECTION,
-                null,
-                null,
-                null);
+        if (todaysWeather != null && todaysWeather.size() != 0) {
+            sendWeatherData(context,
+                    todaysWeather.weatherIds[0],
+                    todaysWeather.maxTemps[0],
+                    todaysWeather.minTemps[0]);
+        }
+    }
 
+    /**
+     * Publishes today's weather to the watch face from a Forecast that is already in memory,
+     * without querying the database. This is used when only the way the weather is displayed
+     * changed, like the units.
+     *
+     * @param context  Used to format the temperatures and to reach the GoogleApiClient
+     * @param forecast The forecast to take today's weather from, may be null
+     */
+    public static void sendTodaysWeather(Context context, Forecast forecast) {
+        if (forecast == null) return;
+
+        int today = forecast.indexOfDate(SunshineDateUtils.getNormalizedUtcDateForToday());
+        if (today == -1) return;
+
+        sendWeatherData(context,
+                forecast.getWeatherId(today),
+                forecast.getMaxTemp(today),
+                forecast.getMinTemp(today));
+    }
+
+    private static void sendWeatherData(Context context, int weatherId, double high, double low) {
+        PutDataMapRequest putDataMapReq = PutDataMapRequest.create(WEATHER_PATH);
+        putDataMapReq.getDataMap().putInt(WEATHER_KEY, weatherId);
+        putDataMapReq.getDataMap().putDouble(WEATHER_MIN_KEY, low);
+        putDataMapReq.getDataMap().putDouble(WEATHER_MAX_KEY, high);
+
+        /* Formatted here, so the watch face follows the user's units */
+        putDataMapReq.getDataMap().putString(WEATHER_MIN_TEXT_KEY,
+                SunshineWeatherUtils.formatTemperature(context, low));
+        putDataMapReq.getDataMap().putString(WEATHER_MAX_TEXT_KEY,
+                SunshineWeatherUtils.formatTemperature(context, high));
         /*
-         * If todayWeatherCursor is empty, moveToFirst will return false. If our cursor is not
-         * empty, we want to show the notification.
+        This row below force data changed method on wearable listener.
+        Do not useful on final production environment.
          */
-        if (todayWeatherCursor.moveToFirst()) {
-            int weatherId = todayWeatherCursor.getInt(INDEX_WEATHER_ID);
-            double high = todayWeatherCursor.getDouble(INDEX_MAX_TEMP);
-            double low = todayWeatherCursor.getDouble(INDEX_MIN_TEMP);
-
-            PutDataMapRequest putDataMapReq = PutDataMapRequest.create(WEATHER_PATH);
-            putDataMapReq.getDataMap().putInt(WEATHER_KEY, weatherId);
-            putDataMapReq.getDataMap().putDouble(WEATHER_MIN_KEY, low);
-            putDataMapReq.getDataMap().putDouble(WEATHER_MAX_KEY, high);
-            /*
-            This row below force data changed method on wearable listener.
-            Do not useful on final production environment.
-             */
-            putDataMapReq.getDataMap().putLong("Time", System.currentTimeMillis());
-
-            PutDataRequest putDataReq = putDataMapReq.asPutDataRequest();
-
-            GoogleApiClient googleApiClient = ((SunshineApplication)context.getApplicationContext()).mGoogleApiClient;
-            googleApiClient.isConnected();
-            Wearable.DataApi.putDataItem(googleApiClient, putDataReq).
-                    setResultCallback(new ResultCallback<DataApi.DataItemResult>() {
-                        @Override
-                        public void onResult(@NonNull DataApi.DataItemResult dataItemResult) {
-                            if (!dataItemResult.getStatus().isSuccess()) {
-                                Log.e(TAG, "ERROR: failed to putDataItem, status code: "
-                                        + dataItemResult.getStatus().getStatusCode());
-                            }
+        putDataMapReq.getDataMap().putLong("Time", System.currentTimeMillis());
+
+        PutDataRequest putDataReq = putDataMapReq.asPutDataRequest();
+
+        GoogleApiClient googleApiClient = ((SunshineApplication)context.getApplicationContext()).mGoogleApiClient;
+        googleApiClient.isConnected();
+        Wearable.DataApi.putDataItem(googleApiClient, putDataReq).
+                setResultCallback(new ResultCallback<DataApi.DataItemResult>() {
+                    @Override
+                    public void onResult(@NonNull DataApi.DataItemResult dataItemResult) {
+                        if (!dataItemResult.getStatus().isSuccess()) {
+                            Log.e(TAG, "ERROR: failed to putDataItem, status code: "
+                                    + dataItemResult.getStatus().getStatusCode());
                         }
-                    });
-        }
+                    }
+                });
     }
-
-
 }
\ No newline at end of file
@@ -19,6 +19,8 @@ import android.content.Context;
 import android.content.Intent;
 import android.database.Cursor;
 import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
 import android.support.annotation.NonNull;
 
 import com.example.android.sunshine.data.WeatherContract;
@@ -46,6 +48,17 @@ public class SunshineSyncUtils {
 
     private static final String SUNSHINE_SYNC_TAG = "sunshine-sync";
 
+    /*
+     * How long the location has to stay the same before we sync it. Typing a new location or
+     * picking a few in a row shouldn't download the weather of every one of them.
+     */
+    private static final long LOCATION_SYNC_DELAY_MILLIS = 1500;
+
+    private static final Handler sMainHandler = new Handler(Looper.getMainLooper());
+
+    /* The location sync waiting for LOCATION_SYNC_DELAY_MILLIS to pass, if any */
+    private static Runnable sPendingLocationSync;
+
     /**
      * Schedules a repeating sync of Sunshine's weather data using FirebaseJobDispatcher.
      * @param context Context used to create the GooglePlayDriver that powers the
@@ -67,6 +80,7 @@ public class SunshineSyncUtils {
                  * network, but you can also choose to run only on un-metered networks or when the
                  * device is charging. It might be a good idea to include a preference for this,
                  * as some users may not want to download any data on their mobile plan. ($$$)
+                 * Each sync already fetches less on a metered network, see SyncTier.
                  */
                 .setConstraints(Constraint.ON_ANY_NETWORK)
                 /*
@@ -167,6 +181,11 @@ public class SunshineSyncUtils {
                  * be able to display data to the user.
                  */
                 if (null == cursor || cursor.getCount() == 0) {
+                    /*
+                     * Show the weather we last downloaded for this location, however old,
+                     * while the sync fetches fresh weather.
+                     */
+                    SunshineSyncTask.restoreFromCache(context);
                     startImmediateSync(context);
                 }
 
@@ -179,6 +198,32 @@ public class SunshineSyncUtils {
         checkForEmpty.start();
     }
 
+    /**
+     * Syncs the weather for a location the user just chose. Any sync that is already downloading
+     * the weather of a previous location is canceled right away, and the new sync only starts once
+     * the location hasn't changed for a moment, so that a quick series of changes results in a
+     * single sync of the last location. Must be called on the main thread.
+     *
+     * @param context The Context used to start the IntentService for the sync.
+     */
+    public static void startLocationSync(@NonNull final Context context) {
+        SunshineSyncTask.cancelRunningSync();
+
+        if (sPendingLocationSync != null) {
+            sMainHandler.removeCallbacks(sPendingLocationSync);
+        }
+
+        final Context appContext = context.getApplicationContext();
+        sPendingLocationSync = new Runnable() {
+            @Override
+            public void run() {
+                sPendingLocationSync = null;
+                startImmediateSync(appContext);
+            }
+        };
+        sMainHandler.postDelayed(sPendingLocationSync, LOCATION_SYNC_DELAY_MILLIS);
+    }
+
     /**
      * Helper method to perform a sync immediately using an IntentService for asynchronous
      * execution.
@@ -0,0 +1,95 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.sync;
+
+import android.os.SystemClock;
+import android.support.v4.os.CancellationSignal;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The time a sync has left. Connect and read timeouts only bound each network operation, while a
+ * slow server can keep a sync busy far longer by trickling its response. A SyncDeadline bounds
+ * the whole sync: when it expires, it cancels the sync's CancellationSignal, which aborts the
+ * download and stops the sync before it parses or stores anything.
+ * <p>
+ * Syncs hold a lock while they run, so bounding each sync also bounds how long the next one can
+ * wait for it.
+ */
+final class SyncDeadline {
+
+    /* Fires the deadlines. Cancelling may close a socket, so it can't be done on the main thread. */
+    private static final ScheduledExecutorService sTimer =
+            Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "SyncDeadline");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+
+    private final long mExpiresAtMillis;
+    private final ScheduledFuture<?> mExpiry;
+
+    private volatile boolean mExpired;
+
+    /**
+     * Starts the clock.
+     *
+     * @param totalMillis  The time the sync is allowed to take from now on
+     * @param cancellation The sync's signal, canceled when the deadline expires
+     */
+    SyncDeadline(long totalMillis, final CancellationSignal cancellation) {
+        mExpiresAtMillis = SystemClock.elapsedRealtime() + totalMillis;
+        mExpiry = sTimer.schedule(new Runnable() {
+            @Override
+            public void run() {
+                mExpired = true;
+                cancellation.cancel();
+            }
+        }, totalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @return true if the sync ran out of time, as opposed to being canceled for another reason
+     */
+    boolean isExpired() {
+        return mExpired;
+    }
+
+    /**
+     * Shortens a timeout so that it doesn't outlast the deadline.
+     *
+     * @param timeoutMillis The timeout that would be used without a deadline
+     * @return The timeout to use, at least 1 ms since 0 means no timeout for HttpURLConnection
+     */
+    int clamp(int timeoutMillis) {
+        long remaining = mExpiresAtMillis - SystemClock.elapsedRealtime();
+        return (int) Math.max(1, Math.min(timeoutMillis, remaining));
+    }
+
+    /**
+     * Stops the clock once the sync is over.
+     */
+    void finish() {
+        mExpiry.cancel(false);
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.sync;
+
+import android.support.annotation.VisibleForTesting;
+import android.util.Log;
+
+/**
+ * Keeps track of how long syncs take and how they end, for as long as the process lives, and
+ * logs every sync along with the totals so far. All methods are thread safe.
+ */
+public final class SyncMetrics {
+
+    private static final String TAG = SyncMetrics.class.getSimpleName();
+
+    private static final String[] RESULT_NAMES =
+            {"success", "no data", "failed", "canceled", "timed out", "skipped"};
+
+    private static final Object sLock = new Object();
+
+    /* Indexed by SunshineSyncTask's RESULT_ constants */
+    private static final int[] sRuns = new int[RESULT_NAMES.length];
+    private static final long[] sTotalMillis = new long[RESULT_NAMES.length];
+    private static final long[] sMaxMillis = new long[RESULT_NAMES.length];
+
+    /** Stages of a successful sync, see {@link #recordStages(long, long, long, long)} */
+    public static final int STAGE_FETCH = 0;
+    public static final int STAGE_PARSE = 1;
+    public static final int STAGE_STORE = 2;
+    public static final int STAGE_NOTIFY = 3;
+
+    private static final String[] STAGE_NAMES = {"fetch", "parse", "store", "notify"};
+
+    /* Indexed by the STAGE_ constants */
+    private static final long[] sStageTotalMillis = new long[STAGE_NAMES.length];
+    private static int sStageRuns;
+
+    /* Indexed by SyncTier's TIER_ constants */
+    private static final int[] sTierRuns = new int[SyncTier.NAMES.length];
+    private static final long[] sTierBytes = new long[SyncTier.NAMES.length];
+
+    private SyncMetrics() {
+    }
+
+    /**
+     * Records a sync that just ended.
+     *
+     * @param source         What ran the sync, like "job" or "immediate"
+     * @param result         One of SunshineSyncTask's RESULT_ constants
+     * @param durationMillis How long the sync ran, including waiting for a previous sync
+     */
+    public static void recordSync(String source, int result, long durationMillis) {
+        synchronized (sLock) {
+            sRuns[result]++;
+            sTotalMillis[result] += durationMillis;
+            sMaxMillis[result] = Math.max(sMaxMillis[result], durationMillis);
+
+            Log.i(TAG, source + " sync " + RESULT_NAMES[result] + " in " + durationMillis
+                    + " ms (" + sRuns[result] + " so far, average "
+                    + sTotalMillis[result] / sRuns[result] + " ms, max "
+                    + sMaxMillis[result] + " ms)");
+        }
+    }
+
+    /**
+     * Records the tier a sync ran with and how much it downloaded, so that the data saved on
+     * metered networks can be compared with what deep syncs cost.
+     *
+     * @param tier      One of SyncTier's TIER_ constants
+     * @param wireBytes Bytes the sync received from the network, before decompression
+     */
+    static void recordTier(int tier, long wireBytes) {
+        synchronized (sLock) {
+            sTierRuns[tier]++;
+            sTierBytes[tier] += wireBytes;
+
+            Log.i(TAG, SyncTier.NAMES[tier] + " sync received " + wireBytes + " bytes ("
+                    + sTierRuns[tier] + " so far, " + sTierBytes[tier] + " bytes in total)");
+        }
+    }
+
+    /**
+     * Records how long each stage of a successful sync took, so that changes to one stage can
+     * be measured on their own, for instance by replaying recorded traffic.
+     *
+     * @param fetchMillis  Downloading the forecast
+     * @param parseMillis  Parsing the JSON
+     * @param storeMillis  Storing the weather in the ContentProvider and the caches
+     * @param notifyMillis Notifying the user and the watch face
+     */
+    static void recordStages(long fetchMillis, long parseMillis, long storeMillis,
+            long notifyMillis) {
+        synchronized (sLock) {
+            sStageRuns++;
+            long[] stageMillis = {fetchMillis, parseMillis, storeMillis, notifyMillis};
+
+            StringBuilder message = new StringBuilder("stages:");
+            for (int stage = 0; stage < STAGE_NAMES.length; stage++) {
+                sStageTotalMillis[stage] += stageMillis[stage];
+                message.append(' ').append(STAGE_NAMES[stage]).append(' ')
+                        .append(stageMillis[stage]).append(" ms (average ")
+                        .append(sStageTotalMillis[stage] / sStageRuns).append(" ms)");
+            }
+            Log.i(TAG, message.toString());
+        }
+    }
+
+    /**
+     * @param stage One of the STAGE_ constants
+     * @return The time spent in that stage by every successful sync of this process
+     */
+    @VisibleForTesting
+    public static long getStageTotalMillis(int stage) {
+        synchronized (sLock) {
+            return sStageTotalMillis[stage];
+        }
+    }
+
+    /**
+     * @return The number of successful syncs whose stages were recorded
+     */
+    @VisibleForTesting
+    public static int getStageRunCount() {
+        synchronized (sLock) {
+            return sStageRuns;
+        }
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.sync;
+
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.net.ConnectivityManager;
+import android.os.BatteryManager;
+import android.support.v4.net.ConnectivityManagerCompat;
+import android.text.format.DateUtils;
+
+/**
+ * How much a sync may fetch, chosen at the start of each sync from the network and the battery.
+ * <p>
+ * On Wi-Fi while charging, data and power are free, so we fetch as far ahead as the server goes.
+ * On a metered network every byte costs the user, so we only fetch the next week, and the later
+ * days a richer sync stored are kept. On a low battery a periodic sync is skipped altogether
+ * unless the weather we have is getting old.
+ */
+final class SyncTier {
+
+    /** Unmetered network and charging: the longest forecast horizon. */
+    static final int TIER_DEEP = 0;
+    /** Unmetered network on battery: the usual two weeks. */
+    static final int TIER_STANDARD = 1;
+    /** Metered network, or no network at all: only the next week. */
+    static final int TIER_MINIMAL = 2;
+    /** Low battery and not charging: as minimal, and periodic syncs only when stale. */
+    static final int TIER_LOW_BATTERY = 3;
+
+    static final String[] NAMES = {"deep", "standard", "minimal", "low battery"};
+
+    /* Days of forecast fetched by each tier */
+    private static final int[] FORECAST_DAYS = {16, 14, 7, 7};
+
+    /* Below this charge, in percent, an unplugged device is on a low battery */
+    private static final int LOW_BATTERY_PERCENT = 15;
+
+    /* How old the weather must be before a periodic sync runs on a low battery */
+    private static final long STALE_MILLIS = 6 * DateUtils.HOUR_IN_MILLIS;
+
+    private SyncTier() {
+    }
+
+    /**
+     * @param context Used to read the state of the network and of the battery
+     * @return One of the TIER_ constants
+     */
+    static int choose(Context context) {
+        /* A null receiver returns the sticky broadcast right away without registering anything */
+        Intent battery = context.getApplicationContext().registerReceiver(
+                null, new IntentFilter(Intent.ACTION_BATTERY_CHANGED));
+
+        boolean charging = false;
+        boolean lowBattery = false;
+        if (battery != null) {
+            charging = battery.getIntExtra(BatteryManager.EXTRA_PLUGGED, 0) != 0;
+            int level = battery.getIntExtra(BatteryManager.EXTRA_LEVEL, -1);
+            int scale = battery.getIntExtra(BatteryManager.EXTRA_SCALE, -1);
+            lowBattery = !charging && level >= 0 && scale > 0
+                    && level * 100 < LOW_BATTERY_PERCENT * scale;
+        }
+
+        if (lowBattery) return TIER_LOW_BATTERY;
+
+        ConnectivityManager connectivityManager =
+                (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+        boolean unmetered = connectivityManager.getActiveNetworkInfo() != null
+                && !ConnectivityManagerCompat.isActiveNetworkMetered(connectivityManager);
+
+        if (!unmetered) return TIER_MINIMAL;
+        return charging ? TIER_DEEP : TIER_STANDARD;
+    }
+
+    /**
+     * @param tier One of the TIER_ constants
+     * @return How many days of forecast a sync of that tier fetches
+     */
+    static int forecastDays(int tier) {
+        return FORECAST_DAYS[tier];
+    }
+
+    /**
+     * @param tier           One of the TIER_ constants
+     * @param lastSyncMillis When the stored weather was downloaded, in UNIX time, 0 if never
+     * @return true if a periodic sync of that tier should leave the stored weather as it is
+     */
+    static boolean shouldSkipPeriodicSync(int tier, long lastSyncMillis) {
+        return tier == TIER_LOW_BATTERY
+                && System.currentTimeMillis() - lastSyncMillis < STALE_MILLIS;
+    }
+}
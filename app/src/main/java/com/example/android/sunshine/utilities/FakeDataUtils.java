@@ -1,39 +1,14 @@
 package com.example.android.sunshine.utilities;
 
-import android.content.ContentValues;
 import android.content.Context;
 
-import com.example.android.sunshine.data.WeatherContract;
-
-import java.util.ArrayList;
-import java.util.List;
-import java.util.concurrent.TimeUnit;
-
-import static com.example.android.sunshine.data.WeatherContract.WeatherEntry;
-
+/**
+ * Fills the database with made up weather, for screenshots, demos and benchmarks. The weather
+ * comes from {@link SyntheticWeatherGenerator}, which also generates server responses and much
+ * larger datasets.
+ */
 public class FakeDataUtils {
 
-    private static int [] weatherIDs = {200,300,500,711,900,962};
-
-    /**
-     * Creates a single ContentValues object with random weather data for the provided date
-     * @param date a normalized date
-     * @return ContentValues object filled with random weather data
-     */
-    private static ContentValues createTestWeatherContentValues(long date) {
-        ContentValues testWeatherValues = new ContentValues();
-        testWeatherValues.put(WeatherEntry.COLUMN_DATE, date);
-        testWeatherValues.put(WeatherEntry.COLUMN_DEGREES, Math.random()*2);
-        testWeatherValues.put(WeatherEntry.COLUMN_HUMIDITY, Math.random()*100);
-        testWeatherValues.put(WeatherEntry.COLUMN_PRESSURE, 870 + Math.random()*100);
-        int maxTemp = (int)(Math.random()*100);
-        testWeatherValues.put(WeatherEntry.COLUMN_MAX_TEMP, maxTemp);
-        testWeatherValues.put(WeatherEntry.COLUMN_MIN_TEMP, maxTemp - (int) (Math.random()*10));
-        testWeatherValues.put(WeatherEntry.COLUMN_WIND_SPEED, Math.random()*10);
-        testWeatherValues.put(WeatherEntry.COLUMN_WEATHER_ID, weatherIDs[(int)(Math.random()*10)%5]);
-        return testWeatherValues;
-    }
-
     /**
      * Creates random weather data for 7 days starting today
      * @param context
@@ -41,14 +16,27 @@ public class FakeDataUtils {
     public static void insertFakeData(Context context) {
         //Get today's normalized date
         long today = SunshineDateUtils.normalizeDate(System.currentTimeMillis());
-        List<ContentValues> fakeValues = new ArrayList<ContentValues>();
-        //loop over 7 days starting today onwards
-        for(int i=0; i<7; i++) {
-            fakeValues.add(FakeDataUtils.createTestWeatherContentValues(today + TimeUnit.DAYS.toMillis(i)));
-        }
-        // Bulk Insert our new weather data into Sunshine's Database
-        context.getContentResolver().bulkInsert(
-                WeatherContract.WeatherEntry.CONTENT_URI,
-                fakeValues.toArray(new ContentValues[7]));
+        // A new seed every time, so the weather is different on every call
+        long seed = System.nanoTime();
+        // Insert our new weather data into Sunshine's Database through the batch insert
+        new SyntheticWeatherGenerator(seed, 0, today).insert(context.getContentResolver(), 7);
+    }
+
+    /**
+     * Inserts years of past weather for one location, ending today. The weather table only
+     * holds one location, so a dataset of many locations is inserted one location per database.
+     *
+     * @param context  Used to reach Sunshine's ContentProvider
+     * @param seed     The same seed always gives the same weather
+     * @param location Index of the location, see SyntheticWeatherGenerator
+     * @param days     How many days to insert, today included
+     * @return The number of rows that were inserted
+     */
+    public static int insertSyntheticHistory(Context context, long seed, int location,
+            int days) {
+        long today = SunshineDateUtils.normalizeDate(System.currentTimeMillis());
+        long firstDay = today - (days - 1) * SunshineDateUtils.DAY_IN_MILLIS;
+        return new SyntheticWeatherGenerator(seed, location, firstDay)
+                .insert(context.getContentResolver(), days);
     }
 }
@@ -0,0 +1,132 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.utilities;
+
+/**
+ * Snaps coordinates to the cells of a geohash grid.
+ * <p>
+ * A forecast covers a whole city, so the weather at two spots a few hundred meters apart is the
+ * same. GPS coordinates however are never the same twice, and every fetch by raw coordinates
+ * would be a new location to the server and to every cache in between. Fetching the weather of
+ * the center of the geohash cell a location falls in gives the same request, and the same cache
+ * key, to every position in that cell, whichever device it comes from.
+ * <p>
+ * A geohash interleaves the bits of the longitude and the latitude, halving the world along one
+ * of them at each bit, and writes them 5 bits per character. Cells sharing a prefix are nested.
+ */
+public final class LocationGrid {
+
+    /* Geohash's base 32 alphabet, which leaves out a, i, l and o */
+    private static final char[] BASE32 = "0123456789bcdefghjkmnpqrstuvwxyz".toCharArray();
+
+    private static final int BITS_PER_CHAR = 5;
+
+    /* Precisions beyond this are finer than a double can tell apart */
+    public static final int MAX_PRECISION = 12;
+
+    private LocationGrid() {
+    }
+
+    /**
+     * @param latitude  Latitude of the location, between -90 and 90
+     * @param longitude Longitude of the location, between -180 and 180
+     * @param precision Length of the geohash, from 1 to {@link #MAX_PRECISION}
+     * @return The geohash of the cell the location falls in
+     */
+    public static String encode(double latitude, double longitude, int precision) {
+        if (precision < 1 || precision > MAX_PRECISION) {
+            throw new IllegalArgumentException("Geohash precision out of range: " + precision);
+        }
+
+        double minLatitude = -90, maxLatitude = 90;
+        double minLongitude = -180, maxLongitude = 180;
+
+        char[] geohash = new char[precision];
+        boolean evenBit = true;
+
+        for (int i = 0; i < precision; i++) {
+            int index = 0;
+            for (int bit = 0; bit < BITS_PER_CHAR; bit++) {
+                index <<= 1;
+                if (evenBit) {
+                    double middle = (minLongitude + maxLongitude) / 2;
+                    if (longitude >= middle) {
+                        index |= 1;
+                        minLongitude = middle;
+                    } else {
+                        maxLongitude = middle;
+                    }
+                } else {
+                    double middle = (minLatitude + maxLatitude) / 2;
+                    if (latitude >= middle) {
+                        index |= 1;
+                        minLatitude = middle;
+                    } else {
+                        maxLatitude = middle;
+                    }
+                }
+                evenBit = !evenBit;
+            }
+            geohash[i] = BASE32[index];
+        }
+
+        return new String(geohash);
+    }
+
+    /**
+     * @param geohash A geohash, as returned by {@link #encode(double, double, int)}
+     * @return The latitude and longitude of the center of its cell
+     */
+    public static double[] center(String geohash) {
+        double minLatitude = -90, maxLatitude = 90;
+        double minLongitude = -180, maxLongitude = 180;
+        boolean evenBit = true;
+
+        for (int i = 0; i < geohash.length(); i++) {
+            int index = indexOf(geohash.charAt(i));
+            for (int bit = BITS_PER_CHAR - 1; bit >= 0; bit--) {
+                boolean upper = ((index >> bit) & 1) == 1;
+                if (evenBit) {
+                    double middle = (minLongitude + maxLongitude) / 2;
+                    if (upper) {
+                        minLongitude = middle;
+                    } else {
+                        maxLongitude = middle;
+                    }
+                } else {
+                    double middle = (minLatitude + maxLatitude) / 2;
+                    if (upper) {
+                        minLatitude = middle;
+                    } else {
+                        maxLatitude = middle;
+                    }
+                }
+                evenBit = !evenBit;
+            }
+        }
+
+        return new double[]{
+                (minLatitude + maxLatitude) / 2,
+                (minLongitude + maxLongitude) / 2};
+    }
+
+    private static int indexOf(char c) {
+        for (int i = 0; i < BASE32.length; i++) {
+            if (BASE32[i] == c) return i;
+        }
+        throw new IllegalArgumentException("Not a geohash character: " + c);
+    }
+}
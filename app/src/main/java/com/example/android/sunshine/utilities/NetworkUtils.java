@@ -17,16 +17,21 @@ package com.example.android.sunshine.utilities;
 
 import android.content.Context;
 import android.net.Uri;
+import android.os.SystemClock;
+import android.support.annotation.VisibleForTesting;
+import android.support.v4.os.CancellationSignal;
+import android.support.v4.os.OperationCanceledException;
 import android.util.Log;
 
+import com.example.android.sunshine.R;
+import com.example.android.sunshine.data.GeocodeCache;
 import com.example.android.sunshine.data.SunshinePreferences;
 
+import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
-import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
 import java.net.URL;
-import java.util.Scanner;
+import java.util.List;
 
 /**
  * These utilities will be used to communicate with the weather servers.
@@ -35,6 +40,13 @@ public final class NetworkUtils {
 
     private static final String TAG = NetworkUtils.class.getSimpleName();
 
+    /**
+     * How long to wait for the weather server to accept a connection, and then for each chunk
+     * of its response. Without them, a server that hangs would hold the sync forever.
+     */
+    public static final int CONNECT_TIMEOUT_MILLIS = 15000;
+    public static final int READ_TIMEOUT_MILLIS = 20000;
+
     /*
      * Sunshine was originally built to use OpenWeatherMap's API. However, we wanted to provide
      * a way to much more easily test the app and provide more varied weather data. After all, in
@@ -47,6 +59,9 @@ public final class NetworkUtils {
      *
      * If you'd prefer to test with the weather data that you will see in the videos on Udacity,
      * you can do so by setting the FORECAST_BASE_URL to STATIC_WEATHER_URL below.
+     *
+     * Both servers serve the same API, so the one that isn't FORECAST_BASE_URL is used as a
+     * fallback whenever the preferred one is slow or failing, see WeatherEndpoints.
      */
     private static final String DYNAMIC_WEATHER_URL =
             "https://andfun-weather.udacity.com/weather";
@@ -56,6 +71,15 @@ public final class NetworkUtils {
 
     private static final String FORECAST_BASE_URL = STATIC_WEATHER_URL;
 
+    private static final String FALLBACK_BASE_URL = DYNAMIC_WEATHER_URL;
+
+    private static volatile WeatherEndpoints sEndpoints =
+            new WeatherEndpoints(FORECAST_BASE_URL, FALLBACK_BASE_URL);
+
+    /* Records or replays forecast fetches, see startCapture and startReplay. Usually null. */
+    private static volatile TrafficRecording.Recorder sCapture;
+    private static volatile TrafficRecording.Player sReplay;
+
     /*
      * NOTE: These values only effect responses from OpenWeatherMap, NOT from the fake weather
      * server. They are simply here to allow us to teach you how to build a URL if you were to use
@@ -67,7 +91,7 @@ public final class NetworkUtils {
     private static final String format = "json";
     /* The units we want our API to return */
     private static final String units = "metric";
-    /* The number of days we want our API to return */
+    /* The number of days we want our API to return, unless the caller asks for another number */
     private static final int numDays = 14;
 
     /* The query parameter allows us to provide a location string to the API */
@@ -98,32 +122,216 @@ public final class NetworkUtils {
      * @return URL to query weather service
      */
     public static URL getUrl(Context context) {
+        return getUrl(context, sEndpoints.getPreferredBaseUrl(), getGridCell(context), numDays);
+    }
+
+    /**
+     * Identifies the location that {@link #getUrl(Context)} fetches the weather of, so that
+     * caches can tell the weather of different locations apart. Locations that fall in the
+     * same grid cell share their key, as they share their weather.
+     *
+     * @param context used to access the user's preferred location
+     * @return A key that is the same for every fetch of the same location
+     */
+    public static String getLocationKey(Context context) {
+        String gridCell = getGridCell(context);
+        if (gridCell != null) {
+            return "cell:" + gridCell;
+        } else {
+            String locationQuery = SunshinePreferences.getPreferredWeatherLocation(context);
+            return "q:" + GeocodeCache.normalize(locationQuery);
+        }
+    }
+
+    /*
+     * The coordinates to fetch the weather of: the ones of the current location if we have
+     * them, otherwise the ones its query was resolved to before, if it ever was. Null means the
+     * location can only be fetched by name.
+     */
+    private static double[] getCoordinates(Context context) {
         if (SunshinePreferences.isLocationLatLonAvailable(context)) {
-            double[] preferredCoordinates = SunshinePreferences.getLocationCoordinates(context);
-            double latitude = preferredCoordinates[0];
-            double longitude = preferredCoordinates[1];
-            return buildUrlWithLatitudeLongitude(latitude, longitude);
+            return SunshinePreferences.getLocationCoordinates(context);
+        }
+        String locationQuery = SunshinePreferences.getPreferredWeatherLocation(context);
+        return GeocodeCache.get(context.getContentResolver(), locationQuery);
+    }
+
+    /*
+     * The geohash of the grid cell the location falls in, see LocationGrid. Every position in
+     * the cell is fetched and cached as that cell. Null if the location has no coordinates.
+     */
+    private static String getGridCell(Context context) {
+        double[] coordinates = getCoordinates(context);
+        if (coordinates == null) return null;
+
+        int precision = context.getResources().getInteger(R.integer.forecast_grid_precision);
+        return LocationGrid.encode(coordinates[0], coordinates[1], precision);
+    }
+
+    private static URL getUrl(Context context, String baseUrl, String gridCell, int days) {
+        if (gridCell != null) {
+            double[] cellCenter = LocationGrid.center(gridCell);
+            double latitude = cellCenter[0];
+            double longitude = cellCenter[1];
+            return buildUrlWithLatitudeLongitude(baseUrl, latitude, longitude, days);
         } else {
             String locationQuery = SunshinePreferences.getPreferredWeatherLocation(context);
-            return buildUrlWithLocationQuery(locationQuery);
+            return buildUrlWithLocationQuery(baseUrl, locationQuery, days);
+        }
+    }
+
+    /**
+     * Fetches the forecast JSON of the user's preferred location from whichever weather server
+     * answers first. A server that is slower than usual gets a second request to the next server
+     * in parallel, and a server that fails is skipped in favor of the next one. A location that
+     * was resolved to coordinates before is fetched by the grid cell those coordinates fall in.
+     * <p>
+     * While a capture is running, the fetch is recorded. While a replay is running, the next
+     * recorded fetch is returned instead and no server is reached.
+     *
+     * @param context              Used to read the user's preferred location
+     * @param days                 How many days of forecast to fetch
+     * @param cancellation         Signal that aborts the fetch
+     * @param connectTimeoutMillis Connect timeout of each request
+     * @param readTimeoutMillis    Read timeout of each request
+     * @return The forecast JSON
+     * @throws IOException                If no server gave a response
+     * @throws OperationCanceledException If the fetch was canceled
+     */
+    public static String getForecastJson(final Context context, final int days,
+            CancellationSignal cancellation, int connectTimeoutMillis, int readTimeoutMillis)
+            throws IOException {
+        /* Resolved once, rather than once per endpoint that gets a request */
+        final String gridCell = getGridCell(context);
+
+        TrafficRecording.Player player = sReplay;
+        TrafficRecording.Recorder recorder = sCapture;
+        String request = null;
+        if (player != null || recorder != null) {
+            /* The same whichever server answers, so recordings don't depend on it */
+            request = getUrl(context, sEndpoints.getPreferredBaseUrl(), gridCell, days).getFile();
+        }
+
+        if (player != null) {
+            return player.next(request, cancellation);
+        }
+
+        long startMillis = SystemClock.elapsedRealtime();
+        try {
+            String response = sEndpoints.fetch(new WeatherEndpoints.UrlBuilder() {
+                @Override
+                public URL build(String baseUrl) {
+                    return getUrl(context, baseUrl, gridCell, days);
+                }
+            }, cancellation, connectTimeoutMillis, readTimeoutMillis);
+
+            if (recorder != null) {
+                recorder.record(request, startMillis, response, null);
+            }
+            return response;
+
+        } catch (IOException e) {
+            /* A canceled fetch isn't recorded, it says nothing about the servers */
+            if (recorder != null) {
+                recorder.record(request, startMillis, null, e);
+            }
+            throw e;
         }
     }
 
+    /**
+     * Starts recording every forecast fetch, with its response and how long it took, to a new
+     * file. The recording can be replayed later with {@link #startReplay(File, double)}.
+     *
+     * @param file Where to record, any existing file is replaced
+     * @throws IOException If the file can't be written
+     */
+    public static synchronized void startCapture(File file) throws IOException {
+        stopCapture();
+        sCapture = new TrafficRecording.Recorder(file);
+    }
+
+    /**
+     * Stops recording fetches and completes the recording file.
+     */
+    public static synchronized void stopCapture() {
+        TrafficRecording.Recorder recorder = sCapture;
+        sCapture = null;
+        if (recorder != null) {
+            try {
+                recorder.close();
+            } catch (IOException e) {
+                Log.w(TAG, "Couldn't complete the traffic recording", e);
+            }
+        }
+    }
+
+    /**
+     * Answers forecast fetches with recorded ones instead of reaching any server, in the order
+     * they were recorded, so that syncs run on exactly the recorded traffic. Fetches are spaced
+     * out as they were in the recording, counted from the first replayed one.
+     *
+     * @param file  A recording made with {@link #startCapture(File)}
+     * @param speed How many times faster than recorded fetches are answered and spaced out, 1
+     *              to keep the recorded timing, Double.POSITIVE_INFINITY to answer right away
+     * @return The number of recorded fetches
+     * @throws IOException If the recording can't be read
+     */
+    public static synchronized int startReplay(File file, double speed) throws IOException {
+        List<TrafficRecording.Exchange> exchanges = TrafficRecording.read(file);
+        sReplay = new TrafficRecording.Player(exchanges, speed);
+        return exchanges.size();
+    }
+
+    /**
+     * Goes back to fetching from the weather servers after {@link #startReplay(File, double)}.
+     *
+     * @return The number of recorded fetches that were not replayed
+     */
+    public static synchronized int stopReplay() {
+        TrafficRecording.Player player = sReplay;
+        sReplay = null;
+        return player == null ? 0 : player.getRemainingCount();
+    }
+
+    /**
+     * Replaces the weather servers, for example with local servers in tests. Their latency
+     * history and circuit breakers start over.
+     *
+     * @param baseUrls The base URLs of the servers, most preferred first
+     */
+    @VisibleForTesting
+    public static void setEndpoints(String... baseUrls) {
+        sEndpoints = new WeatherEndpoints(baseUrls);
+    }
+
+    /**
+     * Goes back to the real weather servers after {@link #setEndpoints(String...)}.
+     */
+    @VisibleForTesting
+    public static void resetEndpoints() {
+        setEndpoints(FORECAST_BASE_URL, FALLBACK_BASE_URL);
+    }
+
     /**
      * Builds the URL used to talk to the weather server using latitude and longitude of a
-     * location.
+     * location. The coordinates should be the center of the location's grid cell rather than
+     * the raw ones, so that every position in the cell makes the same request.
      *
-     * @param latitude  The latitude of the location
-     * @param longitude The longitude of the location
+     * @param baseUrl   The base URL of the weather server
+     * @param latitude  The latitude of the center of the location's grid cell
+     * @param longitude The longitude of the center of the location's grid cell
+     * @param days      The number of days of forecast to ask for
      * @return The Url to use to query the weather server.
      */
-    private static URL buildUrlWithLatitudeLongitude(Double latitude, Double longitude) {
-        Uri weatherQueryUri = Uri.parse(FORECAST_BASE_URL).buildUpon()
+    private static URL buildUrlWithLatitudeLongitude(String baseUrl, Double latitude,
+            Double longitude, int days) {
+        Uri weatherQueryUri = Uri.parse(baseUrl).buildUpon()
                 .appendQueryParameter(LAT_PARAM, String.valueOf(latitude))
                 .appendQueryParameter(LON_PARAM, String.valueOf(longitude))
                 .appendQueryParameter(FORMAT_PARAM, format)
                 .appendQueryParameter(UNITS_PARAM, units)
-                .appendQueryParameter(DAYS_PARAM, Integer.toString(numDays))
+                .appendQueryParameter(DAYS_PARAM, Integer.toString(days))
                 .build();
 
         try {
@@ -140,15 +348,18 @@ public final class NetworkUtils {
      * Builds the URL used to talk to the weather server using a location. This location is based
      * on the query capabilities of the weather provider that we are using.
      *
+     * @param baseUrl       The base URL of the weather server
      * @param locationQuery The location that will be queried for.
+     * @param days          The number of days of forecast to ask for
      * @return The URL to use to query the weather server.
      */
-    private static URL buildUrlWithLocationQuery(String locationQuery) {
-        Uri weatherQueryUri = Uri.parse(FORECAST_BASE_URL).buildUpon()
+    private static URL buildUrlWithLocationQuery(String baseUrl, String locationQuery,
+            int days) {
+        Uri weatherQueryUri = Uri.parse(baseUrl).buildUpon()
                 .appendQueryParameter(QUERY_PARAM, locationQuery)
                 .appendQueryParameter(FORMAT_PARAM, format)
                 .appendQueryParameter(UNITS_PARAM, units)
-                .appendQueryParameter(DAYS_PARAM, Integer.toString(numDays))
+                .appendQueryParameter(DAYS_PARAM, Integer.toString(days))
                 .build();
 
         try {
@@ -169,22 +380,40 @@ public final class NetworkUtils {
      * @throws IOException Related to network and stream reading
      */
     public static String getResponseFromHttpUrl(URL url) throws IOException {
-        HttpURLConnection urlConnection = (HttpURLConnection) url.openConnection();
-        try {
-            InputStream in = urlConnection.getInputStream();
+        return getResponseFromHttpUrl(url, new CancellationSignal());
+    }
 
-            Scanner scanner = new Scanner(in);
-            scanner.useDelimiter("\\A");
+    /**
+     * Same as {@link #getResponseFromHttpUrl(URL)}, but can be canceled at any time. Canceling
+     * closes the connection, which also aborts a read that is blocked waiting for the server.
+     *
+     * @param url          The URL to fetch the HTTP response from.
+     * @param cancellation Signal that aborts the request
+     * @return The contents of the HTTP response, null if no response
+     * @throws IOException                Related to network and stream reading
+     * @throws OperationCanceledException If the request was canceled
+     */
+    public static String getResponseFromHttpUrl(URL url, CancellationSignal cancellation)
+            throws IOException {
+        return getResponseFromHttpUrl(url, cancellation,
+                CONNECT_TIMEOUT_MILLIS, READ_TIMEOUT_MILLIS);
+    }
 
-            boolean hasInput = scanner.hasNext();
-            String response = null;
-            if (hasInput) {
-                response = scanner.next();
-            }
-            scanner.close();
-            return response;
-        } finally {
-            urlConnection.disconnect();
-        }
+    /**
+     * Same as {@link #getResponseFromHttpUrl(URL, CancellationSignal)}, with custom timeouts.
+     *
+     * @param url                  The URL to fetch the HTTP response from.
+     * @param cancellation         Signal that aborts the request
+     * @param connectTimeoutMillis How long to wait for the connection to be established
+     * @param readTimeoutMillis    How long to wait for each chunk of the response
+     * @return The contents of the HTTP response, null if no response
+     * @throws java.net.SocketTimeoutException If the server took longer than a timeout
+     * @throws IOException                     Related to network and stream reading
+     * @throws OperationCanceledException      If the request was canceled
+     */
+    public static String getResponseFromHttpUrl(URL url, CancellationSignal cancellation,
+            int connectTimeoutMillis, int readTimeoutMillis) throws IOException {
+        /* Shares pooled connections with every other fetch, and reports what the fetch cost */
+        return WeatherHttpClient.get(url, cancellation, connectTimeoutMillis, readTimeoutMillis);
     }
 }
\ No newline at end of file
@@ -5,9 +5,7 @@ import android.app.PendingIntent;
 import android.content.Context;
 import android.content.Intent;
 import android.content.res.Resources;
-import android.database.Cursor;
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.net.Uri;
 import android.support.annotation.NonNull;
 import android.support.v4.app.NotificationCompat;
@@ -18,6 +16,7 @@ import android.util.Log;
 import com.example.android.sunshine.DetailActivity;
 import com.example.android.sunshine.MainActivity;
 import com.example.android.sunshine.R;
+import com.example.android.sunshine.data.ForecastBatch;
 import com.example.android.sunshine.data.SunshinePreferences;
 import com.example.android.sunshine.data.WeatherContract;
 import com.google.android.gms.common.api.ResultCallback;
@@ -32,7 +31,8 @@ public class NotificationUtils {
 
     /*
      * The columns of data that we are interested in displaying within our notification to let
-     * the user know there is new weather data available.
+     * the user know there is new weather data available. They are read with a single
+     * ForecastBatch query, so there are no Cursor indices to keep in sync with this array.
      */
     public static final String[] WEATHER_NOTIFICATION_PROJECTION = {
             WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
@@ -40,15 +40,6 @@ public class NotificationUtils {
             WeatherContract.WeatherEntry.COLUMN_MIN_TEMP,
     };
 
-    /*
-     * We store the indices of the values in the array of Strings above to more quickly be able
-     * to access the data from our query. If the order of the Strings above changes, these
-     * indices must be adjusted to match the order of the Strings.
-     */
-    public static final int INDEX_WEATHER_ID = 0;
-    public static final int INDEX_MAX_TEMP = 1;
-    public static final int INDEX_MIN_TEMP = 2;
-
     /*
      * This notification ID can be used to access our notification after we've displayed it. This
      * can be handy when we need to cancel the notification, or perhaps update it. This number is
@@ -64,38 +55,41 @@ public class NotificationUtils {
     public static void notifyUserOfNewWeather(Context context) {
 
         /* Build the URI for today's weather in order to show up to date data in notification */
-        Uri todaysWeatherUri = WeatherContract.WeatherEntry
-                .buildWeatherUriWithDate(SunshineDateUtils.normalizeDate(System.currentTimeMillis()));
+        long today = SunshineDateUtils.normalizeDate(System.currentTimeMillis());
+        Uri todaysWeatherUri = WeatherContract.WeatherEntry.buildWeatherUriWithDate(today);
 
         /*
-         * The MAIN_FORECAST_PROJECTION array passed in as the second parameter is defined in our WeatherContract
-         * class and is used to limit the columns returned in our cursor.
+         * Today's weather is read as a ForecastBatch holding only the columns listed in
+         * WEATHER_NOTIFICATION_PROJECTION. The provider hands the values back in primitive
+         * arrays, so there is no Cursor to walk or to remember to close.
          */
-        Cursor todayWeatherCursor = context.getContentResolver().query(
-                todaysWeatherUri,
-                WEATHER_NOTIFICATION_PROJECTION,
-                null,
-                null,
-                null);
+        ForecastBatch todaysWeather = ForecastBatch.query(
+                context.getContentResolver(),
+                today,
+                today,
+                WEATHER_NOTIFICATION_PROJECTION);
 
-        /*
-         * If todayWeatherCursor is empty, moveToFirst will return false. If our cursor is not
-         * empty, we want to show the notification.
-         */
-        if (todayWeatherCursor.moveToFirst()) {
+        /* If there is no weather for today yet, there is nothing to notify the user about */
+        if (todaysWeather != null && todaysWeather.size() != 0) {
 
             /* Weather ID as returned by API, used to identify the icon to be used */
-            int weatherId = todayWeatherCursor.getInt(INDEX_WEATHER_ID);
-            double high = todayWeatherCursor.getDouble(INDEX_MAX_TEMP);
-            double low = todayWeatherCursor.getDouble(INDEX_MIN_TEMP);
+            int weatherId = todaysWeather.weatherIds[0];
+            double high = todaysWeather.maxTemps[0];
+            double low = todaysWeather.minTemps[0];
 
             Resources resources = context.getResources();
             int largeArtResourceId = SunshineWeatherUtils
                     .getLargeArtResourceIdForWeatherCondition(weatherId);
 
-            Bitmap largeIcon = BitmapFactory.decodeResource(
-                    resources,
-                    largeArtResourceId);
+            /*
+             * The art is shared with the forecast list through WeatherArtCache, so repeated
+             * notifications don't rasterize it again. The notification keeps its own copy of the
+             * Bitmap once it has been posted, which is why it is released right after.
+             */
+            Bitmap largeIcon = WeatherArtCache.acquire(
+                    context,
+                    largeArtResourceId,
+                    resources.getDimensionPixelSize(android.R.dimen.notification_large_icon_width));
 
             String notificationTitle = context.getString(R.string.app_name);
 
@@ -139,6 +133,8 @@ public class NotificationUtils {
 
             /* WEATHER_NOTIFICATION_ID allows you to update or cancel the notification later on */
             notificationManager.notify(WEATHER_NOTIFICATION_ID, notificationBuilder.build());
+            WeatherArtCache.release(largeIcon);
+            WeatherArtCache.logMemory("Weather notification");
 
             /*
              * Since we just showed a notification, save the current time. That way, we can check
@@ -146,9 +142,6 @@ public class NotificationUtils {
              */
             SunshinePreferences.saveLastNotificationTime(context, System.currentTimeMillis());
         }
-
-        /* Always close your cursor when you're done with it to avoid wasting resources. */
-        todayWeatherCursor.close();
     }
 
     /**
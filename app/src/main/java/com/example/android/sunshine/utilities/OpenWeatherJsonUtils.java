@@ -15,11 +15,10 @@
  */
 package com.example.android.sunshine.utilities;
 
-import android.content.ContentValues;
 import android.content.Context;
 
+import com.example.android.sunshine.data.ForecastBatch;
 import com.example.android.sunshine.data.SunshinePreferences;
-import com.example.android.sunshine.data.WeatherContract;
 
 import org.json.JSONArray;
 import org.json.JSONException;
@@ -61,20 +60,18 @@ public final class OpenWeatherJsonUtils {
     private static final String OWM_MESSAGE_CODE = "cod";
 
     /**
-     * This method parses JSON from a web response and returns an array of Strings
-     * describing the weather over various days from the forecast.
-     * <p/>
-     * Later on, we'll be parsing the JSON into structured data within the
-     * getFullWeatherDataFromJson function, leveraging the data we have stored in the JSON. For
-     * now, we just convert the JSON into human-readable strings.
+     * This method parses JSON from a web response and returns a {@link ForecastBatch} holding
+     * the weather for each day of the forecast. The values are written straight into the
+     * batch's primitive arrays, so nothing is boxed on its way to the database.
      *
+     * @param context         Used to store the coordinates of the forecast's city
      * @param forecastJsonStr JSON response from server
      *
-     * @return Array of Strings describing weather data
+     * @return ForecastBatch with one row per day, or null if the server reported an error
      *
      * @throws JSONException If JSON data cannot be properly parsed
      */
-    public static ContentValues[] getWeatherContentValuesFromJson(Context context, String forecastJsonStr)
+    public static ForecastBatch getForecastBatchFromJson(Context context, String forecastJsonStr)
             throws JSONException {
 
         JSONObject forecastJson = new JSONObject(forecastJsonStr);
@@ -105,7 +102,7 @@ public final class OpenWeatherJsonUtils {
 
         SunshinePreferences.setLocationDetails(context, cityLatitude, cityLongitude);
 
-        ContentValues[] weatherContentValues = new ContentValues[jsonWeatherArray.length()];
+        ForecastBatch forecastBatch = new ForecastBatch(jsonWeatherArray.length());
 
         /*
          * OWM returns daily forecasts based upon the local time of the city that is being asked
@@ -166,19 +163,10 @@ public final class OpenWeatherJsonUtils {
             high = temperatureObject.getDouble(OWM_MAX);
             low = temperatureObject.getDouble(OWM_MIN);
 
-            ContentValues weatherValues = new ContentValues();
-            weatherValues.put(WeatherContract.WeatherEntry.COLUMN_DATE, dateTimeMillis);
-            weatherValues.put(WeatherContract.WeatherEntry.COLUMN_HUMIDITY, humidity);
-            weatherValues.put(WeatherContract.WeatherEntry.COLUMN_PRESSURE, pressure);
-            weatherValues.put(WeatherContract.WeatherEntry.COLUMN_WIND_SPEED, windSpeed);
-            weatherValues.put(WeatherContract.WeatherEntry.COLUMN_DEGREES, windDirection);
-            weatherValues.put(WeatherContract.WeatherEntry.COLUMN_MAX_TEMP, high);
-            weatherValues.put(WeatherContract.WeatherEntry.COLUMN_MIN_TEMP, low);
-            weatherValues.put(WeatherContract.WeatherEntry.COLUMN_WEATHER_ID, weatherId);
-
-            weatherContentValues[i] = weatherValues;
+            forecastBatch.add(dateTimeMillis, weatherId, low, high, humidity, pressure,
+                    windSpeed, windDirection);
         }
 
-        return weatherContentValues;
+        return forecastBatch;
     }
 }
\ No newline at end of file
@@ -0,0 +1,291 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.utilities;
+
+import android.content.ContentResolver;
+
+import com.example.android.sunshine.data.ForecastBatch;
+
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Generates plausible weather for a location, one day after the other, for as many days as
+ * needed: a few days for a screenshot, or centuries of history to fill the database with
+ * millions of rows for a benchmark.
+ * <p>
+ * Each location gets a climate from its latitude. Temperatures follow the seasons of its
+ * hemisphere with persistent day to day anomalies, and the sky moves between clear, cloudy, wet
+ * and stormy spells rather than changing at random every day. Rain turns to snow in the cold,
+ * and thunderstorms only happen when it is warm. Humidity, pressure and wind follow the sky.
+ * <p>
+ * The weather only depends on the seed, the location and the start date, so every run of a
+ * benchmark works on the same data. A generator is not thread safe, use one per thread.
+ */
+public final class SyntheticWeatherGenerator {
+
+    /* Rows inserted per call to the ContentProvider, well below the Binder transaction limit */
+    private static final int INSERT_CHUNK_ROWS = 4000;
+
+    private static final double DAYS_PER_YEAR = 365.2425;
+
+    /* Spells the sky can be in */
+    private static final int SKY_CLEAR = 0;
+    private static final int SKY_CLOUDY = 1;
+    private static final int SKY_DRIZZLE = 2;
+    private static final int SKY_RAIN = 3;
+    private static final int SKY_STORM = 4;
+    private static final int SKY_FOG = 5;
+
+    /* How often each spell starts, and the chance that a spell carries on the next day */
+    private static final double[] SKY_WEIGHTS = {0.32, 0.30, 0.08, 0.18, 0.05, 0.07};
+    private static final double SKY_PERSISTENCE = 0.6;
+
+    /* OpenWeatherMap condition ids of each spell, in rising order of intensity */
+    private static final int[][] SKY_WEATHER_IDS = {
+            {800, 800, 801},
+            {801, 802, 803, 804},
+            {300, 301, 302, 310},
+            {500, 500, 501, 501, 502, 520, 521},
+            {200, 201, 202, 211, 212},
+            {701, 721, 741}};
+
+    /* What rain and drizzle become below freezing */
+    private static final int[] SNOW_WEATHER_IDS = {600, 600, 601, 602, 611, 615, 616, 620};
+
+    private final Random mRandom;
+    private final int mLocation;
+    private final double mLatitude;
+    private final double mLongitude;
+
+    /* The climate of the location */
+    private final double mMeanTemperature;
+    private final double mSeasonalAmplitude;
+
+    private long mNextDate;
+    private double mAnomaly;
+    private int mSky = SKY_CLEAR;
+
+    /**
+     * @param seed      Seed shared by every location of a dataset
+     * @param location  Index of the location, which decides where it is and its climate
+     * @param startDate Normalized UTC date of the first day to generate
+     */
+    public SyntheticWeatherGenerator(long seed, int location, long startDate) {
+        if (!SunshineDateUtils.isDateNormalized(startDate)) {
+            throw new IllegalArgumentException("Start date must be normalized");
+        }
+
+        mRandom = new Random(seed * 31 + location);
+        mLocation = location;
+        mLatitude = latitudeOf(location);
+        mLongitude = longitudeOf(location);
+        mNextDate = startDate;
+
+        double absLatitude = Math.abs(mLatitude);
+        mMeanTemperature = 28 - absLatitude * 0.45;
+        mSeasonalAmplitude = 1 + absLatitude * 0.3;
+    }
+
+    /**
+     * @param location Index of a location
+     * @return Its latitude. Locations are spread over the inhabited latitudes.
+     */
+    public static double latitudeOf(int location) {
+        return -55 + (location * 37 % 120) + (location % 7) * 0.125;
+    }
+
+    /**
+     * @param location Index of a location
+     * @return Its longitude. Locations are far enough apart not to share a LocationGrid cell.
+     */
+    public static double longitudeOf(int location) {
+        return -179 + (location * 73 % 358) + (location % 11) * 0.0625;
+    }
+
+    public int getLocation() {
+        return mLocation;
+    }
+
+    public double getLatitude() {
+        return mLatitude;
+    }
+
+    public double getLongitude() {
+        return mLongitude;
+    }
+
+    /**
+     * Generates the next days of weather.
+     *
+     * @param days How many days to generate
+     * @return The weather of those days, following the days generated before
+     */
+    public ForecastBatch next(int days) {
+        ForecastBatch batch = new ForecastBatch(days);
+        for (int i = 0; i < days; i++) {
+            nextDay(batch);
+        }
+        return batch;
+    }
+
+    /**
+     * Generates the next days of weather and inserts them into the weather table, through the
+     * ContentProvider's batch insert, in chunks that fit in a Binder transaction.
+     *
+     * @param contentResolver Used to reach Sunshine's ContentProvider
+     * @param days            How many days to generate
+     * @return The number of rows that were inserted
+     */
+    public int insert(ContentResolver contentResolver, int days) {
+        int inserted = 0;
+        for (int done = 0; done < days; done += INSERT_CHUNK_ROWS) {
+            inserted += next(Math.min(INSERT_CHUNK_ROWS, days - done)).insert(contentResolver);
+        }
+        return inserted;
+    }
+
+    /**
+     * Generates the next days of weather as the weather server would send them: a daily forecast
+     * in OpenWeatherMap's format, ready for OpenWeatherJsonUtils.
+     *
+     * @param cityName The name of the city in the response
+     * @param days     How many days to generate
+     * @return The JSON response
+     */
+    public String nextJson(String cityName, int days) {
+        ForecastBatch batch = next(days);
+
+        StringBuilder json = new StringBuilder(256 + days * 320);
+        json.append("{\"city\":{\"id\":").append(1000 + mLocation)
+                .append(",\"name\":\"").append(cityName)
+                .append("\",\"coord\":{\"lat\":").append(mLatitude)
+                .append(",\"lon\":").append(mLongitude)
+                .append("},\"country\":\"ZZ\",\"population\":0},")
+                .append("\"cod\":\"200\",\"message\":0,\"cnt\":").append(days)
+                .append(",\"list\":[");
+
+        for (int i = 0; i < batch.size(); i++) {
+            double low = batch.minTemps[i];
+            double high = batch.maxTemps[i];
+
+            if (i > 0) json.append(',');
+            json.append("{\"dt\":").append(TimeUnit.MILLISECONDS.toSeconds(batch.dates[i]))
+                    .append(",\"temp\":{\"day\":").append(format((high + low) / 2))
+                    .append(",\"min\":").append(format(low))
+                    .append(",\"max\":").append(format(high))
+                    .append(",\"night\":").append(format(low + 1))
+                    .append(",\"eve\":").append(format(high - 1))
+                    .append(",\"morn\":").append(format(low + 2))
+                    .append("},\"pressure\":").append(format(batch.pressures[i]))
+                    .append(",\"humidity\":").append(batch.humidities[i])
+                    .append(",\"weather\":[{\"id\":").append(batch.weatherIds[i])
+                    .append(",\"main\":\"Weather\",\"description\":\"weather ")
+                    .append(batch.weatherIds[i]).append("\",\"icon\":\"01d\"}]")
+                    .append(",\"speed\":").append(format(batch.windSpeeds[i]))
+                    .append(",\"deg\":").append(format(batch.degrees[i]))
+                    .append(",\"clouds\":").append(cloudiness(batch.weatherIds[i]))
+                    .append('}');
+        }
+
+        return json.append("]}").toString();
+    }
+
+    private void nextDay(ForecastBatch batch) {
+        long date = mNextDate;
+        mNextDate += SunshineDateUtils.DAY_IN_MILLIS;
+
+        /* Warmest around late July in the north and late January in the south */
+        double dayOfYear = (TimeUnit.MILLISECONDS.toDays(date) % DAYS_PER_YEAR) - 202;
+        double season = Math.cos(2 * Math.PI * dayOfYear / DAYS_PER_YEAR);
+        if (mLatitude < 0) season = -season;
+
+        /* Anomalies last a few days before fading back to the seasonal normal */
+        mAnomaly = mAnomaly * 0.7 + mRandom.nextGaussian() * 2.2;
+
+        if (mRandom.nextDouble() > SKY_PERSISTENCE) {
+            mSky = pick(SKY_WEIGHTS);
+        }
+
+        double mean = mMeanTemperature + mSeasonalAmplitude * season + mAnomaly;
+        boolean wet = mSky == SKY_DRIZZLE || mSky == SKY_RAIN || mSky == SKY_STORM;
+
+        /* Clouds and rain keep days cooler and nights warmer */
+        double range = wet || mSky == SKY_CLOUDY ? 4 + mRandom.nextDouble() * 3
+                : 7 + mRandom.nextDouble() * 6;
+        double high = mean + range / 2;
+        double low = mean - range / 2;
+
+        int sky = mSky;
+        if (sky == SKY_STORM && high < 15) {
+            /* No thunderstorms in the cold, just rain */
+            sky = SKY_RAIN;
+        }
+
+        int weatherId;
+        if ((sky == SKY_RAIN || sky == SKY_DRIZZLE) && high < 1) {
+            weatherId = SNOW_WEATHER_IDS[mRandom.nextInt(SNOW_WEATHER_IDS.length)];
+        } else {
+            int[] ids = SKY_WEATHER_IDS[sky];
+            weatherId = ids[mRandom.nextInt(ids.length)];
+        }
+
+        int humidity = (int) Math.round(clamp(
+                (wet ? 85 : sky == SKY_FOG ? 95 : sky == SKY_CLOUDY ? 70 : 50)
+                        + mRandom.nextGaussian() * 8, 5, 100));
+        double pressure = (wet ? 1002 : sky == SKY_CLEAR ? 1021 : 1013)
+                + mRandom.nextGaussian() * 6;
+        double windSpeed = Math.abs(mRandom.nextGaussian())
+                * (sky == SKY_STORM ? 9 : wet ? 5 : sky == SKY_FOG ? 1 : 3);
+        double degree = mRandom.nextInt(360);
+
+        batch.add(date, weatherId, round(low), round(high), humidity, round(pressure),
+                round(windSpeed), degree);
+    }
+
+    /*
+     * Cloud cover in percent, from the condition rather than from the Random, so that
+     * generating JSON draws the same weather as generating rows.
+     */
+    private static int cloudiness(int weatherId) {
+        if (weatherId == 800) return 0;
+        if (weatherId > 800) return (weatherId - 800) * 25;
+        return weatherId >= 700 && weatherId < 800 ? 60 : 90;
+    }
+
+    private int pick(double[] weights) {
+        double pick = mRandom.nextDouble();
+        for (int i = 0; i < weights.length; i++) {
+            pick -= weights[i];
+            if (pick < 0) return i;
+        }
+        return weights.length - 1;
+    }
+
+    private static double clamp(double value, double min, double max) {
+        return Math.max(min, Math.min(max, value));
+    }
+
+    /* Two decimals, as the weather server sends them */
+    private static double round(double value) {
+        return Math.round(value * 100) / 100.0;
+    }
+
+    private static String format(double value) {
+        return String.format(Locale.US, "%.2f", value);
+    }
+}
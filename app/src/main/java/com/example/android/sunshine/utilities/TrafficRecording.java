@@ -0,0 +1,287 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.utilities;
+
+import android.os.SystemClock;
+import android.support.v4.os.CancellationSignal;
+import android.support.v4.os.OperationCanceledException;
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Weather fetches recorded to a file, with how long they took, so that they can be played back
+ * through the sync pipeline later. See NetworkUtils' capture and replay methods.
+ * <p>
+ * A recording is a gzipped stream of exchanges, in the order the fetches ended. Each exchange
+ * holds when the fetch started (relative to the start of the recording), how long it took, the
+ * request (the path and query of its URL) and either the response or the error it ended with.
+ */
+final class TrafficRecording {
+
+    private static final String TAG = TrafficRecording.class.getSimpleName();
+
+    /* "STRF", followed by the version of the file format */
+    private static final int MAGIC = 0x53545246;
+    private static final int FORMAT_VERSION = 1;
+
+    /* How an exchange ended */
+    private static final byte OUTCOME_RESPONSE = 0;
+    private static final byte OUTCOME_EMPTY = 1;
+    private static final byte OUTCOME_ERROR = 2;
+
+    /* How often a replayed fetch checks whether it was canceled while it waits */
+    private static final long CANCEL_CHECK_MILLIS = 20;
+
+    /**
+     * One recorded fetch.
+     */
+    static final class Exchange {
+        final long offsetMillis;
+        final long durationMillis;
+        final String request;
+        final byte outcome;
+        /* The response, or the message of the error */
+        final String body;
+
+        Exchange(long offsetMillis, long durationMillis, String request, byte outcome,
+                String body) {
+            this.offsetMillis = offsetMillis;
+            this.durationMillis = durationMillis;
+            this.request = request;
+            this.outcome = outcome;
+            this.body = body;
+        }
+    }
+
+    private TrafficRecording() {
+    }
+
+    /**
+     * Appends fetches to a new recording file. All methods are thread safe.
+     */
+    static final class Recorder implements Closeable {
+
+        private final DataOutputStream mOut;
+        private final long mStartMillis = SystemClock.elapsedRealtime();
+
+        Recorder(File file) throws IOException {
+            mOut = new DataOutputStream(new BufferedOutputStream(
+                    new GZIPOutputStream(new FileOutputStream(file))));
+            mOut.writeInt(MAGIC);
+            mOut.writeInt(FORMAT_VERSION);
+        }
+
+        /**
+         * @param request     The path and query of the request
+         * @param startMillis When the fetch started, in SystemClock.elapsedRealtime time
+         * @param response    The response, null if it was empty or if the fetch failed
+         * @param error       The error the fetch failed with, null if it didn't
+         */
+        synchronized void record(String request, long startMillis, String response,
+                IOException error) {
+            byte outcome = error != null ? OUTCOME_ERROR
+                    : response == null ? OUTCOME_EMPTY : OUTCOME_RESPONSE;
+            String body = error != null ? String.valueOf(error.getMessage()) : response;
+
+            try {
+                mOut.writeLong(startMillis - mStartMillis);
+                mOut.writeLong(SystemClock.elapsedRealtime() - startMillis);
+                mOut.writeUTF(request);
+                mOut.writeByte(outcome);
+                if (outcome != OUTCOME_EMPTY) {
+                    /* writeUTF is limited to 64 KB, bodies are written as raw UTF-8 instead */
+                    byte[] bytes = body.getBytes("UTF-8");
+                    mOut.writeInt(bytes.length);
+                    mOut.write(bytes);
+                }
+            } catch (IOException e) {
+                Log.w(TAG, "Couldn't record a fetch", e);
+            }
+        }
+
+        @Override
+        public synchronized void close() throws IOException {
+            mOut.close();
+        }
+    }
+
+    /**
+     * Plays recorded fetches back in the order they were recorded, divided by the speed: each
+     * one takes as long as it did when it was recorded, and doesn't start before the time it
+     * started at in the recording, counted from the first replayed fetch. This keeps the gaps
+     * between recorded fetches, but a replay that falls behind doesn't skip them to catch up.
+     * All methods are thread safe.
+     */
+    static final class Player {
+
+        private final List<Exchange> mExchanges;
+        private final double mSpeed;
+        /* The offset of the first fetch of the recording, it is replayed right away */
+        private final long mFirstOffsetMillis;
+        private int mNext;
+        /* When the first fetch was replayed, in SystemClock.elapsedRealtime time */
+        private long mStartMillis = -1;
+
+        /**
+         * @param exchanges The recorded fetches, as read by {@link #read(File)}
+         * @param speed     How many times faster than recorded to play them back. Infinity
+         *                  answers every fetch right away.
+         */
+        Player(List<Exchange> exchanges, double speed) {
+            mExchanges = exchanges;
+            mSpeed = speed;
+
+            /* Exchanges are in the order the fetches ended, not the order they started in */
+            long firstOffsetMillis = Long.MAX_VALUE;
+            for (Exchange exchange : exchanges) {
+                firstOffsetMillis = Math.min(firstOffsetMillis, exchange.offsetMillis);
+            }
+            mFirstOffsetMillis = firstOffsetMillis;
+        }
+
+        /**
+         * Answers a fetch with the next recorded exchange, waiting first until it started in
+         * the recording and then for as long as it took.
+         *
+         * @param request      The path and query of the request, only used to warn when the
+         *                     replayed traffic differs from the recorded one
+         * @param cancellation Signal that aborts the fetch while it waits
+         * @return The recorded response, null if it was empty
+         * @throws IOException                If the recorded fetch failed, or if every recorded
+         *                                    exchange was played already
+         * @throws OperationCanceledException If the fetch was canceled
+         */
+        String next(String request, CancellationSignal cancellation) throws IOException {
+            Exchange exchange;
+            long startMillis;
+            synchronized (this) {
+                if (mNext == mExchanges.size()) {
+                    throw new IOException("Every recorded fetch was replayed already");
+                }
+                exchange = mExchanges.get(mNext++);
+                if (mStartMillis < 0) {
+                    mStartMillis = SystemClock.elapsedRealtime();
+                }
+                startMillis = mStartMillis;
+            }
+
+            if (!exchange.request.equals(request)) {
+                Log.w(TAG, "Replaying " + exchange.request + " for " + request);
+            }
+
+            sleepUntil(startMillis
+                    + (long) ((exchange.offsetMillis - mFirstOffsetMillis) / mSpeed),
+                    cancellation);
+            sleepUntil(SystemClock.elapsedRealtime()
+                    + (long) (exchange.durationMillis / mSpeed), cancellation);
+            cancellation.throwIfCanceled();
+
+            switch (exchange.outcome) {
+                case OUTCOME_RESPONSE:
+                    return exchange.body;
+                case OUTCOME_EMPTY:
+                    return null;
+                default:
+                    throw new IOException(exchange.body);
+            }
+        }
+
+        /* Waits until the given SystemClock.elapsedRealtime time, unless canceled */
+        private static void sleepUntil(long untilMillis, CancellationSignal cancellation)
+                throws InterruptedIOException {
+            long remaining;
+            while ((remaining = untilMillis - SystemClock.elapsedRealtime()) > 0) {
+                cancellation.throwIfCanceled();
+                try {
+                    Thread.sleep(Math.min(remaining, CANCEL_CHECK_MILLIS));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while replaying a fetch");
+                }
+            }
+        }
+
+        /**
+         * @return The number of recorded exchanges that were not played yet
+         */
+        synchronized int getRemainingCount() {
+            return mExchanges.size() - mNext;
+        }
+    }
+
+    /**
+     * Reads a whole recording. A recording that was cut short, for instance because the process
+     * died while recording, is read up to its last complete exchange.
+     *
+     * @param file The recording
+     * @return Its exchanges, in the order they were recorded
+     * @throws IOException If the file can't be read or isn't a recording
+     */
+    static List<Exchange> read(File file) throws IOException {
+        List<Exchange> exchanges = new ArrayList<>();
+
+        DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new GZIPInputStream(new FileInputStream(file))));
+        try {
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) {
+                throw new IOException(file + " is not a traffic recording");
+            }
+
+            while (true) {
+                long offsetMillis;
+                try {
+                    offsetMillis = in.readLong();
+                } catch (EOFException e) {
+                    break;
+                }
+                long durationMillis = in.readLong();
+                String request = in.readUTF();
+                byte outcome = in.readByte();
+
+                String body = null;
+                if (outcome != OUTCOME_EMPTY) {
+                    byte[] bytes = new byte[in.readInt()];
+                    in.readFully(bytes);
+                    body = new String(bytes, "UTF-8");
+                }
+
+                exchanges.add(new Exchange(offsetMillis, durationMillis, request, outcome, body));
+            }
+        } catch (EOFException e) {
+            Log.w(TAG, "Recording was cut short after " + exchanges.size() + " exchanges");
+        } finally {
+            in.close();
+        }
+
+        return Collections.unmodifiableList(exchanges);
+    }
+}
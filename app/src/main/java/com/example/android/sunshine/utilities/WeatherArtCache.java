@@ -0,0 +1,252 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.utilities;
+
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.drawable.Drawable;
+import android.support.v4.content.ContextCompat;
+import android.support.v4.util.LruCache;
+import android.util.Log;
+import android.util.SparseArray;
+
+import java.util.ArrayDeque;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * A process-wide cache of weather art, rasterized to Bitmaps, used by the forecast list and the
+ * notification.
+ * <p>
+ * The art is mostly vector drawables, so "decoding" it means parsing XML and drawing paths. Each
+ * piece of art is rasterized once per size bucket and then served from an LRU cache keyed by
+ * resource ID and bucket. Sizes are rounded up to a bucket so that slightly different views share
+ * a Bitmap, and every Bitmap of a bucket has exactly the same dimensions. That is what allows
+ * Bitmaps that fall out of the cache to be pooled and drawn over for the next miss, instead of
+ * allocating a new one.
+ * <p>
+ * A Bitmap must not be drawn over while something still displays it, so callers
+ * {@link #acquire(Context, int, int) acquire} Bitmaps and {@link #release(Bitmap) release} them
+ * once they stop showing them. Only Bitmaps that nobody holds anymore go to the pool.
+ * <p>
+ * All methods are thread safe: the notification is built on a sync thread, the list on the main
+ * thread.
+ */
+public final class WeatherArtCache {
+
+    private static final String TAG = WeatherArtCache.class.getSimpleName();
+
+    /* Bitmaps are square and their side is rounded up to one of these sizes, in pixels */
+    private static final int[] SIZE_BUCKETS = {32, 48, 64, 96, 128, 192, 256, 384, 512};
+
+    /* Share of the heap used by cached Bitmaps, and then by pooled ones */
+    private static final int CACHE_HEAP_FRACTION = 16;
+    private static final int POOL_HEAP_FRACTION = 32;
+
+    private static final Object sLock = new Object();
+
+    /* Cached art, keyed by resource ID and size bucket. Sizes are in kilobytes. */
+    private static final LruCache<Long, Bitmap> sCache =
+            new LruCache<Long, Bitmap>(maxKilobytes(CACHE_HEAP_FRACTION)) {
+                @Override
+                protected int sizeOf(Long key, Bitmap bitmap) {
+                    return kilobytesOf(bitmap);
+                }
+
+                @Override
+                protected void entryRemoved(boolean evicted, Long key, Bitmap oldValue,
+                                            Bitmap newValue) {
+                    if (!sHolders.containsKey(oldValue)) {
+                        addToPool(oldValue);
+                    }
+                }
+            };
+
+    /* How many callers currently hold each acquired Bitmap */
+    private static final Map<Bitmap, Integer> sHolders = new IdentityHashMap<>();
+
+    /* Bitmaps that nobody displays anymore, by size bucket, ready to be drawn over */
+    private static final SparseArray<ArrayDeque<Bitmap>> sPool = new SparseArray<>();
+    private static int sPoolKilobytes;
+
+    private static int sHits;
+    private static int sMisses;
+    private static int sReuses;
+
+    private WeatherArtCache() {
+    }
+
+    /**
+     * Returns a piece of weather art rasterized to at least the given size. The Bitmap may come
+     * from the cache, in which case it is shared with other callers and must not be modified.
+     * Call {@link #release(Bitmap)} as soon as it isn't displayed anymore.
+     *
+     * @param context     Used to load the art
+     * @param resId       Drawable resource ID of the art, like the ones returned by
+     *                    {@link SunshineWeatherUtils#getLargeArtResourceIdForWeatherCondition(int)}
+     * @param sizeInPixel The size the art will be displayed at
+     * @return The rasterized art
+     */
+    public static Bitmap acquire(Context context, int resId, int sizeInPixel) {
+        int bucket = bucketFor(sizeInPixel);
+        long key = ((long) resId << 32) | bucket;
+
+        synchronized (sLock) {
+            Bitmap bitmap = sCache.get(key);
+            if (bitmap != null) {
+                sHits++;
+            } else {
+                sMisses++;
+                bitmap = rasterize(context, resId, bucket);
+                sCache.put(key, bitmap);
+            }
+
+            Integer holders = sHolders.get(bitmap);
+            sHolders.put(bitmap, holders == null ? 1 : holders + 1);
+            return bitmap;
+        }
+    }
+
+    /**
+     * Hands back a Bitmap returned by {@link #acquire(Context, int, int)}. Passing null is
+     * allowed and does nothing.
+     *
+     * @param bitmap The Bitmap that isn't displayed anymore
+     */
+    public static void release(Bitmap bitmap) {
+        if (bitmap == null) return;
+
+        synchronized (sLock) {
+            Integer holders = sHolders.get(bitmap);
+            if (holders == null) return;
+
+            if (holders > 1) {
+                sHolders.put(bitmap, holders - 1);
+                return;
+            }
+
+            sHolders.remove(bitmap);
+
+            /* Evicted from the cache while it was still displayed, it can be reused now */
+            if (!isCached(bitmap)) {
+                addToPool(bitmap);
+            }
+        }
+    }
+
+    /**
+     * Gives memory back to the system. Call this from Application.onTrimMemory.
+     *
+     * @param level The level passed to onTrimMemory
+     */
+    public static void trimMemory(int level) {
+        synchronized (sLock) {
+            if (level >= ComponentCallbacks2.TRIM_MEMORY_MODERATE) {
+                /* We are likely to be killed soon: drop everything that isn't displayed */
+                sCache.evictAll();
+                clearPool();
+            } else if (level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND
+                    || level == ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN) {
+                /* The UI isn't visible, so the list's art won't be needed for a while */
+                sCache.trimToSize(sCache.maxSize() / 2);
+                clearPool();
+            }
+
+            logMemory("After onTrimMemory(" + level + ")");
+        }
+    }
+
+    /**
+     * Logs how much memory the cache and the pool hold, and how effective they have been.
+     *
+     * @param reason Why the numbers are logged
+     */
+    public static void logMemory(String reason) {
+        synchronized (sLock) {
+            Log.d(TAG, reason + ": cache " + sCache.size() + "/" + sCache.maxSize() + " KB"
+                    + " in " + sCache.snapshot().size() + " bitmaps, pool " + sPoolKilobytes
+                    + " KB, " + sHits + " hits, " + sMisses + " misses, "
+                    + sReuses + " misses served from the pool");
+        }
+    }
+
+    /* Draws the art into a Bitmap of the bucket's size, taken from the pool when possible */
+    private static Bitmap rasterize(Context context, int resId, int bucket) {
+        Bitmap bitmap = takeFromPool(bucket);
+        if (bitmap != null) {
+            sReuses++;
+            bitmap.eraseColor(Color.TRANSPARENT);
+        } else {
+            bitmap = Bitmap.createBitmap(bucket, bucket, Bitmap.Config.ARGB_8888);
+        }
+
+        Drawable drawable = ContextCompat.getDrawable(context, resId);
+        drawable.setBounds(0, 0, bucket, bucket);
+        drawable.draw(new Canvas(bitmap));
+        return bitmap;
+    }
+
+    private static boolean isCached(Bitmap bitmap) {
+        return sCache.snapshot().containsValue(bitmap);
+    }
+
+    private static void addToPool(Bitmap bitmap) {
+        int kilobytes = kilobytesOf(bitmap);
+        if (bitmap.isRecycled() || sPoolKilobytes + kilobytes > maxKilobytes(POOL_HEAP_FRACTION)) {
+            return;
+        }
+
+        ArrayDeque<Bitmap> bucket = sPool.get(bitmap.getWidth());
+        if (bucket == null) {
+            bucket = new ArrayDeque<>();
+            sPool.put(bitmap.getWidth(), bucket);
+        }
+        bucket.push(bitmap);
+        sPoolKilobytes += kilobytes;
+    }
+
+    private static Bitmap takeFromPool(int bucketSize) {
+        ArrayDeque<Bitmap> bucket = sPool.get(bucketSize);
+        Bitmap bitmap = bucket == null ? null : bucket.poll();
+        if (bitmap != null) {
+            sPoolKilobytes -= kilobytesOf(bitmap);
+        }
+        return bitmap;
+    }
+
+    private static void clearPool() {
+        sPool.clear();
+        sPoolKilobytes = 0;
+    }
+
+    private static int bucketFor(int sizeInPixel) {
+        for (int bucket : SIZE_BUCKETS) {
+            if (bucket >= sizeInPixel) return bucket;
+        }
+        return SIZE_BUCKETS[SIZE_BUCKETS.length - 1];
+    }
+
+    private static int kilobytesOf(Bitmap bitmap) {
+        return bitmap.getByteCount() / 1024;
+    }
+
+    private static int maxKilobytes(int heapFraction) {
+        return (int) (Runtime.getRuntime().maxMemory() / 1024 / heapFraction);
+    }
+}
@@ -0,0 +1,361 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.utilities;
+
+import android.os.SystemClock;
+import android.support.v4.os.CancellationSignal;
+import android.support.v4.os.OperationCanceledException;
+import android.util.Log;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A set of weather servers that serve the same API, and the logic to fetch from whichever of them
+ * answers first.
+ * <p>
+ * A fetch starts with the preferred endpoint. If it hasn't answered once its usual worst case
+ * latency has passed (the 95th percentile of its recent fetches), a hedged request is sent to the
+ * next endpoint and whichever good response arrives first wins; the other request is canceled.
+ * A request that fails moves on to the next endpoint right away.
+ * <p>
+ * Each endpoint has a circuit breaker. After a few failures in a row its circuit opens: for a
+ * while it gets no requests, neither first nor as a hedge, and is only tried as a last resort
+ * once every other endpoint has failed. When that time is up, the circuit is half open and a
+ * single fetch sends it a probe, while concurrent fetches keep treating it as a last resort. A
+ * probe that succeeds closes the circuit, one that fails opens it again.
+ * <p>
+ * All methods are thread safe.
+ */
+final class WeatherEndpoints {
+
+    private static final String TAG = WeatherEndpoints.class.getSimpleName();
+
+    /* Recent latencies kept per endpoint, and how many are needed to trust their p95 */
+    private static final int LATENCY_WINDOW = 20;
+    private static final int MIN_LATENCY_SAMPLES = 5;
+
+    /* How long to wait before hedging while an endpoint has too few latencies to go by */
+    private static final long DEFAULT_HEDGE_DELAY_MILLIS = 3000;
+
+    /* Failures in a row that open an endpoint's circuit, and how long it then stays open */
+    private static final int FAILURES_TO_OPEN = 3;
+    private static final long OPEN_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+    /* Runs the requests, a fetch has at most one running per endpoint */
+    private static final ExecutorService sExecutor =
+            Executors.newCachedThreadPool(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "WeatherEndpoint");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+
+    /**
+     * Builds the URL of a request for one endpoint.
+     */
+    interface UrlBuilder {
+        URL build(String baseUrl);
+    }
+
+    /* One server, its recent latencies and the state of its circuit breaker */
+    private static final class Endpoint {
+        final String baseUrl;
+
+        /* Ring buffer of the latest successful fetch durations */
+        final long[] latencies = new long[LATENCY_WINDOW];
+        int latencyCount;
+        int nextLatency;
+
+        int consecutiveFailures;
+        long openUntilMillis;
+
+        /* Whether a fetch is sending the probe of the half open circuit */
+        boolean probing;
+
+        Endpoint(String baseUrl) {
+            this.baseUrl = baseUrl;
+        }
+    }
+
+    private final List<Endpoint> mEndpoints;
+
+    /**
+     * @param baseUrls The base URLs of the servers, most preferred first
+     */
+    WeatherEndpoints(String... baseUrls) {
+        List<Endpoint> endpoints = new ArrayList<>();
+        for (String baseUrl : baseUrls) {
+            endpoints.add(new Endpoint(baseUrl));
+        }
+        mEndpoints = Collections.unmodifiableList(endpoints);
+    }
+
+    /* The endpoints a fetch tries, in order, and the half open ones it probes */
+    private static final class Plan {
+        final List<Endpoint> endpoints = new ArrayList<>();
+
+        /* The first endpoints, which the fetch may hedge with. The others are last resorts. */
+        int available;
+
+        final List<Endpoint> probes = new ArrayList<>();
+    }
+
+    /**
+     * @return The base URL of the endpoint a fetch would start with
+     */
+    String getPreferredBaseUrl() {
+        return plan(false).endpoints.get(0).baseUrl;
+    }
+
+    /**
+     * Fetches a response from the first endpoint that gives one, hedging slow endpoints and
+     * failing over from broken ones.
+     *
+     * @param urls                 Builds the request for each endpoint
+     * @param cancellation         Signal that aborts every request of this fetch
+     * @param connectTimeoutMillis Connect timeout of each request
+     * @param readTimeoutMillis    Read timeout of each request
+     * @return The first non empty response
+     * @throws IOException                If no endpoint gave a response
+     * @throws OperationCanceledException If the fetch was canceled
+     */
+    String fetch(UrlBuilder urls, CancellationSignal cancellation,
+            final int connectTimeoutMillis, final int readTimeoutMillis) throws IOException {
+        cancellation.throwIfCanceled();
+
+        Plan plan = plan(true);
+        List<Endpoint> order = plan.endpoints;
+        CompletionService<String> completion = new ExecutorCompletionService<>(sExecutor);
+
+        /* The signals of the requests that were started, so that the losers can be canceled */
+        final List<CancellationSignal> attempts = new CopyOnWriteArrayList<>();
+        cancellation.setOnCancelListener(new CancellationSignal.OnCancelListener() {
+            @Override
+            public void onCancel() {
+                for (CancellationSignal attempt : attempts) {
+                    attempt.cancel();
+                }
+            }
+        });
+
+        IOException lastError = null;
+        int started = 0;
+        try {
+            int finished = 0;
+
+            start(completion, attempts, cancellation, plan, order.get(started++), urls,
+                    connectTimeoutMillis, readTimeoutMillis);
+
+            while (finished < started) {
+                Future<String> done;
+                if (started < plan.available) {
+                    /* Hedge once the request that is running has taken unusually long */
+                    done = completion.poll(hedgeDelayMillis(order.get(started - 1)),
+                            TimeUnit.MILLISECONDS);
+                    if (done == null) {
+                        /* A canceled fetch only waits for what it started to be canceled */
+                        if (cancellation.isCanceled()) {
+                            break;
+                        }
+                        Log.d(TAG, "Hedging with " + order.get(started).baseUrl);
+                        start(completion, attempts, cancellation, plan, order.get(started++), urls,
+                                connectTimeoutMillis, readTimeoutMillis);
+                        continue;
+                    }
+                } else {
+                    done = completion.take();
+                }
+                finished++;
+
+                try {
+                    String response = done.get();
+                    if (response != null) {
+                        return response;
+                    }
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof IOException) {
+                        lastError = (IOException) e.getCause();
+                    }
+                }
+
+                /*
+                 * Everything that was started failed, don't wait for a hedge delay to try the
+                 * next one. This is also the only way to reach the last resorts.
+                 */
+                if (finished == started && started < order.size()
+                        && !cancellation.isCanceled()) {
+                    start(completion, attempts, cancellation, plan, order.get(started++), urls,
+                            connectTimeoutMillis, readTimeoutMillis);
+                }
+            }
+
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while fetching the weather");
+        } finally {
+            cancellation.setOnCancelListener(null);
+            /* The losers are still running, their responses aren't needed anymore */
+            for (CancellationSignal attempt : attempts) {
+                attempt.cancel();
+            }
+            /* Probes this fetch never sent are left to the next fetch */
+            for (Endpoint endpoint : order.subList(started, order.size())) {
+                if (plan.probes.contains(endpoint)) {
+                    endProbe(endpoint);
+                }
+            }
+        }
+
+        cancellation.throwIfCanceled();
+        throw lastError != null ? lastError : new IOException("No weather endpoint answered");
+    }
+
+    private void start(CompletionService<String> completion, List<CancellationSignal> attempts,
+            CancellationSignal cancellation, Plan plan, final Endpoint endpoint,
+            final UrlBuilder urls, final int connectTimeoutMillis, final int readTimeoutMillis) {
+        final CancellationSignal attempt = new CancellationSignal();
+        attempts.add(attempt);
+        /* The fetch may have been canceled after its listener went through the attempts */
+        if (cancellation.isCanceled()) {
+            attempt.cancel();
+        }
+        final boolean probe = plan.probes.contains(endpoint);
+
+        completion.submit(new Callable<String>() {
+            @Override
+            public String call() throws IOException {
+                long startMillis = SystemClock.elapsedRealtime();
+                try {
+                    String response = WeatherHttpClient.get(urls.build(endpoint.baseUrl),
+                            attempt, connectTimeoutMillis, readTimeoutMillis);
+                    if (response == null) {
+                        recordFailure(endpoint);
+                    } else {
+                        recordSuccess(endpoint, SystemClock.elapsedRealtime() - startMillis);
+                    }
+                    return response;
+                } catch (IOException e) {
+                    /* Losing a race is not the endpoint's fault */
+                    if (!attempt.isCanceled()) {
+                        recordFailure(endpoint);
+                    }
+                    throw e;
+                } finally {
+                    /* A probe that lost a race proved nothing, the next fetch probes again */
+                    if (probe) {
+                        endProbe(endpoint);
+                    }
+                }
+            }
+        });
+    }
+
+    /*
+     * The endpoints in the order to try them. Endpoints whose circuit is closed keep their
+     * configured order and come first, along with a half open endpoint if this fetch gets to
+     * probe it. The others, whose circuit is open or already being probed, are last resorts,
+     * soonest to close first, so that a fetch never gives up without trying everything.
+     *
+     * claimProbes is false when the plan is only looked at, no probe is claimed then.
+     */
+    private synchronized Plan plan(boolean claimProbes) {
+        final long now = SystemClock.elapsedRealtime();
+        Plan plan = new Plan();
+        List<Endpoint> lastResorts = new ArrayList<>();
+
+        for (Endpoint endpoint : mEndpoints) {
+            boolean closed = endpoint.consecutiveFailures < FAILURES_TO_OPEN;
+            boolean halfOpen = !closed && endpoint.openUntilMillis <= now;
+
+            if (closed) {
+                plan.endpoints.add(endpoint);
+            } else if (halfOpen && !endpoint.probing) {
+                if (claimProbes) {
+                    endpoint.probing = true;
+                    plan.probes.add(endpoint);
+                }
+                plan.endpoints.add(endpoint);
+            } else {
+                lastResorts.add(endpoint);
+            }
+        }
+        plan.available = plan.endpoints.size();
+
+        /* The sort is stable, so endpoints that close at the same time keep their order */
+        Collections.sort(lastResorts, new Comparator<Endpoint>() {
+            @Override
+            public int compare(Endpoint a, Endpoint b) {
+                long aOpen = Math.max(0, a.openUntilMillis - now);
+                long bOpen = Math.max(0, b.openUntilMillis - now);
+                return aOpen == bOpen ? 0 : aOpen < bOpen ? -1 : 1;
+            }
+        });
+        plan.endpoints.addAll(lastResorts);
+        return plan;
+    }
+
+    private synchronized void endProbe(Endpoint endpoint) {
+        endpoint.probing = false;
+    }
+
+    private synchronized long hedgeDelayMillis(Endpoint endpoint) {
+        if (endpoint.latencyCount < MIN_LATENCY_SAMPLES) {
+            return DEFAULT_HEDGE_DELAY_MILLIS;
+        }
+        long[] sorted = Arrays.copyOf(endpoint.latencies, endpoint.latencyCount);
+        Arrays.sort(sorted);
+        int p95 = (int) Math.ceil(sorted.length * 0.95) - 1;
+        return sorted[p95];
+    }
+
+    private synchronized void recordSuccess(Endpoint endpoint, long latencyMillis) {
+        endpoint.latencies[endpoint.nextLatency] = latencyMillis;
+        endpoint.nextLatency = (endpoint.nextLatency + 1) % LATENCY_WINDOW;
+        endpoint.latencyCount = Math.min(endpoint.latencyCount + 1, LATENCY_WINDOW);
+
+        endpoint.consecutiveFailures = 0;
+        endpoint.openUntilMillis = 0;
+    }
+
+    private synchronized void recordFailure(Endpoint endpoint) {
+        endpoint.consecutiveFailures++;
+        if (endpoint.consecutiveFailures >= FAILURES_TO_OPEN) {
+            /* A failed trial after the circuit was open opens it again right away */
+            endpoint.openUntilMillis = SystemClock.elapsedRealtime() + OPEN_MILLIS;
+            Log.w(TAG, "Skipping " + endpoint.baseUrl + " for " + OPEN_MILLIS + " ms after "
+                    + endpoint.consecutiveFailures + " failures in a row");
+        }
+    }
+}
@@ -0,0 +1,169 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.utilities;
+
+import android.content.Context;
+
+import com.example.android.sunshine.R;
+
+import java.util.Locale;
+
+/**
+ * Memoizes the temperature and wind Strings that SunshineWeatherUtils formats.
+ * <p>
+ * Temperatures and wind speeds are displayed without decimals, so only a few hundred distinct
+ * Strings are ever shown. Each one is formatted through String.format the first time it is
+ * needed and then served from a lookup table indexed by its rounded value, which doesn't
+ * allocate anything. Temperatures look the same in both units ("21°"), so they share one table;
+ * wind has a table per unit and per compass direction.
+ * <p>
+ * The tables depend on the format Strings and on the locale, so they are rebuilt when the
+ * default locale changes. Values outside of the tables are simply formatted every time.
+ * <p>
+ * Lookups are thread safe: the tables are immutable apart from their lazily filled entries,
+ * and formatting the same entry twice on two threads just produces two equal Strings.
+ */
+final class WeatherFormatter {
+
+    /* Rounded temperatures that are cached, in either unit. Covers -100°C to 70°C in °F. */
+    private static final int MIN_TEMPERATURE = -150;
+    private static final int MAX_TEMPERATURE = 160;
+
+    /* Rounded wind speeds that are cached, in either unit */
+    private static final int MAX_WIND_SPEED = 250;
+
+    private static final double KPH_TO_MPH = .621371192237334;
+
+    /* Compass directions, indexed by directionIndex. The last one is for invalid degrees. */
+    private static final String[] DIRECTIONS =
+            {"N", "NE", "E", "SE", "S", "SW", "W", "NW", "Unknown"};
+
+    private static volatile WeatherFormatter sInstance;
+
+    private final Locale mLocale;
+
+    private final String mTemperatureFormat;
+    private final String mWindKmhFormat;
+    private final String mWindMphFormat;
+
+    /* Indexed by rounded temperature minus MIN_TEMPERATURE */
+    private final String[] mTemperatures = new String[MAX_TEMPERATURE - MIN_TEMPERATURE + 1];
+
+    /* String.format rounds -0.4 to "-0", which isn't in the table above */
+    private String mNegativeZero;
+
+    /* Indexed by rounded speed * DIRECTIONS.length + direction */
+    private final String[] mWindKmh = new String[(MAX_WIND_SPEED + 1) * DIRECTIONS.length];
+    private final String[] mWindMph = new String[(MAX_WIND_SPEED + 1) * DIRECTIONS.length];
+
+    private WeatherFormatter(Context context, Locale locale) {
+        mLocale = locale;
+        mTemperatureFormat = context.getString(R.string.format_temperature);
+        mWindKmhFormat = context.getString(R.string.format_wind_kmh);
+        mWindMphFormat = context.getString(R.string.format_wind_mph);
+    }
+
+    /**
+     * @param context Used to load the format Strings if the tables must be (re)built
+     * @return The formatter for the current default locale
+     */
+    static WeatherFormatter getInstance(Context context) {
+        Locale locale = Locale.getDefault();
+        WeatherFormatter formatter = sInstance;
+        if (formatter == null || !formatter.mLocale.equals(locale)) {
+            formatter = new WeatherFormatter(context.getApplicationContext(), locale);
+            sInstance = formatter;
+        }
+        return formatter;
+    }
+
+    /**
+     * Formats a temperature that is already in the units it is displayed in.
+     *
+     * @param temperature Temperature, in °C or °F
+     * @return Formatted temperature, like "21°"
+     */
+    String formatTemperature(double temperature) {
+        long rounded = roundHalfUp(temperature);
+        if (rounded < MIN_TEMPERATURE || rounded > MAX_TEMPERATURE) {
+            return String.format(mTemperatureFormat, temperature);
+        }
+
+        if (rounded == 0 && temperature < 0) {
+            if (mNegativeZero == null) {
+                mNegativeZero = String.format(mTemperatureFormat, temperature);
+            }
+            return mNegativeZero;
+        }
+
+        int index = (int) rounded - MIN_TEMPERATURE;
+        String formatted = mTemperatures[index];
+        if (formatted == null) {
+            formatted = String.format(mTemperatureFormat, (double) rounded);
+            mTemperatures[index] = formatted;
+        }
+        return formatted;
+    }
+
+    /**
+     * Formats a wind speed and direction.
+     *
+     * @param windSpeed Wind speed in kilometers / hour
+     * @param degrees   Direction the wind comes from, in compass degrees
+     * @param metric    Whether the speed is displayed in km/h rather than mph
+     * @return Formatted wind, like "2 km/h SW"
+     */
+    String formatWind(float windSpeed, float degrees, boolean metric) {
+        String format = metric ? mWindKmhFormat : mWindMphFormat;
+        String[] table = metric ? mWindKmh : mWindMph;
+
+        /* Converted in float, like the speed has always been */
+        float speed = metric ? windSpeed : (float) KPH_TO_MPH * windSpeed;
+        int direction = directionIndex(degrees);
+
+        long rounded = roundHalfUp(speed);
+        if (speed < 0 || rounded > MAX_WIND_SPEED) {
+            return String.format(format, speed, DIRECTIONS[direction]);
+        }
+
+        int index = (int) rounded * DIRECTIONS.length + direction;
+        String formatted = table[index];
+        if (formatted == null) {
+            formatted = String.format(format, (float) rounded, DIRECTIONS[direction]);
+            table[index] = formatted;
+        }
+        return formatted;
+    }
+
+    /*
+     * Maps compass degrees to an index into DIRECTIONS. Each direction covers 45 degrees centered
+     * on itself, and anything that isn't a number is "Unknown".
+     */
+    private static int directionIndex(float degrees) {
+        if (Float.isNaN(degrees)) {
+            return DIRECTIONS.length - 1;
+        }
+        if (degrees >= 337.5 || degrees < 22.5) {
+            return 0;
+        }
+        return (int) ((degrees - 22.5) / 45) + 1;
+    }
+
+    /* Rounds the way String.format does for %.0f: half away from zero */
+    private static long roundHalfUp(double value) {
+        return value < 0 ? -(long) Math.floor(-value + 0.5) : (long) Math.floor(value + 0.5);
+    }
+}
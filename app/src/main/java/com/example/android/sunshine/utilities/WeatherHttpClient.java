@@ -0,0 +1,276 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.utilities;
+
+import android.os.SystemClock;
+import android.support.v4.os.CancellationSignal;
+import android.support.v4.os.OperationCanceledException;
+import android.util.Log;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.net.URL;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+import javax.net.ssl.HandshakeCompletedEvent;
+import javax.net.ssl.HandshakeCompletedListener;
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLSocketFactory;
+
+/**
+ * The one place the app talks HTTP, shared by every fetch so that they share connections.
+ * <p>
+ * HttpURLConnection keeps connections alive and reuses them for the next request to the same
+ * server, but only if the response was read to the end and the connection wasn't disconnected.
+ * Fetches therefore close their stream and only disconnect when something went wrong, which
+ * saves a TCP and TLS handshake on every fetch after the first.
+ * <p>
+ * Responses are requested compressed and decompressed while they are read. Asking for gzip
+ * ourselves, rather than letting HttpURLConnection do it transparently, is what lets us count
+ * the bytes that actually went over the network. Every fetch logs those bytes along with the
+ * number of TLS handshakes it needed, which is 0 when a pooled connection was reused.
+ */
+public final class WeatherHttpClient {
+
+    private static final String TAG = WeatherHttpClient.class.getSimpleName();
+
+    /* Size of the chunks a response is read in. Cancellation is checked between chunks. */
+    private static final int BUFFER_SIZE = 8192;
+
+    /* TLS handshakes completed by this process */
+    private static final AtomicInteger sHandshakes = new AtomicInteger();
+
+    /* Bytes received by this process as they went over the network, abandoned responses too */
+    private static final AtomicLong sWireBytes = new AtomicLong();
+
+    /*
+     * Counts handshakes. Connections are pooled per socket factory, so every fetch must use this
+     * one instance for them to be reused.
+     */
+    private static final SSLSocketFactory sSocketFactory =
+            new HandshakeCountingSocketFactory(HttpsURLConnection.getDefaultSSLSocketFactory());
+
+    private WeatherHttpClient() {
+    }
+
+    /**
+     * Fetches a URL and returns its whole response as a String.
+     *
+     * @param url                  The URL to fetch
+     * @param cancellation         Signal that aborts the request, even while a read is blocked
+     * @param connectTimeoutMillis How long to wait for the connection to be established
+     * @param readTimeoutMillis    How long to wait for each chunk of the response
+     * @return The decoded response, null if it was empty
+     * @throws IOException                Related to network and stream reading
+     * @throws OperationCanceledException If the request was canceled
+     */
+    public static String get(URL url, CancellationSignal cancellation,
+            int connectTimeoutMillis, int readTimeoutMillis) throws IOException {
+        cancellation.throwIfCanceled();
+
+        long startMillis = SystemClock.elapsedRealtime();
+        int handshakesBefore = sHandshakes.get();
+
+        final HttpURLConnection urlConnection = (HttpURLConnection) url.openConnection();
+        if (urlConnection instanceof HttpsURLConnection) {
+            ((HttpsURLConnection) urlConnection).setSSLSocketFactory(sSocketFactory);
+        }
+        urlConnection.setConnectTimeout(connectTimeoutMillis);
+        urlConnection.setReadTimeout(readTimeoutMillis);
+        urlConnection.setRequestProperty("Accept-Encoding", "gzip, deflate");
+
+        cancellation.setOnCancelListener(new CancellationSignal.OnCancelListener() {
+            @Override
+            public void onCancel() {
+                urlConnection.disconnect();
+            }
+        });
+
+        boolean reusable = false;
+        try {
+            CountingInputStream wire = new CountingInputStream(urlConnection.getInputStream());
+            String encoding = urlConnection.getContentEncoding();
+            Reader reader = new InputStreamReader(decode(wire, encoding), "UTF-8");
+
+            StringBuilder response = new StringBuilder();
+            char[] buffer = new char[BUFFER_SIZE];
+            int read;
+            while ((read = reader.read(buffer)) != -1) {
+                cancellation.throwIfCanceled();
+                response.append(buffer, 0, read);
+            }
+
+            /* Closing a fully read response hands the connection back to the pool */
+            reader.close();
+            reusable = true;
+
+            Log.d(TAG, "Fetched " + response.length() + " chars, " + wire.count
+                    + " bytes on the wire (" + (encoding == null ? "identity" : encoding)
+                    + ") in " + (SystemClock.elapsedRealtime() - startMillis) + " ms with "
+                    + (sHandshakes.get() - handshakesBefore) + " TLS handshakes, "
+                    + sHandshakes.get() + " in total");
+
+            return response.length() == 0 ? null : response.toString();
+
+        } catch (IOException e) {
+            /* Disconnecting makes the read fail, report that as what it really is */
+            cancellation.throwIfCanceled();
+            throw e;
+        } finally {
+            cancellation.setOnCancelListener(null);
+            if (!reusable) {
+                urlConnection.disconnect();
+            }
+        }
+    }
+
+    /**
+     * @return The number of TLS handshakes this process completed so far
+     */
+    public static int getHandshakeCount() {
+        return sHandshakes.get();
+    }
+
+    /**
+     * @return The number of bytes this process received from weather servers so far, before
+     * they were decompressed, including responses that were canceled halfway
+     */
+    public static long getWireByteCount() {
+        return sWireBytes.get();
+    }
+
+    private static InputStream decode(InputStream in, String encoding) throws IOException {
+        if ("gzip".equalsIgnoreCase(encoding)) {
+            return new GZIPInputStream(in, BUFFER_SIZE);
+        } else if ("deflate".equalsIgnoreCase(encoding)) {
+            return new InflaterInputStream(in);
+        }
+        return in;
+    }
+
+    /* Counts the bytes read from the network, before they are decompressed, into sWireBytes too */
+    private static final class CountingInputStream extends FilterInputStream {
+
+        long count;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) counted(1);
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int read = super.read(buffer, offset, length);
+            if (read > 0) counted(read);
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            counted(skipped);
+            return skipped;
+        }
+
+        private void counted(long bytes) {
+            count += bytes;
+            sWireBytes.addAndGet(bytes);
+        }
+    }
+
+    /* Delegates to the platform's factory and counts the handshakes of the sockets it creates */
+    private static final class HandshakeCountingSocketFactory extends SSLSocketFactory {
+
+        private final SSLSocketFactory mDelegate;
+
+        private final HandshakeCompletedListener mListener = new HandshakeCompletedListener() {
+            @Override
+            public void handshakeCompleted(HandshakeCompletedEvent event) {
+                sHandshakes.incrementAndGet();
+            }
+        };
+
+        HandshakeCountingSocketFactory(SSLSocketFactory delegate) {
+            mDelegate = delegate;
+        }
+
+        private Socket counted(Socket socket) {
+            if (socket instanceof SSLSocket) {
+                ((SSLSocket) socket).addHandshakeCompletedListener(mListener);
+            }
+            return socket;
+        }
+
+        @Override
+        public String[] getDefaultCipherSuites() {
+            return mDelegate.getDefaultCipherSuites();
+        }
+
+        @Override
+        public String[] getSupportedCipherSuites() {
+            return mDelegate.getSupportedCipherSuites();
+        }
+
+        @Override
+        public Socket createSocket(Socket s, String host, int port, boolean autoClose)
+                throws IOException {
+            return counted(mDelegate.createSocket(s, host, port, autoClose));
+        }
+
+        @Override
+        public Socket createSocket() throws IOException {
+            return counted(mDelegate.createSocket());
+        }
+
+        @Override
+        public Socket createSocket(String host, int port) throws IOException {
+            return counted(mDelegate.createSocket(host, port));
+        }
+
+        @Override
+        public Socket createSocket(String host, int port, InetAddress localHost, int localPort)
+                throws IOException {
+            return counted(mDelegate.createSocket(host, port, localHost, localPort));
+        }
+
+        @Override
+        public Socket createSocket(InetAddress host, int port) throws IOException {
+            return counted(mDelegate.createSocket(host, port));
+        }
+
+        @Override
+        public Socket createSocket(InetAddress address, int port, InetAddress localAddress,
+                int localPort) throws IOException {
+            return counted(mDelegate.createSocket(address, port, localAddress, localPort));
+        }
+    }
+}
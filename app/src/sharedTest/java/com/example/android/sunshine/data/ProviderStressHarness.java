@@ -0,0 +1,399 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.data;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteException;
+import android.util.Log;
+
+import com.example.android.sunshine.data.WeatherContract.WeatherEntry;
+import com.example.android.sunshine.utilities.SunshineDateUtils;
+import com.example.android.sunshine.utilities.SyntheticWeatherGenerator;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+
+/**
+ * Puts WeatherProvider under load: reader threads query it as fast as they can while a writer
+ * fills the weather table with bulkInsert and empties it with delete, over and over, and reports
+ * what that cost.
+ * <p>
+ * Three in four queries are the detail screen's (one date), the others are the forecast list's
+ * (the two weeks from a date). Each query is timed, and classified by whether the writer was in
+ * the middle of a bulkInsert or delete while it ran. SQLite lets a write transaction hold the
+ * database while readers wait, so the gap between the two latency distributions is what lock
+ * contention costs the readers. The size of the database file is sampled after every insert and
+ * delete, since SQLite reuses the pages of deleted rows but never gives them back on its own.
+ * <p>
+ * Only the framework is used, so the harness runs on a device as well as under Robolectric.
+ * Times come from System.nanoTime, because Robolectric's SystemClock doesn't advance. Runs
+ * replace the whole weather table and leave it empty.
+ */
+public class ProviderStressHarness {
+
+    /** Rows, readers and cycles of the stress tests, on a device and on the JVM alike */
+    public static final int DEFAULT_ROWS = 10000;
+    public static final int READERS = 4;
+    public static final int CYCLES = 3;
+
+    private static final String TAG = ProviderStressHarness.class.getSimpleName();
+
+    /* Rows per bulkInsert. The sync inserts a few weeks at a time, this is the far end of that. */
+    private static final int INSERT_CHUNK_ROWS = 2000;
+
+    /* Days read by the queries of the forecast list */
+    private static final int FORECAST_DAYS = 14;
+
+    /* Columns of the forecast list, the detail screen reads them all */
+    private static final String[] FORECAST_PROJECTION = {
+            WeatherEntry.COLUMN_DATE,
+            WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherEntry.COLUMN_MIN_TEMP,
+            WeatherEntry.COLUMN_WEATHER_ID,
+    };
+
+    /**
+     * Latencies of a set of queries.
+     */
+    public static final class Latencies {
+
+        /** Duration of each query in nanoseconds, sorted */
+        public final long[] nanos;
+
+        Latencies(long[] nanos) {
+            this.nanos = nanos;
+            Arrays.sort(nanos);
+        }
+
+        /**
+         * @return How many queries there were
+         */
+        public int count() {
+            return nanos.length;
+        }
+
+        /**
+         * @param percentile From 0 to 100
+         * @return The duration below which that share of the queries finished, in microseconds
+         */
+        public long percentileMicros(double percentile) {
+            if (nanos.length == 0) return 0;
+            int index = (int) Math.ceil(nanos.length * percentile / 100) - 1;
+            long latency = nanos[Math.max(0, Math.min(index, nanos.length - 1))];
+            return TimeUnit.NANOSECONDS.toMicros(latency);
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US,
+                    "%d queries, p50 %d us, p90 %d us, p99 %d us, p99.9 %d us, max %d us",
+                    count(), percentileMicros(50), percentileMicros(90), percentileMicros(99),
+                    percentileMicros(99.9), percentileMicros(100));
+        }
+    }
+
+    /**
+     * What a run did.
+     */
+    public static final class Report {
+
+        /** Queries that ran, at least in part, while the writer was inserting or deleting */
+        public final Latencies concurrentReads;
+
+        /** Queries that ran while the writer was between two operations */
+        public final Latencies idleReads;
+
+        /** Queries that failed, for instance because the database stayed locked */
+        public final int readErrors;
+
+        /** Rows inserted over all cycles, and the time the inserts took */
+        public final long rowsInserted;
+        public final long insertNanos;
+
+        /** Rows deleted over all cycles, and the time the deletes took */
+        public final long rowsDeleted;
+        public final long deleteNanos;
+
+        /** Size of the database file before the run, at its largest, and after the run */
+        public final long initialDatabaseBytes;
+        public final long peakDatabaseBytes;
+        public final long finalDatabaseBytes;
+
+        Report(Latencies concurrentReads, Latencies idleReads, int readErrors,
+                long rowsInserted, long insertNanos, long rowsDeleted, long deleteNanos,
+                long initialDatabaseBytes, long peakDatabaseBytes, long finalDatabaseBytes) {
+            this.concurrentReads = concurrentReads;
+            this.idleReads = idleReads;
+            this.readErrors = readErrors;
+            this.rowsInserted = rowsInserted;
+            this.insertNanos = insertNanos;
+            this.rowsDeleted = rowsDeleted;
+            this.deleteNanos = deleteNanos;
+            this.initialDatabaseBytes = initialDatabaseBytes;
+            this.peakDatabaseBytes = peakDatabaseBytes;
+            this.finalDatabaseBytes = finalDatabaseBytes;
+        }
+
+        /**
+         * @return Rows inserted per second, counting only the time spent in bulkInsert
+         */
+        public double insertThroughput() {
+            return insertNanos == 0 ? 0 : rowsInserted * 1e9 / insertNanos;
+        }
+
+        /**
+         * @return Rows deleted per second, counting only the time spent in delete
+         */
+        public double deleteThroughput() {
+            return deleteNanos == 0 ? 0 : rowsDeleted * 1e9 / deleteNanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US,
+                    "inserted %d rows at %.0f rows/s, deleted %d rows at %.0f rows/s; "
+                            + "reads during writes: %s; reads between writes: %s; "
+                            + "%d failed reads; database %d -> %d (peak) -> %d bytes",
+                    rowsInserted, insertThroughput(), rowsDeleted, deleteThroughput(),
+                    concurrentReads, idleReads, readErrors,
+                    initialDatabaseBytes, peakDatabaseBytes, finalDatabaseBytes);
+        }
+    }
+
+    private ProviderStressHarness() {
+    }
+
+    /**
+     * Fails unless every row the writer inserted was stored and deleted again, and no query
+     * failed however long the writer held the database.
+     *
+     * @param report What {@link #run(Context, int, int, int)} returned
+     * @param rows   The rows it inserted in each cycle
+     * @param cycles The cycles it ran
+     */
+    public static void check(Report report, int rows, int cycles) {
+        assertEquals((long) rows * cycles, report.rowsInserted);
+        assertEquals((long) rows * cycles, report.rowsDeleted);
+        assertEquals(0, report.readErrors);
+        assertTrue("The readers didn't get to query",
+                report.concurrentReads.count() + report.idleReads.count() > 0);
+    }
+
+    /**
+     * Fills and empties the weather table over and over while readers query it.
+     *
+     * @param context Used to reach the ContentProvider and to find the database file
+     * @param rows    Rows inserted in each cycle, one per day starting today
+     * @param readers How many threads query the provider at the same time
+     * @param cycles  How many times the table is filled and emptied
+     * @return What the run cost
+     * @throws InterruptedException If interrupted while waiting for the readers to stop
+     */
+    public static Report run(Context context, final int rows, int readers, int cycles)
+            throws InterruptedException {
+        final ContentResolver contentResolver = context.getContentResolver();
+        final File database = context.getDatabasePath(WeatherDbHelper.DATABASE_NAME);
+        final long today = SunshineDateUtils.getNormalizedUtcDateForToday();
+
+        contentResolver.delete(WeatherEntry.CONTENT_URI, null, null);
+        long initialDatabaseBytes = databaseBytes(database);
+        long peakDatabaseBytes = initialDatabaseBytes;
+
+        /*
+         * Odd while the writer is inside bulkInsert or delete. A query that started on an odd
+         * value, or saw the value change, overlapped a write.
+         */
+        final AtomicInteger writeEpoch = new AtomicInteger();
+        final AtomicInteger readErrors = new AtomicInteger();
+        final List<LatencyLog> concurrentLogs = new ArrayList<>();
+        final List<LatencyLog> idleLogs = new ArrayList<>();
+        final AtomicBoolean stop = new AtomicBoolean();
+
+        List<Thread> readerThreads = new ArrayList<>();
+        for (int i = 0; i < readers; i++) {
+            final LatencyLog concurrent = new LatencyLog();
+            final LatencyLog idle = new LatencyLog();
+            concurrentLogs.add(concurrent);
+            idleLogs.add(idle);
+
+            final Random random = new Random(i);
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int query = 0; !stop.get(); query++) {
+                        long date = today + random.nextInt(rows) * SunshineDateUtils.DAY_IN_MILLIS;
+
+                        int startEpoch = writeEpoch.get();
+                        long start = System.nanoTime();
+                        try {
+                            readAll(query % 4 == 0
+                                    ? queryForecast(contentResolver, date)
+                                    : queryDay(contentResolver, date));
+                        } catch (SQLiteException e) {
+                            if (readErrors.getAndIncrement() == 0) {
+                                Log.w(TAG, "Query failed under load", e);
+                            }
+                            continue;
+                        }
+                        long latency = System.nanoTime() - start;
+
+                        boolean overlapped = (startEpoch & 1) == 1
+                                || writeEpoch.get() != startEpoch;
+                        (overlapped ? concurrent : idle).add(latency);
+                    }
+                }
+            }, "ProviderStressReader-" + i);
+            readerThreads.add(thread);
+            thread.start();
+        }
+
+        long rowsInserted = 0;
+        long insertNanos = 0;
+        long rowsDeleted = 0;
+        long deleteNanos = 0;
+
+        try {
+            for (int cycle = 0; cycle < cycles; cycle++) {
+                SyntheticWeatherGenerator generator =
+                        new SyntheticWeatherGenerator(cycle, 0, today);
+
+                for (int done = 0; done < rows; done += INSERT_CHUNK_ROWS) {
+                    int chunkRows = Math.min(INSERT_CHUNK_ROWS, rows - done);
+                    ContentValues[] chunk = toContentValues(generator.next(chunkRows));
+
+                    writeEpoch.incrementAndGet();
+                    long start = System.nanoTime();
+                    rowsInserted += contentResolver.bulkInsert(WeatherEntry.CONTENT_URI, chunk);
+                    insertNanos += System.nanoTime() - start;
+                    writeEpoch.incrementAndGet();
+                }
+                peakDatabaseBytes = Math.max(peakDatabaseBytes, databaseBytes(database));
+
+                writeEpoch.incrementAndGet();
+                long start = System.nanoTime();
+                rowsDeleted += contentResolver.delete(WeatherEntry.CONTENT_URI, null, null);
+                deleteNanos += System.nanoTime() - start;
+                writeEpoch.incrementAndGet();
+                peakDatabaseBytes = Math.max(peakDatabaseBytes, databaseBytes(database));
+            }
+        } finally {
+            stop.set(true);
+            for (Thread thread : readerThreads) {
+                thread.join();
+            }
+        }
+
+        return new Report(LatencyLog.merge(concurrentLogs), LatencyLog.merge(idleLogs),
+                readErrors.get(), rowsInserted, insertNanos, rowsDeleted, deleteNanos,
+                initialDatabaseBytes, peakDatabaseBytes, databaseBytes(database));
+    }
+
+    /* The detail screen's query */
+    private static Cursor queryDay(ContentResolver contentResolver, long date) {
+        return contentResolver.query(WeatherEntry.buildWeatherUriWithDate(date),
+                null, null, null, null);
+    }
+
+    /* The forecast list's query, starting at the given date rather than today */
+    private static Cursor queryForecast(ContentResolver contentResolver, long date) {
+        return contentResolver.query(WeatherEntry.CONTENT_URI,
+                FORECAST_PROJECTION,
+                WeatherEntry.COLUMN_DATE + " >= ? AND " + WeatherEntry.COLUMN_DATE + " < ?",
+                new String[]{Long.toString(date),
+                        Long.toString(date + FORECAST_DAYS * SunshineDateUtils.DAY_IN_MILLIS)},
+                WeatherEntry.COLUMN_DATE + " ASC");
+    }
+
+    /* Reads every row, as binding them to views would. A query only runs when rows are read. */
+    private static void readAll(Cursor cursor) {
+        if (cursor == null) return;
+        try {
+            int dateIndex = cursor.getColumnIndex(WeatherEntry.COLUMN_DATE);
+            int maxTempIndex = cursor.getColumnIndex(WeatherEntry.COLUMN_MAX_TEMP);
+            while (cursor.moveToNext()) {
+                cursor.getLong(dateIndex);
+                cursor.getDouble(maxTempIndex);
+            }
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private static ContentValues[] toContentValues(ForecastBatch batch) {
+        ContentValues[] values = new ContentValues[batch.size()];
+        for (int i = 0; i < values.length; i++) {
+            ContentValues row = new ContentValues();
+            row.put(WeatherEntry.COLUMN_DATE, batch.dates[i]);
+            row.put(WeatherEntry.COLUMN_WEATHER_ID, batch.weatherIds[i]);
+            row.put(WeatherEntry.COLUMN_MIN_TEMP, batch.minTemps[i]);
+            row.put(WeatherEntry.COLUMN_MAX_TEMP, batch.maxTemps[i]);
+            row.put(WeatherEntry.COLUMN_HUMIDITY, batch.humidities[i]);
+            row.put(WeatherEntry.COLUMN_PRESSURE, batch.pressures[i]);
+            row.put(WeatherEntry.COLUMN_WIND_SPEED, batch.windSpeeds[i]);
+            row.put(WeatherEntry.COLUMN_DEGREES, batch.degrees[i]);
+            values[i] = row;
+        }
+        return values;
+    }
+
+    /* The database file along with its rollback journal or write-ahead log */
+    private static long databaseBytes(File database) {
+        String path = database.getPath();
+        return database.length() + new File(path + "-journal").length()
+                + new File(path + "-wal").length();
+    }
+
+    /* Latencies recorded by one reader, without any locking */
+    private static final class LatencyLog {
+        private long[] mNanos = new long[1024];
+        private int mCount;
+
+        void add(long nanos) {
+            if (mCount == mNanos.length) {
+                mNanos = Arrays.copyOf(mNanos, mCount * 2);
+            }
+            mNanos[mCount++] = nanos;
+        }
+
+        /* Only called once the readers have stopped, thread.join makes their logs visible */
+        static Latencies merge(List<LatencyLog> logs) {
+            int count = 0;
+            for (LatencyLog log : logs) {
+                count += log.mCount;
+            }
+            long[] nanos = new long[count];
+            int offset = 0;
+            for (LatencyLog log : logs) {
+                System.arraycopy(log.mNanos, 0, nanos, offset, log.mCount);
+                offset += log.mCount;
+            }
+            return new Latencies(nanos);
+        }
+    }
+}
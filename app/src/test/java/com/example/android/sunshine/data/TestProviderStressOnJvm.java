@@ -0,0 +1,68 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.data;
+
+import android.util.Log;
+
+import com.example.android.sunshine.BuildConfig;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowLog;
+
+import static com.example.android.sunshine.data.ProviderStressHarness.CYCLES;
+import static com.example.android.sunshine.data.ProviderStressHarness.DEFAULT_ROWS;
+import static com.example.android.sunshine.data.ProviderStressHarness.READERS;
+
+/**
+ * Runs the ProviderStressHarness on the JVM under Robolectric, without a device. Robolectric
+ * runs every SQLite statement on one thread of its own, so the numbers show the cost of the
+ * provider's own code and of SQLite, not how a device's connection pool handles contention.
+ * The report is logged under this class's tag, which Robolectric echoes to standard output.
+ * The table holds 10,000 rows by default, the stressRows property scales that up:
+ * <pre>
+ * ./gradlew testDebugUnitTest -PstressRows=1000000
+ * </pre>
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class)
+public class TestProviderStressOnJvm {
+
+    private static final String TAG = TestProviderStressOnJvm.class.getSimpleName();
+
+    @Before
+    public void setUp() {
+        ShadowLog.stream = System.out;
+        Robolectric.setupContentProvider(WeatherProvider.class,
+                WeatherContract.CONTENT_AUTHORITY);
+    }
+
+    @Test
+    public void testProviderUnderLoad() throws Exception {
+        int rows = Integer.getInteger("stressRows", DEFAULT_ROWS);
+
+        ProviderStressHarness.Report report = ProviderStressHarness.run(
+                RuntimeEnvironment.application, rows, READERS, CYCLES);
+        Log.i(TAG, rows + " rows, " + READERS + " readers, " + CYCLES + " cycles: " + report);
+
+        ProviderStressHarness.check(report, rows, CYCLES);
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.benchmark;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.content.res.Resources;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The application Context of the benchmarks. There is a single one per JVM, because
+ * SunshinePreferences and WeatherFormatter hold on to the first Context they are given, just
+ * like they do in the app.
+ */
+final class BenchmarkContext extends Context {
+
+    private static BenchmarkContext sInstance;
+
+    private final Resources mResources = new BenchmarkResources();
+
+    private final Map<String, SharedPreferences> mSharedPreferences = new HashMap<>();
+
+    private BenchmarkContext() {
+    }
+
+    static synchronized BenchmarkContext getInstance() {
+        if (sInstance == null) {
+            sInstance = new BenchmarkContext();
+        }
+        return sInstance;
+    }
+
+    @Override
+    public Context getApplicationContext() {
+        return this;
+    }
+
+    @Override
+    public String getPackageName() {
+        return "com.example.android.sunshine";
+    }
+
+    @Override
+    public Resources getResources() {
+        return mResources;
+    }
+
+    @Override
+    public synchronized SharedPreferences getSharedPreferences(String name, int mode) {
+        SharedPreferences sharedPreferences = mSharedPreferences.get(name);
+        if (sharedPreferences == null) {
+            sharedPreferences = new InMemorySharedPreferences();
+            mSharedPreferences.put(name, sharedPreferences);
+        }
+        return sharedPreferences;
+    }
+}
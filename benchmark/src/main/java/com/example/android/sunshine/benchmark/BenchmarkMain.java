@@ -0,0 +1,311 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.benchmark;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.TimeValue;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.Collection;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+
+/**
+ * Runs the benchmarks with JMH, measuring throughput along with allocations through JMH's GC
+ * profiler, and compares the results with a stored baseline.
+ * <p>
+ * Usage: BenchmarkMain --baseline &lt;file&gt; --report &lt;directory&gt; [--include &lt;regex&gt;]
+ * [--update-baseline] [--fail-on-regression]
+ * <p>
+ * The report directory receives JMH's raw results as results.json and the comparison as
+ * comparison.txt, which is printed as well. A benchmark regressed when its throughput dropped,
+ * or its allocations per operation grew, by more than {@link #THRESHOLD} beyond the error of
+ * both measurements.
+ */
+public final class BenchmarkMain {
+
+    /* Relative change of a benchmark that counts as a regression or an improvement */
+    private static final double THRESHOLD = 0.10;
+
+    /* Allocations per operation smaller than this are noise from the measurement itself */
+    private static final double ALLOCATION_NOISE_BYTES = 16;
+
+    /* Suffixes of the baseline's keys */
+    private static final String THROUGHPUT = ".throughput";
+    private static final String THROUGHPUT_ERROR = ".throughput.error";
+    private static final String UNIT = ".unit";
+    private static final String ALLOCATION = ".alloc.bytesPerOp";
+
+    private BenchmarkMain() {
+    }
+
+    /* The result of one benchmark with one set of parameters */
+    private static final class Measurement {
+        final double throughput;
+        final double throughputError;
+        final String unit;
+        final double bytesPerOp;
+        final double allocationRate;
+
+        Measurement(double throughput, double throughputError, String unit, double bytesPerOp,
+                double allocationRate) {
+            this.throughput = throughput;
+            this.throughputError = throughputError;
+            this.unit = unit;
+            this.bytesPerOp = bytesPerOp;
+            this.allocationRate = allocationRate;
+        }
+    }
+
+    public static void main(String[] args) throws IOException, RunnerException {
+        String include = BenchmarkMain.class.getPackage().getName() + ".*Benchmark.*";
+        File baselineFile = null;
+        File reportDirectory = new File("benchmark-report");
+        boolean updateBaseline = false;
+        boolean failOnRegression = false;
+
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--include":
+                    include = args[++i];
+                    break;
+                case "--baseline":
+                    baselineFile = new File(args[++i]);
+                    break;
+                case "--report":
+                    reportDirectory = new File(args[++i]);
+                    break;
+                case "--update-baseline":
+                    updateBaseline = true;
+                    break;
+                case "--fail-on-regression":
+                    failOnRegression = true;
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown argument " + args[i]);
+            }
+        }
+
+        if (!reportDirectory.isDirectory() && !reportDirectory.mkdirs()) {
+            throw new IOException("Couldn't create " + reportDirectory);
+        }
+
+        /* Forked JVMs don't inherit system properties, the resources are passed on explicitly */
+        String resources = System.getProperty("sunshine.resources", "");
+
+        Collection<RunResult> runResults = new Runner(new OptionsBuilder()
+                .include(include)
+                .addProfiler(GCProfiler.class)
+                .forks(1)
+                .warmupIterations(5)
+                .warmupTime(TimeValue.seconds(1))
+                .measurementIterations(10)
+                .measurementTime(TimeValue.seconds(1))
+                .jvmArgsAppend("-Dsunshine.resources=" + resources)
+                .result(new File(reportDirectory, "results.json").getPath())
+                .resultFormat(ResultFormatType.JSON)
+                .build()).run();
+
+        Map<String, Measurement> results = new TreeMap<>();
+        for (RunResult runResult : runResults) {
+            results.put(name(runResult), measure(runResult));
+        }
+
+        Properties baseline = new Properties();
+        if (baselineFile != null && baselineFile.isFile()) {
+            InputStream in = new FileInputStream(baselineFile);
+            try {
+                baseline.load(in);
+            } finally {
+                in.close();
+            }
+        }
+
+        String comparison = compare(results, baseline);
+        System.out.println();
+        System.out.print(comparison);
+        write(new File(reportDirectory, "comparison.txt"), comparison);
+
+        if (updateBaseline) {
+            if (baselineFile == null) {
+                throw new IllegalArgumentException("--update-baseline needs --baseline");
+            }
+            /* Benchmarks that didn't run this time keep their baseline */
+            for (Map.Entry<String, Measurement> result : results.entrySet()) {
+                String name = result.getKey();
+                Measurement measurement = result.getValue();
+                baseline.setProperty(name + THROUGHPUT, Double.toString(measurement.throughput));
+                baseline.setProperty(name + THROUGHPUT_ERROR,
+                        Double.toString(measurement.throughputError));
+                baseline.setProperty(name + UNIT, measurement.unit);
+                baseline.setProperty(name + ALLOCATION, Double.toString(measurement.bytesPerOp));
+            }
+            File baselineDirectory = baselineFile.getAbsoluteFile().getParentFile();
+            if (!baselineDirectory.isDirectory() && !baselineDirectory.mkdirs()) {
+                throw new IOException("Couldn't create " + baselineDirectory);
+            }
+            writeSorted(baselineFile, baseline);
+            System.out.println("Updated " + baselineFile);
+
+        } else if (failOnRegression && comparison.contains("REGRESSED")) {
+            System.exit(1);
+        }
+    }
+
+    /* The benchmark's class and method, followed by its parameters, like "A.b-days-7" */
+    private static String name(RunResult runResult) {
+        String benchmark = runResult.getParams().getBenchmark();
+        StringBuilder name = new StringBuilder(
+                benchmark.substring(BenchmarkMain.class.getPackage().getName().length() + 1));
+        for (String key : runResult.getParams().getParamsKeys()) {
+            name.append('-').append(key).append('-').append(runResult.getParams().getParam(key));
+        }
+        return name.toString();
+    }
+
+    private static Measurement measure(RunResult runResult) {
+        Result primary = runResult.getPrimaryResult();
+        double bytesPerOp = Double.NaN;
+        double allocationRate = Double.NaN;
+
+        /* The GC profiler's labels start with a separator that changed between JMH versions */
+        for (Map.Entry<String, Result> secondary : runResult.getSecondaryResults().entrySet()) {
+            if (secondary.getKey().endsWith("gc.alloc.rate.norm")) {
+                bytesPerOp = secondary.getValue().getScore();
+            } else if (secondary.getKey().endsWith("gc.alloc.rate")) {
+                allocationRate = secondary.getValue().getScore();
+            }
+        }
+
+        return new Measurement(primary.getScore(), primary.getScoreError(),
+                primary.getScoreUnit(), bytesPerOp, allocationRate);
+    }
+
+    private static String compare(Map<String, Measurement> results, Properties baseline) {
+        StringBuilder report = new StringBuilder();
+        report.append(String.format(Locale.US, "%-70s %16s %9s %12s %9s %10s  %s%n",
+                "Benchmark", "Throughput", "Change", "Alloc B/op", "Change", "Alloc MB/s",
+                "Verdict"));
+
+        int regressions = 0;
+        for (Map.Entry<String, Measurement> result : results.entrySet()) {
+            String name = result.getKey();
+            Measurement current = result.getValue();
+
+            String throughputChange = "";
+            String allocationChange = "";
+            String verdict;
+
+            String baseThroughput = baseline.getProperty(name + THROUGHPUT);
+            if (baseThroughput == null || !current.unit.equals(baseline.getProperty(name + UNIT))) {
+                verdict = "no baseline";
+            } else {
+                double base = Double.parseDouble(baseThroughput);
+                double baseError = errorOf(baseline.getProperty(name + THROUGHPUT_ERROR));
+                double baseBytes = Double.parseDouble(
+                        baseline.getProperty(name + ALLOCATION, "NaN"));
+
+                double change = (current.throughput - base) / base;
+                throughputChange = String.format(Locale.US, "%+.1f%%", change * 100);
+
+                /* The change must be larger than the threshold and than the noise of both runs */
+                double noise = errorOf(current.throughputError) + baseError;
+                boolean slower = change < -THRESHOLD && base - current.throughput > noise;
+                boolean faster = change > THRESHOLD && current.throughput - base > noise;
+
+                boolean allocatesMore = false;
+                boolean allocatesLess = false;
+                if (!Double.isNaN(baseBytes) && !Double.isNaN(current.bytesPerOp)) {
+                    double difference = current.bytesPerOp - baseBytes;
+                    double limit = Math.max(ALLOCATION_NOISE_BYTES, baseBytes * THRESHOLD);
+                    allocatesMore = difference > limit;
+                    allocatesLess = -difference > limit;
+                    allocationChange = String.format(Locale.US, "%+.0f", difference);
+                }
+
+                if (slower || allocatesMore) {
+                    verdict = "REGRESSED";
+                    regressions++;
+                } else if (faster || allocatesLess) {
+                    verdict = "improved";
+                } else {
+                    verdict = "unchanged";
+                }
+            }
+
+            report.append(String.format(Locale.US, "%-70s %16s %9s %12.1f %9s %10.1f  %s%n",
+                    name,
+                    String.format(Locale.US, "%.1f %s", current.throughput, current.unit),
+                    throughputChange, current.bytesPerOp, allocationChange,
+                    current.allocationRate, verdict));
+        }
+
+        report.append(String.format(Locale.US, "%n%d benchmarks, %d regressed%n",
+                results.size(), regressions));
+        return report.toString();
+    }
+
+    /* JMH reports no error when there were too few iterations to compute one */
+    private static double errorOf(double error) {
+        return Double.isNaN(error) ? 0 : error;
+    }
+
+    private static double errorOf(String error) {
+        return error == null ? 0 : errorOf(Double.parseDouble(error));
+    }
+
+    private static void write(File file, String text) throws IOException {
+        PrintWriter out = new PrintWriter(new OutputStreamWriter(
+                new FileOutputStream(file), "UTF-8"));
+        try {
+            out.print(text);
+        } finally {
+            out.close();
+        }
+    }
+
+    /* Properties.store writes in hash order, sorted keys keep the baseline's diffs readable */
+    private static void writeSorted(File file, Properties properties) throws IOException {
+        StringBuilder text = new StringBuilder();
+        text.append("# Written by BenchmarkMain --update-baseline, do not edit by hand\n");
+        for (Map.Entry<String, String> property : sorted(properties).entrySet()) {
+            text.append(property.getKey()).append('=').append(property.getValue()).append('\n');
+        }
+        write(file, text.toString());
+    }
+
+    private static Map<String, String> sorted(Properties properties) {
+        Map<String, String> map = new TreeMap<>();
+        for (String key : properties.stringPropertyNames()) {
+            map.put(key, properties.getProperty(key));
+        }
+        return map;
+    }
+}
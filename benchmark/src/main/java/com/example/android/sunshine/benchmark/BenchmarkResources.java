@@ -0,0 +1,162 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.benchmark;
+
+import android.content.res.Resources;
+
+import com.example.android.sunshine.R;
+
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+import java.io.File;
+import java.lang.reflect.Field;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+
+/**
+ * The default values of the apps' resources, read from their res/values directories and looked
+ * up by the ids of the generated R class.
+ * <p>
+ * Strings are processed the way aapt processes them: whitespace is collapsed, escapes are
+ * resolved and unescaped quotes are dropped, so that they format the same as on a device.
+ */
+final class BenchmarkResources extends Resources {
+
+    /* Set by the benchmark task, the res directories separated by File.pathSeparator */
+    private static final String RESOURCES_PROPERTY = "sunshine.resources";
+
+    private final Map<Integer, String> mValues = new HashMap<>();
+
+    BenchmarkResources() {
+        String resourceDirs = System.getProperty(RESOURCES_PROPERTY);
+        if (resourceDirs == null) {
+            throw new IllegalStateException(RESOURCES_PROPERTY + " is not set");
+        }
+
+        /* The first directory to define a resource wins, like the app's own resources would */
+        Map<String, String> values = new HashMap<>();
+        try {
+            DocumentBuilder builder = DocumentBuilderFactory.newInstance().newDocumentBuilder();
+            for (String resourceDir : resourceDirs.split(File.pathSeparator)) {
+                File[] files = new File(resourceDir, "values").listFiles();
+                if (files == null) continue;
+
+                for (File file : files) {
+                    if (!file.getName().endsWith(".xml")) continue;
+
+                    NodeList resources = builder.parse(file).getDocumentElement().getChildNodes();
+                    for (int i = 0; i < resources.getLength(); i++) {
+                        Node node = resources.item(i);
+                        if (!(node instanceof Element)) continue;
+
+                        Element resource = (Element) node;
+                        String key = resource.getTagName() + "/" + resource.getAttribute("name");
+                        if (!values.containsKey(key)) {
+                            values.put(key, resource.getTextContent());
+                        }
+                    }
+                }
+            }
+        } catch (Exception e) {
+            throw new IllegalStateException("Couldn't read the resources", e);
+        }
+
+        addValues(values, "string", R.string.class);
+        addValues(values, "bool", R.bool.class);
+        addValues(values, "integer", R.integer.class);
+    }
+
+    private void addValues(Map<String, String> values, String type, Class<?> ids) {
+        for (Field field : ids.getFields()) {
+            String value = values.get(type + "/" + field.getName());
+            if (value == null) continue;
+            try {
+                mValues.put(field.getInt(null),
+                        type.equals("string") ? unescape(value) : value.trim());
+            } catch (IllegalAccessException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+
+    private String value(int id) {
+        String value = mValues.get(id);
+        if (value == null) {
+            throw new NotFoundException("Resource ID #0x" + Integer.toHexString(id));
+        }
+        return value;
+    }
+
+    @Override
+    public String getString(int id) {
+        return value(id);
+    }
+
+    @Override
+    public boolean getBoolean(int id) {
+        return Boolean.parseBoolean(value(id));
+    }
+
+    @Override
+    public int getInteger(int id) {
+        return Integer.parseInt(value(id));
+    }
+
+    /* Whitespace, escapes and quotes of a string resource, as aapt handles them */
+    private static String unescape(String raw) {
+        StringBuilder value = new StringBuilder(raw.length());
+        boolean quoted = false;
+        boolean space = false;
+
+        for (int i = 0; i < raw.length(); i++) {
+            char c = raw.charAt(i);
+
+            if (c == '\\' && i + 1 < raw.length()) {
+                char escaped = raw.charAt(++i);
+                space = false;
+                switch (escaped) {
+                    case 'n':
+                        value.append('\n');
+                        break;
+                    case 't':
+                        value.append('\t');
+                        break;
+                    case 'u':
+                        value.append((char) Integer.parseInt(raw.substring(i + 1, i + 5), 16));
+                        i += 4;
+                        break;
+                    default:
+                        value.append(escaped);
+                        break;
+                }
+            } else if (c == '"') {
+                quoted = !quoted;
+            } else if (!quoted && Character.isWhitespace(c)) {
+                if (!space) value.append(' ');
+                space = true;
+            } else {
+                value.append(c);
+                space = false;
+            }
+        }
+        return value.toString().trim();
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.benchmark;
+
+import com.example.android.sunshine.utilities.SunshineDateUtils;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The date helpers, which run for every row that is bound to a view. A forecast spans today,
+ * tomorrow, the days of this week and later days, and each is formatted differently.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class SunshineDateUtilsBenchmark {
+
+    /* How many days of forecast the dates span */
+    private static final int FORECAST_DAYS = 16;
+
+    @Param({"false", "true"})
+    public boolean showFullDate;
+
+    private BenchmarkContext mContext;
+    private final long[] mDates = new long[WeatherRows.COUNT];
+    private int mNext;
+
+    @Setup
+    public void setUp() {
+        mContext = BenchmarkContext.getInstance();
+
+        long today = SunshineDateUtils.getNormalizedUtcDateForToday();
+        for (int i = 0; i < mDates.length; i++) {
+            mDates[i] = today + (i % FORECAST_DAYS) * SunshineDateUtils.DAY_IN_MILLIS;
+        }
+    }
+
+    private long nextDate() {
+        return mDates[mNext++ & (WeatherRows.COUNT - 1)];
+    }
+
+    @Benchmark
+    public String getFriendlyDateString() {
+        return SunshineDateUtils.getFriendlyDateString(mContext, nextDate(), showFullDate);
+    }
+
+    @Benchmark
+    public long normalizeDate() {
+        return SunshineDateUtils.normalizeDate(nextDate() + 12345678);
+    }
+
+    @Benchmark
+    public long getNormalizedUtcDateForToday() {
+        return SunshineDateUtils.getNormalizedUtcDateForToday();
+    }
+}
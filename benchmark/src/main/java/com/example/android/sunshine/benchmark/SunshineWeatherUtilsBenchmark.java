@@ -0,0 +1,103 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.benchmark;
+
+import android.content.SharedPreferences;
+import android.preference.PreferenceManager;
+
+import com.example.android.sunshine.R;
+import com.example.android.sunshine.data.ForecastBatch;
+import com.example.android.sunshine.data.SunshinePreferences;
+import com.example.android.sunshine.utilities.SunshineWeatherUtils;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The weather helpers, which run for every row that is bound to a view, every notification and
+ * every widget update. Imperial units take an extra conversion.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class SunshineWeatherUtilsBenchmark {
+
+    @Param({"metric", "imperial"})
+    public String units;
+
+    private BenchmarkContext mContext;
+    private ForecastBatch mRows;
+    private int mNext;
+
+    @Setup
+    public void setUp() {
+        mContext = BenchmarkContext.getInstance();
+        mRows = WeatherRows.generate(0);
+
+        SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(mContext);
+        sp.edit().putString(mContext.getString(R.string.pref_units_key), units).apply();
+        SunshinePreferences.reload(mContext);
+    }
+
+    private int nextRow() {
+        return mNext++ & (WeatherRows.COUNT - 1);
+    }
+
+    @Benchmark
+    public String formatTemperature() {
+        return SunshineWeatherUtils.formatTemperature(mContext, mRows.maxTemps[nextRow()]);
+    }
+
+    @Benchmark
+    public String formatHighLows() {
+        int row = nextRow();
+        return SunshineWeatherUtils.formatHighLows(mContext, mRows.maxTemps[row],
+                mRows.minTemps[row]);
+    }
+
+    @Benchmark
+    public String getFormattedWind() {
+        int row = nextRow();
+        return SunshineWeatherUtils.getFormattedWind(mContext, (float) mRows.windSpeeds[row],
+                (float) mRows.degrees[row]);
+    }
+
+    @Benchmark
+    public String getStringForWeatherCondition() {
+        return SunshineWeatherUtils.getStringForWeatherCondition(mContext,
+                mRows.weatherIds[nextRow()]);
+    }
+
+    @Benchmark
+    public int getSmallArtResourceIdForWeatherCondition() {
+        return SunshineWeatherUtils.getSmallArtResourceIdForWeatherCondition(
+                mRows.weatherIds[nextRow()]);
+    }
+
+    @Benchmark
+    public int getLargeArtResourceIdForWeatherCondition() {
+        return SunshineWeatherUtils.getLargeArtResourceIdForWeatherCondition(
+                mRows.weatherIds[nextRow()]);
+    }
+}
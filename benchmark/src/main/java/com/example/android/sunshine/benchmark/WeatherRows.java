@@ -0,0 +1,56 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.benchmark;
+
+import com.example.android.sunshine.data.ForecastBatch;
+import com.example.android.sunshine.utilities.SunshineDateUtils;
+import com.example.android.sunshine.utilities.SyntheticWeatherGenerator;
+
+/**
+ * Realistic rows for the benchmarks to cycle through, so that every branch is taken about as
+ * often as in real weather and the JIT can't specialize on a single value.
+ */
+final class WeatherRows {
+
+    /* A power of two, so that benchmarks can wrap their index with a mask */
+    static final int COUNT = 1024;
+
+    /* The same weather on every run, so that runs can be compared */
+    private static final long SEED = 49;
+
+    private WeatherRows() {
+    }
+
+    /**
+     * @param location Which location to generate the weather of
+     * @return COUNT days of weather, starting today
+     */
+    static ForecastBatch generate(int location) {
+        return new SyntheticWeatherGenerator(SEED, location,
+                SunshineDateUtils.getNormalizedUtcDateForToday()).next(COUNT);
+    }
+
+    /**
+     * @param location Which location the forecast is for
+     * @param days     How many days the forecast holds
+     * @return A forecast the way the weather server sends it
+     */
+    static String generateJson(int location, int days) {
+        return new SyntheticWeatherGenerator(SEED, location,
+                SunshineDateUtils.getNormalizedUtcDateForToday())
+                .nextJson("City " + location, days);
+    }
+}
@@ -0,0 +1,41 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package android.content.res;
+
+import java.util.Locale;
+
+/**
+ * Stub of the framework's Resources for the JVM. The subclass holds the values, formatting
+ * works like the framework's.
+ */
+public abstract class Resources {
+
+    public static class NotFoundException extends RuntimeException {
+        public NotFoundException(String name) {
+            super(name);
+        }
+    }
+
+    public abstract String getString(int id) throws NotFoundException;
+
+    public String getString(int id, Object... formatArgs) throws NotFoundException {
+        return String.format(Locale.getDefault(), getString(id), formatArgs);
+    }
+
+    public abstract boolean getBoolean(int id) throws NotFoundException;
+
+    public abstract int getInteger(int id) throws NotFoundException;
+}
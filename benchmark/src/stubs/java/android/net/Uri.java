@@ -0,0 +1,79 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package android.net;
+
+/**
+ * Stub of the framework's Uri for the JVM. It only holds the String it was built from, which is
+ * all WeatherContract needs to initialize.
+ */
+public abstract class Uri {
+
+    private final String mUriString;
+
+    private Uri(String uriString) {
+        mUriString = uriString;
+    }
+
+    public static Uri parse(String uriString) {
+        return new StringUri(uriString);
+    }
+
+    public Builder buildUpon() {
+        return new Builder(mUriString);
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        return other instanceof Uri && mUriString.equals(((Uri) other).mUriString);
+    }
+
+    @Override
+    public int hashCode() {
+        return mUriString.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return mUriString;
+    }
+
+    private static final class StringUri extends Uri {
+        StringUri(String uriString) {
+            super(uriString);
+        }
+    }
+
+    public static final class Builder {
+
+        private final StringBuilder mUriString;
+
+        Builder(String uriString) {
+            mUriString = new StringBuilder(uriString);
+        }
+
+        public Builder appendPath(String newSegment) {
+            if (mUriString.length() == 0 || mUriString.charAt(mUriString.length() - 1) != '/') {
+                mUriString.append('/');
+            }
+            mUriString.append(newSegment);
+            return this;
+        }
+
+        public Uri build() {
+            return new StringUri(mUriString.toString());
+        }
+    }
+}
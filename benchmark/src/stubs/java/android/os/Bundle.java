@@ -0,0 +1,120 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package android.os;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Stub of the framework's Bundle for the JVM, with the types Sunshine puts in one. It is never
+ * parceled, so it is a plain map.
+ */
+public final class Bundle {
+
+    private final Map<String, Object> mMap = new HashMap<>();
+
+    public boolean containsKey(String key) {
+        return mMap.containsKey(key);
+    }
+
+    public int size() {
+        return mMap.size();
+    }
+
+    public void putInt(String key, int value) {
+        mMap.put(key, value);
+    }
+
+    public void putLong(String key, long value) {
+        mMap.put(key, value);
+    }
+
+    public void putDouble(String key, double value) {
+        mMap.put(key, value);
+    }
+
+    public void putString(String key, String value) {
+        mMap.put(key, value);
+    }
+
+    public void putIntArray(String key, int[] value) {
+        mMap.put(key, value);
+    }
+
+    public void putLongArray(String key, long[] value) {
+        mMap.put(key, value);
+    }
+
+    public void putDoubleArray(String key, double[] value) {
+        mMap.put(key, value);
+    }
+
+    public void putStringArray(String key, String[] value) {
+        mMap.put(key, value);
+    }
+
+    public int getInt(String key) {
+        return getInt(key, 0);
+    }
+
+    public int getInt(String key, int defaultValue) {
+        Object value = mMap.get(key);
+        return value instanceof Integer ? (Integer) value : defaultValue;
+    }
+
+    public long getLong(String key) {
+        return getLong(key, 0L);
+    }
+
+    public long getLong(String key, long defaultValue) {
+        Object value = mMap.get(key);
+        return value instanceof Long ? (Long) value : defaultValue;
+    }
+
+    public double getDouble(String key) {
+        return getDouble(key, 0.0);
+    }
+
+    public double getDouble(String key, double defaultValue) {
+        Object value = mMap.get(key);
+        return value instanceof Double ? (Double) value : defaultValue;
+    }
+
+    public String getString(String key) {
+        Object value = mMap.get(key);
+        return value instanceof String ? (String) value : null;
+    }
+
+    public int[] getIntArray(String key) {
+        Object value = mMap.get(key);
+        return value instanceof int[] ? (int[]) value : null;
+    }
+
+    public long[] getLongArray(String key) {
+        Object value = mMap.get(key);
+        return value instanceof long[] ? (long[]) value : null;
+    }
+
+    public double[] getDoubleArray(String key) {
+        Object value = mMap.get(key);
+        return value instanceof double[] ? (double[]) value : null;
+    }
+
+    public String[] getStringArray(String key) {
+        Object value = mMap.get(key);
+        return value instanceof String[] ? (String[]) value : null;
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package android.text.format;
+
+import android.content.Context;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+ * Stub of the framework's DateUtils for the JVM. Dates are formatted with a SimpleDateFormat
+ * built from the flags, which is close to, but not exactly, what the framework prints.
+ */
+public final class DateUtils {
+
+    public static final int FORMAT_SHOW_TIME = 0x00001;
+    public static final int FORMAT_SHOW_WEEKDAY = 0x00002;
+    public static final int FORMAT_SHOW_YEAR = 0x00004;
+    public static final int FORMAT_NO_YEAR = 0x00008;
+    public static final int FORMAT_SHOW_DATE = 0x00010;
+    public static final int FORMAT_NO_MONTH_DAY = 0x00020;
+    public static final int FORMAT_UTC = 0x02000;
+    public static final int FORMAT_ABBREV_TIME = 0x04000;
+    public static final int FORMAT_ABBREV_WEEKDAY = 0x08000;
+    public static final int FORMAT_ABBREV_MONTH = 0x10000;
+    public static final int FORMAT_NUMERIC_DATE = 0x20000;
+    public static final int FORMAT_ABBREV_ALL = 0x80000;
+
+    private DateUtils() {
+    }
+
+    public static String formatDateTime(Context context, long millis, int flags) {
+        boolean abbrevWeekday = (flags & (FORMAT_ABBREV_WEEKDAY | FORMAT_ABBREV_ALL)) != 0;
+        boolean abbrevMonth = (flags & (FORMAT_ABBREV_MONTH | FORMAT_ABBREV_ALL)) != 0;
+
+        StringBuilder pattern = new StringBuilder();
+        if ((flags & FORMAT_SHOW_WEEKDAY) != 0) {
+            pattern.append(abbrevWeekday ? "EEE" : "EEEE");
+        }
+        if ((flags & FORMAT_SHOW_DATE) != 0) {
+            if (pattern.length() > 0) pattern.append(", ");
+            if ((flags & FORMAT_NUMERIC_DATE) != 0) {
+                pattern.append("M/d");
+            } else {
+                pattern.append(abbrevMonth ? "MMM" : "MMMM");
+                if ((flags & FORMAT_NO_MONTH_DAY) == 0) pattern.append(" d");
+            }
+            if ((flags & FORMAT_SHOW_YEAR) != 0 && (flags & FORMAT_NO_YEAR) == 0) {
+                pattern.append(", yyyy");
+            }
+        }
+        if ((flags & FORMAT_SHOW_TIME) != 0) {
+            if (pattern.length() > 0) pattern.append(", ");
+            pattern.append("HH:mm");
+        }
+
+        SimpleDateFormat format = new SimpleDateFormat(pattern.toString(), Locale.getDefault());
+        if ((flags & FORMAT_UTC) != 0) {
+            format.setTimeZone(TimeZone.getTimeZone("UTC"));
+        }
+        return format.format(new Date(millis));
+    }
+}
@@ -26,6 +26,8 @@ public class SunshineListenerService  extends WearableListenerService {
     final String WEATHER_KEY = "com.example.android.sunshine.weather_key";
     final String WEATHER_MIN_KEY = "com.example.android.sunshine.weather_min_key";
     final String WEATHER_MAX_KEY = "com.example.android.sunshine.weather_max_key";
+    final String WEATHER_MIN_TEXT_KEY = "com.example.android.sunshine.weather_min_text_key";
+    final String WEATHER_MAX_TEXT_KEY = "com.example.android.sunshine.weather_max_text_key";
 
     @Override
     public void onCreate() {
@@ -50,8 +52,18 @@ public class SunshineListenerService  extends WearableListenerService {
                     SunshineWatchFace.WEATHER_IMAGE = Utils.getSmallArtResourceIdForWeatherCondition(weatherId);
                     SunshineWatchFace.WEATHER_LOW = low;
                     SunshineWatchFace.WEATHER_HIGH = high;
+
+                    // The phone formats the temperatures in the user's units. Older versions
+                    // of the app only send them in Celsius.
+                    SunshineWatchFace.WEATHER_LOW_TEXT = formatted(dataMap, WEATHER_MIN_TEXT_KEY, low);
+                    SunshineWatchFace.WEATHER_HIGH_TEXT = formatted(dataMap, WEATHER_MAX_TEXT_KEY, high);
                 }
             }
         }
     }
+
+    private static String formatted(DataMap dataMap, String key, double temperature) {
+        String text = dataMap.getString(key);
+        return text != null ? text.trim() : ((int) temperature) + "°";
+    }
 }
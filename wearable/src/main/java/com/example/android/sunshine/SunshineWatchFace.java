@@ -64,6 +64,9 @@ public class SunshineWatchFace extends CanvasWatchFaceService {
     public static int WEATHER_IMAGE = R.drawable.ic_clear;
     public static double WEATHER_LOW = 0;
     public static double WEATHER_HIGH = 0;
+    /* The temperatures as the phone formatted them, in the user's units */
+    public static String WEATHER_LOW_TEXT = "-.-";
+    public static String WEATHER_HIGH_TEXT = "-.-";
 
     /**
      * Handler message id for updating the time periodically in interactive mode.
@@ -100,6 +103,10 @@ public class SunshineWatchFace extends CanvasWatchFaceService {
         boolean mRegisteredTimeZoneReceiver = false;
         Paint mBackgroundPaint;
         private Bitmap mBackgroundBitmap;
+
+        /* The weather art currently drawn, loaded once per WEATHER_IMAGE instead of every frame */
+        private Drawable mWeatherDrawable;
+        private int mWeatherDrawableId;
         Paint mTextPaint;
         Paint mTextLowPaint;
         Paint mTextHighPaint;
@@ -146,7 +153,7 @@ public class SunshineWatchFace extends CanvasWatchFaceService {
 
             mBackgroundPaint = new Paint();
             mBackgroundPaint.setColor(resources.getColor(R.color.background));
-            mBackgroundBitmap = BitmapFactory.decodeResource(getResources(), R.drawable.bg);
+            /* The background is decoded in onSurfaceChanged, once the size of the face is known */
 
             mTextPaint = createTextPaint(resources.getColor(R.color.digital_text));
             mTextLowPaint = createTextPaint(resources.getColor(R.color.digital_text));
@@ -159,6 +166,10 @@ public class SunshineWatchFace extends CanvasWatchFaceService {
         @Override
         public void onDestroy() {
             mUpdateTimeHandler.removeMessages(MSG_UPDATE_TIME);
+            if (mBackgroundBitmap != null) {
+                mBackgroundBitmap.recycle();
+                mBackgroundBitmap = null;
+            }
             super.onDestroy();
         }
 
@@ -231,6 +242,44 @@ public class SunshineWatchFace extends CanvasWatchFaceService {
             mIconSize = resources.getDimension(R.dimen.digital_icon_size);
         }
 
+        /*
+         * The background is only ever drawn at the size of the surface, so it is decoded with a
+         * sample size close to that and scaled to fit exactly, once. Drawing it then needs no
+         * scaling, and the full size image never stays in memory.
+         */
+        @Override
+        public void onSurfaceChanged(SurfaceHolder holder, int format, int width, int height) {
+            super.onSurfaceChanged(holder, format, width, height);
+
+            if (mBackgroundBitmap != null
+                    && mBackgroundBitmap.getWidth() == width
+                    && mBackgroundBitmap.getHeight() == height) {
+                return;
+            }
+
+            BitmapFactory.Options options = new BitmapFactory.Options();
+            options.inJustDecodeBounds = true;
+            BitmapFactory.decodeResource(getResources(), R.drawable.bg, options);
+
+            options.inSampleSize = 1;
+            while (options.outWidth / (options.inSampleSize * 2) >= width
+                    && options.outHeight / (options.inSampleSize * 2) >= height) {
+                options.inSampleSize *= 2;
+            }
+            options.inJustDecodeBounds = false;
+
+            Bitmap decoded = BitmapFactory.decodeResource(getResources(), R.drawable.bg, options);
+            Bitmap scaled = Bitmap.createScaledBitmap(decoded, width, height, true);
+            if (scaled != decoded) {
+                decoded.recycle();
+            }
+
+            if (mBackgroundBitmap != null) {
+                mBackgroundBitmap.recycle();
+            }
+            mBackgroundBitmap = scaled;
+        }
+
         @Override
         public void onPropertiesChanged(Bundle properties) {
             super.onPropertiesChanged(properties);
@@ -292,8 +341,10 @@ public class SunshineWatchFace extends CanvasWatchFaceService {
         private void drawBackground(Canvas canvas) {
             if (isInAmbientMode()) {
                 canvas.drawColor(Color.BLACK);
-            } else {
+            } else if (mBackgroundBitmap != null) {
                 canvas.drawBitmap(mBackgroundBitmap, 0, 0, mBackgroundPaint);
+            } else {
+                canvas.drawColor(mBackgroundPaint.getColor());
             }
         }
 
@@ -319,7 +370,11 @@ public class SunshineWatchFace extends CanvasWatchFaceService {
             String stringDate = simpleDateFormat.format(mCalendar.getTime());
             canvas.drawText(stringDate, mXOffset, mYOffsetDate, mDatePaint);
 
-            Drawable drawable = getResources().getDrawable(WEATHER_IMAGE);
+            if (mWeatherDrawable == null || mWeatherDrawableId != WEATHER_IMAGE) {
+                mWeatherDrawableId = WEATHER_IMAGE;
+                mWeatherDrawable = getResources().getDrawable(mWeatherDrawableId);
+            }
+            Drawable drawable = mWeatherDrawable;
             drawable.setBounds(((int) mXOffset), ((int) mYOffsetIcon), ((int) (mXOffset + mIconSize)) , ((int) (mYOffsetIcon + mIconSize)));
             drawable.draw(canvas);
 
@@ -327,8 +382,8 @@ public class SunshineWatchFace extends CanvasWatchFaceService {
                 canvas.drawText("-.-", mXOffsetLow, mYOffsetIcon + mDateSize + 25, mTextLowPaint);
                 canvas.drawText("-.-", mXOffsetHigh, mYOffsetIcon + mDateSize + 25, mTextLowPaint);
             } else {
-                canvas.drawText(((int) WEATHER_LOW) + "°", mXOffsetLow, mYOffsetIcon + mDateSize + 25, mTextLowPaint);
-                canvas.drawText(((int) WEATHER_HIGH) + "°", mXOffsetHigh, mYOffsetIcon + mDateSize + 25, mTextLowPaint);
+                canvas.drawText(WEATHER_LOW_TEXT, mXOffsetLow, mYOffsetIcon + mDateSize + 25, mTextLowPaint);
+                canvas.drawText(WEATHER_HIGH_TEXT, mXOffsetHigh, mYOffsetIcon + mDateSize + 25, mTextLowPaint);
             }
 
         }